@@ -0,0 +1,119 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.errorprone.annotations.Var;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Primitive reads through {@link Chunk} of flat chunks, which are
+ * served inline, and of composite chunks, which go to their SPI.
+ * Each layout reads the same number of bytes from four chunks. The
+ * mixed layout has one chunk of each kind so the read call sites see
+ * every SPI, as hot loops over real captures do.
+ *
+ * Run with {@code mvn -Pjmh test-compile exec:exec}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkReadBenchmark
+{
+	private static final int SIZE = 64 * 1024;
+	private static final int MULTI_PIECES = 16;
+	private static final String[] MIXED = {"array", "direct", "pair", "multi"};
+
+	@Param({"array", "direct", "pair", "multi", "mixed"})
+	public String layout;
+
+	private Chunk[] chunks;
+
+	private static Chunk mkChunk(String layout, byte[] bytes)
+	{
+		List<Chunk> pieces;
+		int pieceSize;
+
+		switch(layout)
+		{
+			case "array":
+				return Chunks.copyBytes(bytes);
+			case "direct":
+				return Chunks.copyDirect(bytes);
+			case "pair":
+				return Chunks.ofChunks(Chunks.copyBytes(bytes, 0, SIZE/2), Chunks.copyBytes(bytes, SIZE/2, SIZE/2));
+			case "multi":
+				pieceSize = SIZE / MULTI_PIECES;
+				pieces = new ArrayList<>(MULTI_PIECES);
+				for(int i=0;i<MULTI_PIECES;i++)
+					pieces.add(Chunks.copyBytes(bytes, i * pieceSize, pieceSize));
+				return Chunks.ofChunks(pieces);
+			default:
+				throw new IllegalArgumentException("Unknown layout " + layout + '.');
+		}
+	}
+
+	@Setup
+	public void setup()
+	{
+		byte[] bytes = new byte[SIZE];
+
+		for(int i=0;i<SIZE;i++)
+			bytes[i] = (byte)(i * 31 + 7);
+		chunks = new Chunk[MIXED.length];
+		for(int i=0;i<chunks.length;i++)
+			chunks[i] = mkChunk("mixed".equals(layout) ? MIXED[i] : layout, bytes);
+	}
+
+	@Benchmark
+	public long getByte()
+	{
+		@Var
+		long sum = 0L;
+
+		for(Chunk chunk : chunks)
+			for(@Var long off=0L;off<SIZE;off++)
+				sum += chunk.getByte(off);
+		return sum;
+	}
+
+	@Benchmark
+	public long getInt()
+	{
+		@Var
+		long sum = 0L;
+
+		for(Chunk chunk : chunks)
+			for(@Var long off=0L;off<SIZE;off+=Integer.BYTES)
+				sum += chunk.getInt(off, ByteOrder.BIG_ENDIAN);
+		return sum;
+	}
+
+	@Benchmark
+	public long getLong()
+	{
+		@Var
+		long sum = 0L;
+
+		for(Chunk chunk : chunks)
+			for(@Var long off=0L;off<SIZE;off+=Long.BYTES)
+				sum += chunk.getLong(off, ByteOrder.BIG_ENDIAN);
+		return sum;
+	}
+}
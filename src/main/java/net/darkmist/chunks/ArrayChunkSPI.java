@@ -0,0 +1,210 @@
+package net.darkmist.chunks;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Chunk backed directly by part of a {@code byte} array. Reads index
+ * the array without going through a {@link ByteBuffer} and primitives
+ * are assembled from the bytes in the requested order.
+ */
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressFBWarnings(value="FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY",justification=/*FIXME:*/"Is there a decent way to break these cycles?")
+@SuppressWarnings({"PMD.AvoidLiteralsInIfCondition","Immutable"})
+	// We optimize on the case of size 1.
+	// We handle array carefully in an immutable way.
+final class ArrayChunkSPI extends RootedChunkSPI
+{
+	// These duplicate what the root and super hold so reads only
+	// need fields of this object.
+	private final byte[] array;
+	private final int base;
+	private final int size;
+
+	ArrayChunkSPI(BufferRoot root, int rootOff, int size)
+	{
+		super(root, rootOff, size);
+		this.array = root.array();
+		this.base = root.arrayOffset() + rootOff;
+		this.size = size;
+	}
+
+	/**
+	 * Wrap an sub-array of bytes in a chunk.
+	 * @param array to wrap
+	 * @param off Offset in array of sub-array.
+	 * @param len Length of sub-array.
+	 * @return Chunk backed by {@code array}.
+	 * @throws NullPointerException if array is <code>null</code>
+	 *	unless both <code>off</code> and <code>len</code>
+	 *	are <code>0</code> in which case a empty chunk is
+	 *	returned.
+	 * @throws IndexOutOfBoundsException if the sub-array would be
+	 *	outside the bounds of the array.
+	 */
+	static Chunk giveInstance(byte[] array, int off, int len)
+	{
+		if(array==null)
+		{
+			if(off==0 && len==0)
+				return Chunks.empty();
+			else
+				throw new NullPointerException();
+		}
+		Util.requireValidOffLen(array, off, len);
+		if(len==0)
+			return Chunks.empty();
+		if(len==1)
+			return ByteChunkSPI.instance(array[off]);
+		return new BufferRoot(ByteBuffer.wrap(array,off,len)).chunk(0, len);
+	}
+
+	static Chunk giveInstance(byte[] array)
+	{
+		if(array==null)
+			return Chunks.empty();
+		return giveInstance(array, 0, array.length);
+	}
+
+	/**
+	 * Copy bytes from an array and return them as a chunk.
+	 * @param array The array to copy from. This may be <code>null</code> if and only if <code>off==0</code> and <code>len==0</code>.
+	 * @param off Offset of the bytes into <code>array</code>.
+	 * @param len Number of bytes after offset to copy.
+	 * @return Chunk containing a copy of the specified bytes
+	 *	from the <code>array</code>. If <code>array==null</code>,
+	 *	<code>off==0</code> and <code>len==0</code> then an
+	 * 	empty chunk is returned.
+	 * @throws NullPointerException if <code>array</code> is null and either <code>off</code> or <code>len</code> is not zero.
+	 * @throws IndexOutOfBoundsException if <code>off</code> and <code>len<code> would reference bytes not in <code>array</code>.
+	 */
+	static Chunk copyInstance(byte[] array, int off, int len)
+	{
+		int end;
+
+		if(array==null)
+		{
+			if(off==0 && len==0)
+				return Chunks.empty();
+			else
+				throw new NullPointerException();
+		}
+		end = Util.requireValidOffLenRetEnd(array, off, len);
+		if(len==0)
+			return Chunks.empty();
+		if(len==1)
+			return Chunks.ofByte(array[off]);
+		return giveInstance(Arrays.copyOfRange(array, off, end));
+	}
+
+	static Chunk copyInstance(byte[] array)
+	{
+		if(array==null)
+			return Chunks.empty();
+		return copyInstance(array, 0, array.length);
+	}
+
+	/**
+	 * Check a read and get its index in the array.
+	 * @param off Offset of the read in this chunk.
+	 * @param len Number of bytes read.
+	 * @return Index in {@link #array} of {@code off}.
+	 */
+	private int index(int off, int len)
+	{
+		if(off < 0 || off > size - len)
+			throw new IndexOutOfBoundsException("Read of " + len + " bytes at offset " + off + " is outside chunk of size " + size + '.');
+		return base + off;
+	}
+
+	@Override
+	public int getByte(int off)
+	{	// HOT
+		return array[index(off, Byte.BYTES)]&0xff;
+	}
+
+	@Override
+	@SuppressWarnings("PMD.AvoidUsingShortType")
+	public short getShort(int off, ByteOrder order)
+	{
+		int i = index(off, Short.BYTES);
+
+		return Util.shortFromBytes(array[i], array[i+1], order);
+	}
+
+	@Override
+	public int getInt(int off, ByteOrder order)
+	{
+		int i = index(off, Integer.BYTES);
+
+		return Util.intFromBytes(array[i], array[i+1], array[i+2], array[i+3], order);
+	}
+
+	@Override
+	public long getLong(int off, ByteOrder order)
+	{
+		int i = index(off, Long.BYTES);
+
+		return Util.longFromBytes(array[i], array[i+1], array[i+2], array[i+3], array[i+4], array[i+5], array[i+6], array[i+7], order);
+	}
+
+	@Override
+	public boolean isCoalesced()
+	{
+		return base==0 && size==array.length;
+	}
+
+	@Nullable
+	@Override
+	public Chunk coalesce()
+	{
+		if(isCoalesced())
+			return null;
+		return giveInstance(Arrays.copyOfRange(array, base, base+size));
+	}
+
+	@Override
+	public byte[] copyTo(byte[] bytes, int chunkOff, int arrayOff, int len)
+	{
+		Util.requireValidOffLen(bytes,arrayOff,len);
+		Util.requireValidOffLen(size,chunkOff,len);
+		System.arraycopy(array, base + chunkOff, bytes, arrayOff, len);
+		return bytes;
+	}
+
+	@Override
+	public void writeTo(DataOutput dataOut, Set<WriteFlag> flags) throws IOException
+	{
+		dataOut.write(array, base, size);
+	}
+
+	@Override
+	@SuppressFBWarnings(value="EI_EXPOSE_REP", justification="Only read by Chunk.")
+	byte[] backingArray()
+	{
+		return array;
+	}
+
+	@Override
+	int backingOffset()
+	{
+		return base;
+	}
+
+	@Override
+	ByteBuffer window(int off, int len)
+	{
+		Util.requireValidOffLen(size, off, len);
+		return ByteBuffer.wrap(array, base + off, len).asReadOnlyBuffer();
+	}
+}
@@ -2,8 +2,7 @@ package net.darkmist.chunks;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
-import static java.util.Objects.requireNonNull;
+import java.util.function.IntFunction;
 
 import javax.annotation.concurrent.Immutable;
 import javax.annotation.Nullable;
@@ -19,19 +18,27 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 @SuppressWarnings({"PMD.AvoidLiteralsInIfCondition","PMD.TooManyMethods","Immutable","UnnecessaryParentheses"})
 	// We optimize on the case of size 1.
 	// We handle buf carefully in an immutable way.
-final class BufferChunkSPI extends ChunkIntSPI.Abstract
+final class BufferChunkSPI extends RootedChunkSPI
 {
 	//private static final Class<BufferChunkSPI> CLASS = BufferChunkSPI.class;
 	//private static final Logger logger = LoggerFactory.getLogger(CLASS);
 	private final transient ByteBuffer buf;
 	private final int size;
 
-	private BufferChunkSPI(ByteBuffer buf)
+	BufferChunkSPI(BufferRoot root, int rootOff, int size)
 	{
-		this.buf = requireNonNull(buf);
-		size = buf.remaining();
+		super(root, rootOff, size);
+		this.buf = ReadOnlyByteBuffers.unslicedRangeNoArgCheck(root.buffer(), rootOff, rootOff + size);
+		this.size = size;
 	}
 
+	/**
+	 * Wrap a buffer. Buffers with an accessible array are wrapped
+	 * by an {@link ArrayChunkSPI} instead.
+	 * @param buf The buffer to wrap. It should not be changed
+	 * 	after this call.
+	 * @return Chunk backed by {@code buf}.
+	 */
 	static Chunk giveInstance(ByteBuffer buf)
 	{
 		int len;
@@ -42,110 +49,78 @@ final class BufferChunkSPI extends ChunkIntSPI.Abstract
 		if(len==0)
 			return Chunks.empty();
 		if(len==1)
-			return Chunks.ofByte(buf.get(0));
-		return Chunk.instance((ChunkSPI)(new BufferChunkSPI(buf.asReadOnlyBuffer())));
+			return Chunks.ofByte(buf.get(buf.position()));
+		if(buf.hasArray())
+			return ArrayChunkSPI.giveInstance(buf.array(), buf.arrayOffset() + buf.position(), len);
+		return new BufferRoot(buf.asReadOnlyBuffer()).chunk(0, len);
 	}
 
 	/**
-	 * Wrap an sub-array of bytes in a chunk.
-	 * @param array to wrap
-	 * @param off Offset in array of sub-array.
-	 * @param len Length of sub-array.
-	 * @throws NullPointerException if array is <code>null</code>
-	 *	unless both <code>off</code> and <code>len</code>
-	 *	are <code>0</code> in which case a empty chunk is
-	 *	returned.
-	 * @throws IndexOutOfBoundsException if the sub-array would be
-	 *	outside the bounds of the array.
+	 * Wrap a buffer mapped from a file.
+	 * @param buf The mapped buffer. Its position must be zero and
+	 * 	correspond to the offset of {@code origin}.
+	 * @param origin The file and offset {@code buf} was mapped from.
+	 * @return Chunk that remembers where it was mapped from.
 	 */
-	static Chunk giveInstance(byte[] array, int off, int len)
+	static Chunk giveMappedInstance(ByteBuffer buf, @Nullable FileOrigin origin)
 	{
-		if(array==null)
-		{
-			if(off==0 && len==0)
-				return Chunks.empty();
-			else
-				throw new NullPointerException();
-		}
-		Util.requireValidOffLen(array, off, len);
-		if(len==0)
-			return Chunks.empty();
-		if(len==1)
-			return ByteChunkSPI.instance(array[off]);
-		return giveInstance(ByteBuffer.wrap(array,off,len));
+		if(origin == null || buf.remaining() < 2)
+			return giveInstance(buf);
+		return new BufferRoot(buf.asReadOnlyBuffer(), origin).chunk(0, buf.remaining());
 	}
 
-	static Chunk giveInstance(byte[] array)
+	static Chunk copyInstance(ByteBuffer buf)
 	{
-		int len;
+		byte[] bytes;
 
-		if(array==null)
-			return Chunks.empty();
-		len = array.length;
-		if(len==0)
+		if(buf==null)
 			return Chunks.empty();
-		if(len==1)
-			return ByteChunkSPI.instance(array[0]);
-		return giveInstance(ByteBuffer.wrap(array));
+		bytes = new byte[buf.remaining()];
+		buf.duplicate().get(bytes);
+		return ArrayChunkSPI.giveInstance(bytes);
 	}
 
-	static Chunk copyInstance(ByteBuffer buf)
+	/**
+	 * Copy the remaining bytes of a buffer into newly allocated
+	 * storage.
+	 * @param buf The buffer to copy. Its position is not changed.
+	 * @param allocator Allocates a buffer of the given size with
+	 * 	a position of zero.
+	 * @return Chunk backed by the allocated buffer.
+	 */
+	static Chunk copyInstance(ByteBuffer buf, IntFunction<ByteBuffer> allocator)
 	{
 		int len;
+		ByteBuffer copy;
 
 		if(buf==null)
 			return Chunks.empty();
 		len = buf.remaining();
-		if(len==0)
-			return Chunks.empty();
-		if(len==1)
-			return Chunks.ofByte(buf.get(buf.position()));
-		return Chunk.instance((ChunkSPI)(new BufferChunkSPI(ReadOnlyByteBuffers.copy(buf))));
+		if(len < 2)
+			return copyInstance(buf);
+		copy = allocator.apply(len);
+		copy.put(buf.duplicate());
+		copy.flip();
+		return giveInstance(copy);
 	}
 
 	/**
-	 * Copy bytes from an array and return them as a chunk.
+	 * Copy bytes from an array into newly allocated storage.
 	 * @param array The array to copy from. This may be <code>null</code> if and only if <code>off==0</code> and <code>len==0</code>.
 	 * @param off Offset of the bytes into <code>array</code>.
 	 * @param len Number of bytes after offset to copy.
-	 * @return Chunk containing a copy of the specified bytes
-	 *	from the <code>array</code>. If <code>array==null</code>,
-	 *	<code>off==0</code> and <code>len==0</code> then an
-	 * 	empty chunk is returned.
+	 * @param allocator Allocates a buffer of the given size with
+	 * 	a position of zero.
+	 * @return Chunk backed by the allocated buffer.
 	 * @throws NullPointerException if <code>array</code> is null and either <code>off</code> or <code>len</code> is not zero.
 	 * @throws IndexOutOfBoundsException if <code>off</code> and <code>len<code> would reference bytes not in <code>array</code>.
 	 */
-	static Chunk copyInstance(byte[] array, int off, int len)
-	{
-		int end;
-
-		if(array==null)
-		{
-			if(off==0 && len==0)
-				return Chunks.empty();
-			else
-				throw new NullPointerException();
-		}
-		end = Util.requireValidOffLenRetEnd(array, off, len);
-		if(len==0)
-			return Chunks.empty();
-		if(len==1)
-			return Chunks.ofByte(array[off]);
-		return giveInstance(ByteBuffer.wrap(Arrays.copyOfRange(array, off, end)));
-	}
-
-	static Chunk copyInstance(byte[] array)
+	static Chunk copyInstance(byte[] array, int off, int len, IntFunction<ByteBuffer> allocator)
 	{
-		int len;
-
-		if(array==null)
-			return Chunks.empty();
-		len = array.length;
-		if(len==0)
-			return Chunks.empty();
-		if(len==1)
-			return Chunks.ofByte(array[0]);
-		return giveInstance(ReadOnlyByteBuffers.copy(array));
+		if(array==null || len < 2)
+			return ArrayChunkSPI.copyInstance(array, off, len);
+		Util.requireValidOffLen(array, off, len);
+		return copyInstance(ByteBuffer.wrap(array, off, len), allocator);
 	}
 
 	@Override
@@ -173,12 +148,6 @@ final class BufferChunkSPI extends ChunkIntSPI.Abstract
 		return Util.fromBig(buf.getLong(buf.position() + off),order);
 	}
 
-	@Override
-	public long getSize()
-	{
-		return size;
-	}
-
 	@Override
 	public boolean isCoalesced()
 	{
@@ -191,23 +160,7 @@ final class BufferChunkSPI extends ChunkIntSPI.Abstract
 	{
 		if(isCoalesced())
 			return null;
-		return Chunks.giveBuffer(ReadOnlyByteBuffers.copy(buf));
-	}
-
-	@Nullable
-	@Override
-	public Chunk subChunk(int off, int len)
-	{
-		int end;
-
-		if(off==0 && len==size)
-			return null;	// self
-		end = Util.requireValidOffLenRetEnd(size, off, len);
-		if(len==0)
-			return Chunks.empty();
-		if(len==1)
-			return Chunks.ofByte(getByte(off));
-		return Chunks.giveBuffer(ReadOnlyByteBuffers.unslicedRangeNoArgCheck(buf, off, end));
+		return ArrayChunkSPI.giveInstance(copyTo(new byte[size], 0, 0, size));
 	}
 
 	@Override
@@ -223,13 +176,21 @@ final class BufferChunkSPI extends ChunkIntSPI.Abstract
 		return bytes;
 	}
 
-        /*--------+
-         | Object |
-         +--------*/
+	@Override
+	ByteBuffer backingBuffer()
+	{	// read only and only read with absolute gets
+		return buf;
+	}
+
+	@Override
+	int backingOffset()
+	{
+		return buf.position();
+	}
 
 	@Override
-	public String toString()
+	ByteBuffer window(int off, int len)
 	{
-		return getClass().getSimpleName() + " with size " + size;
+		return ReadOnlyByteBuffers.unslicedRangeNoArgCheck(buf, off, Util.requireValidOffLenRetEnd(size, off, len));
 	}
 }
@@ -0,0 +1,128 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * The buffer a {@link BufferChunkSPI} and all of its sub chunks were
+ * derived from. The identity of the root is what ties sub chunks of
+ * the same buffer together both for merging contiguous chunks and
+ * for sharing serialization through {@link SharedChunks}.
+ */
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressWarnings("Immutable")	// We handle buf carefully in an immutable way.
+final class BufferRoot
+{
+	private final ByteBuffer buf;
+
+	/**
+	 * File {@link #buf} was mapped from if any.
+	 */
+	@Nullable
+	private final FileOrigin origin;
+
+	/**
+	 * @param buf The buffer. Its position and limit are the range
+	 * 	of bytes the root covers. It is duplicated so later
+	 * 	changes to the position and limit of {@code buf} do not
+	 * 	affect the root. If it has an accessible array, chunks
+	 * 	of the root will read the array directly.
+	 * @param origin The file and offset {@code buf} was mapped
+	 * 	from or {@code null} if it was not.
+	 */
+	BufferRoot(ByteBuffer buf, @Nullable FileOrigin origin)
+	{
+		this.buf = requireNonNull(buf).duplicate();
+		this.origin = origin;
+	}
+
+	BufferRoot(ByteBuffer buf)
+	{
+		this(buf, null);
+	}
+
+	/**
+	 * Get a chunk of part of this root.
+	 * @param off Offset of the chunk in the root.
+	 * @param len Length of the chunk.
+	 * @return Chunk sharing this root with any other chunks of it.
+	 * @throws IndexOutOfBoundsException if {@code off} and
+	 * 	{@code len} are not within this root.
+	 */
+	Chunk chunk(int off, int len)
+	{
+		Util.requireValidOffLen(getSize(), off, len);
+		if(len==0)
+			return Chunks.empty();
+		if(len==1)
+			return Chunks.ofByte(buf.get(buf.position() + off));
+		if(buf.hasArray())
+			return Chunk.instance((ChunkSPI)(new ArrayChunkSPI(this, off, len)));
+		return Chunk.instance((ChunkSPI)(new BufferChunkSPI(this, off, len)));
+	}
+
+	/**
+	 * @return File this root was mapped from or {@code null} if
+	 * 	it was not.
+	 */
+	@Nullable
+	FileOrigin getOrigin()
+	{
+		return origin;
+	}
+
+	/**
+	 * @return Position in the buffer of the first byte of the root.
+	 */
+	int getBase()
+	{
+		return buf.position();
+	}
+
+	/**
+	 * @return Number of bytes in the root.
+	 */
+	int getSize()
+	{
+		return buf.remaining();
+	}
+
+	/**
+	 * @return The array backing the buffer. Only valid if
+	 * 	{@link ByteBuffer#hasArray()} was true for the buffer.
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP", justification="Shared with chunks of the root which do not change it.")
+	byte[] array()
+	{
+		return buf.array();
+	}
+
+	/**
+	 * @return Index in {@link #array()} of the first byte of the root.
+	 */
+	int arrayOffset()
+	{
+		return buf.arrayOffset() + buf.position();
+	}
+
+	/**
+	 * @return Duplicate of the backing buffer. Positions in it
+	 * 	are the same as those of buffers derived from the root.
+	 */
+	ByteBuffer buffer()
+	{
+		return buf.duplicate();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " with size " + getSize();
+	}
+}
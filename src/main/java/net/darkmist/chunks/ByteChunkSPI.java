@@ -1,5 +1,6 @@
 package net.darkmist.chunks;
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collections;
@@ -18,6 +19,7 @@ final class ByteChunkSPI implements ChunkSPI
 {
 	//private static final Class<ByteChunkSPI> CLASS = ByteChunkSPI.class;
 	private static final List<Chunk> chunks = mkChunks();
+	private static final ByteBuffer allBytes = mkAllBytes();
 
 	private final byte b;
 
@@ -31,6 +33,15 @@ final class ByteChunkSPI implements ChunkSPI
 		return Collections.unmodifiableList(Arrays.asList(chunks));
 	}
 
+	private static ByteBuffer mkAllBytes()
+	{
+		byte[] bytes = new byte[0x100];
+
+		for(int i=0;i<0x100;i++)
+			bytes[i] = (byte)i;
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
 	static Chunk instance(byte b)
 	{
 		return chunks.get(b&0xff);
@@ -141,6 +152,19 @@ final class ByteChunkSPI implements ChunkSPI
 		return null;
 	}
 
+	/**
+	 * Get a read only buffer containing just this byte. The buffer
+	 * is a view of a shared table of all byte values so nothing is
+	 * allocated beyond the view itself.
+	 * @return Buffer with one byte remaining.
+	 */
+	ByteBuffer buffer()
+	{
+		int i = b&0xff;
+
+		return ReadOnlyByteBuffers.unslicedRangeNoArgCheck(allBytes, i, i+1);
+	}
+
         /*--------+
          | Object |
          +--------*/
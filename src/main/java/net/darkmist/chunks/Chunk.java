@@ -22,15 +22,23 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Set;
 import java.util.AbstractList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
 
 import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+import com.google.errorprone.annotations.Var;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -64,6 +72,44 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	@SuppressFBWarnings(value={"SE_TRANSIENT_FIELD_NOT_RESTORED","NFF_NON_FUNCTIONAL_FIELD"}, justification="proxy used for serialization.")
 	private transient final long spiSize;
 
+	/**
+	 * Cached {@link #hashCode()}. Chunks are often used as map keys
+	 * and their contents never change so the hash is computed at
+	 * most once per thread. Zero means not yet computed.
+	 */
+	@SuppressFBWarnings(value={"SE_TRANSIENT_FIELD_NOT_RESTORED","NFF_NON_FUNCTIONAL_FIELD"}, justification="proxy used for serialization.")
+	private transient int hash;
+
+	/**
+	 * Storage backing the SPI directly if it has any. Reads through
+	 * the SPI interface see many implementations so the JIT cannot
+	 * inline them. Reads of contiguous storage are served from
+	 * these instead without calling the SPI at all. At most one of
+	 * {@link #array} and {@link #buf} is not {@code null}.
+	 */
+	@Nullable
+	@SuppressFBWarnings(value={"SE_TRANSIENT_FIELD_NOT_RESTORED","EI_EXPOSE_REP2"}, justification="proxy used for serialization. Never modified.")
+	@SuppressWarnings("Immutable")
+	private transient final byte[] array;
+	/**
+	 * Big endian view of the buffer backing the SPI or {@code null}.
+	 */
+	@Nullable
+	@SuppressFBWarnings(value="SE_TRANSIENT_FIELD_NOT_RESTORED", justification="proxy used for serialization.")
+	private transient final ByteBuffer buf;
+	/**
+	 * Index in {@link #array} or {@link #buf} of offset zero.
+	 */
+	@SuppressFBWarnings(value="SE_TRANSIENT_FIELD_NOT_RESTORED", justification="proxy used for serialization.")
+	private transient final int base;
+	/**
+	 * {@code true} if {@link #array} or {@link #buf} is set. This is
+	 * checked first so reads of composite and other SPIs take a
+	 * single branch before going to the SPI.
+	 */
+	@SuppressFBWarnings(value="SE_TRANSIENT_FIELD_NOT_RESTORED", justification="proxy used for serialization.")
+	private transient final boolean flat;
+
 	/**
 	 * Private constructor.
 	 * @param spi SPI to use for this chunk.
@@ -72,6 +118,35 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	{
 		this.spi=requireNonNull(spi,"spi");
 		this.spiSize=spi.getSize();
+		if(spi instanceof RootedChunkSPI)
+		{
+			RootedChunkSPI rooted = (RootedChunkSPI)spi;
+
+			this.array = rooted.backingArray();
+			this.buf = array==null ? rooted.backingBuffer() : null;
+			this.base = rooted.backingOffset();
+		}
+		else
+		{
+			this.array = null;
+			this.buf = null;
+			this.base = 0;
+		}
+		this.flat = array != null || buf != null;
+	}
+
+	/**
+	 * Check if a read can be served from the backing storage.
+	 * Reads of chunks without backing storage and reads out of
+	 * bounds go to the SPI so they fail the same way as any other.
+	 * @param off Offset of the read.
+	 * @param len Number of bytes read.
+	 * @return {@code true} if this chunk has backing storage and
+	 * 	{@code off} and {@code len} are inside this chunk.
+	 */
+	private boolean isFastRead(long off, int len)
+	{
+		return flat && off >= 0 && off <= spiSize - len;
 	}
 
 	/**
@@ -122,6 +197,13 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	 */
 	public final int getByte(int off)
 	{	// pass directly down so we don't needlessly convert off from int to long to int
+		if(isFastRead(off, Byte.BYTES))
+		{
+			if(array != null)
+				return array[base + off]&0xff;
+			if(buf != null)
+				return buf.get(base + off)&0xff;
+		}
 		return spi.getByte(off);
 	}
 
@@ -135,6 +217,13 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	 */
 	public int getByte(long off)
 	{
+		if(isFastRead(off, Byte.BYTES))
+		{
+			if(array != null)
+				return array[base + (int)off]&0xff;
+			if(buf != null)
+				return buf.get(base + (int)off)&0xff;
+		}
 		return spi.getByte(off);
 	}
 
@@ -146,7 +235,7 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	// FIXME: it would appear that most (all?) spi's return a unsigned value for a byte from getByte(Long). This needs to be cleared up.
 	public int getByteUnsigned(long off)
 	{
-		return spi.getByte(off)&0xff;
+		return getByte(off)&0xff;
 	}
 
 	/**
@@ -158,6 +247,15 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	@SuppressWarnings("PMD.AvoidUsingShortType")
 	public short getShort(long off, ByteOrder order)
 	{
+		if(isFastRead(off, Short.BYTES))
+		{
+			int i = base + (int)off;
+
+			if(array != null)
+				return Util.shortFromBytes(array[i], array[i+1], order);
+			if(buf != null)
+				return Util.fromBig(buf.getShort(i), order);
+		}
 		return spi.getShort(off, order);
 	}
 
@@ -170,7 +268,7 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	@SuppressWarnings("PMD.AvoidUsingShortType")
 	public int getShortUnsigned(long off, ByteOrder order)
 	{
-		return ((int)spi.getShort(off, order))&0xffff;
+		return ((int)getShort(off, order))&0xffff;
 	}
 
 	/**
@@ -181,6 +279,15 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	 */
 	public int getInt(long off, ByteOrder order)
 	{
+		if(isFastRead(off, Integer.BYTES))
+		{
+			int i = base + (int)off;
+
+			if(array != null)
+				return Util.intFromBytes(array[i], array[i+1], array[i+2], array[i+3], order);
+			if(buf != null)
+				return Util.fromBig(buf.getInt(i), order);
+		}
 		return spi.getInt(off, order);
 	}
 
@@ -202,7 +309,7 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 		l &= 0xffffffffl;
 		return l;
 		*/
-		return spi.getInt(off, order)&0xffffffffL;
+		return getInt(off, order)&0xffffffffL;
 	}
 
 	/**
@@ -213,6 +320,15 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	 */
 	public long getLong(long off, ByteOrder order)
 	{
+		if(isFastRead(off, Long.BYTES))
+		{
+			int i = base + (int)off;
+
+			if(array != null)
+				return Util.longFromBytes(array[i], array[i+1], array[i+2], array[i+3], array[i+4], array[i+5], array[i+6], array[i+7], order);
+			if(buf != null)
+				return Util.fromBig(buf.getLong(i), order);
+		}
 		return spi.getLong(off, order);
 	}
 
@@ -229,7 +345,7 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	 */
 	public Byte get(long off)
 	{
-		return (byte)spi.getByte(off);
+		return (byte)getByte(off);
 	}
 
 	/**
@@ -252,7 +368,7 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 	@Override
 	public final Byte get(int off)
 	{	// pass directly down so we don't needlessly convert off from int to long to int
-		return (byte)(spi.getByte(off));
+		return (byte)getByte(off);
 	}
 
 	/**
@@ -359,6 +475,242 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 		*/
 	}
 
+	/**
+	 * Get a cursor to read this chunk sequentially.
+	 * @return A reader positioned at the start of this chunk.
+	 * @see ChunkReader
+	 */
+	public ChunkReader reader()
+	{
+		return new ChunkReader(this);
+	}
+
+	/**
+	 * Get a range of this chunk for reads without bounds checks.
+	 * The bounds of the range are checked once here.
+	 * @param off Offset of the range.
+	 * @param len Length of the range.
+	 * @return View of the range.
+	 * @throws IndexOutOfBoundsException if off or length are outside the chunk.
+	 * @see ChunkRange
+	 */
+	public ChunkRange range(long off, long len)
+	{
+		return new ChunkRange(this, off, len);
+	}
+
+	/**
+	 * Find the first occurrence of a byte.
+	 * @param b Byte to find.
+	 * @param from Offset to start searching at. Negative values
+	 * 	are treated as zero.
+	 * @return Offset of the first {@code b} at or after
+	 * 	{@code from} or {@code -1} if there is none.
+	 */
+	public long indexOf(byte b, long from)
+	{
+		return ChunkSearch.indexOf(this, b, from);
+	}
+
+	/**
+	 * Find the first occurrence of a byte.
+	 * @param b Byte to find.
+	 * @return Offset of the first {@code b} or {@code -1} if
+	 * 	there is none.
+	 */
+	public long indexOf(byte b)
+	{
+		return indexOf(b, 0L);
+	}
+
+	/**
+	 * Find the first occurrence of a sequence of bytes. Matches
+	 * may cross the boundaries between the pieces a chunk is
+	 * built from.
+	 * @param pattern Bytes to find.
+	 * @param from Offset to start searching at. Negative values
+	 * 	are treated as zero.
+	 * @return Offset of the first match at or after {@code from}
+	 * 	or {@code -1} if there is none. An empty pattern matches
+	 * 	at {@code from} or the end of this chunk if that is smaller.
+	 * @throws IndexOutOfBoundsException if {@code pattern} is
+	 * 	larger than {@link Integer#MAX_VALUE}.
+	 */
+	public long indexOf(Chunk pattern, long from)
+	{
+		return ChunkSearch.indexOf(this, requireNonNull(pattern), from);
+	}
+
+	/**
+	 * Find the first occurrence of a sequence of bytes.
+	 * @param pattern Bytes to find.
+	 * @return Offset of the first match or {@code -1} if there is
+	 * 	none.
+	 * @see #indexOf(Chunk,long)
+	 */
+	public long indexOf(Chunk pattern)
+	{
+		return indexOf(pattern, 0L);
+	}
+
+	/**
+	 * Find the last occurrence of a byte.
+	 * @param b Byte to find.
+	 * @param from Offset to search backwards from. Values past the
+	 * 	end of this chunk are treated as the last byte.
+	 * @return Offset of the last {@code b} at or before
+	 * 	{@code from} or {@code -1} if there is none.
+	 */
+	public long lastIndexOf(byte b, long from)
+	{
+		return ChunkSearch.lastIndexOf(this, b, from);
+	}
+
+	/**
+	 * Find the last occurrence of a byte.
+	 * @param b Byte to find.
+	 * @return Offset of the last {@code b} or {@code -1} if there
+	 * 	is none.
+	 */
+	public long lastIndexOf(byte b)
+	{
+		return lastIndexOf(b, spiSize);
+	}
+
+	/**
+	 * Find the last occurrence of a sequence of bytes. Matches
+	 * may cross the boundaries between the pieces a chunk is
+	 * built from.
+	 * @param pattern Bytes to find.
+	 * @param from Offset to search backwards from. Values past the
+	 * 	last place {@code pattern} fits are treated as that place.
+	 * @return Offset of the last match at or before {@code from}
+	 * 	or {@code -1} if there is none.
+	 * @throws IndexOutOfBoundsException if {@code pattern} is
+	 * 	larger than {@link Integer#MAX_VALUE}.
+	 */
+	public long lastIndexOf(Chunk pattern, long from)
+	{
+		return ChunkSearch.lastIndexOf(this, requireNonNull(pattern), from);
+	}
+
+	/**
+	 * Find the last occurrence of a sequence of bytes.
+	 * @param pattern Bytes to find.
+	 * @return Offset of the last match or {@code -1} if there is
+	 * 	none.
+	 * @see #lastIndexOf(Chunk,long)
+	 */
+	public long lastIndexOf(Chunk pattern)
+	{
+		return lastIndexOf(pattern, spiSize);
+	}
+
+	/**
+	 * Does this chunk contain a sequence of bytes?
+	 * @param pattern Bytes to find.
+	 * @return {@code true} if {@code pattern} occurs in this chunk.
+	 * @see #indexOf(Chunk,long)
+	 */
+	public boolean contains(Chunk pattern)
+	{
+		return indexOf(pattern, 0L) >= 0L;
+	}
+
+	/**
+	 * Count the occurrences of a byte.
+	 * @param b Byte to count.
+	 * @return Number of bytes in this chunk equal to {@code b}.
+	 */
+	public long count(byte b)
+	{
+		return ChunkSearch.count(this, b);
+	}
+
+	/**
+	 * Find the first occurrence of a byte searching ranges of this
+	 * chunk in parallel on the common
+	 * {@link java.util.concurrent.ForkJoinPool}. This is only worth
+	 * while for chunks of many megabytes such as large mapped files.
+	 * @param b Byte to find.
+	 * @return Offset of the first {@code b} or {@code -1} if
+	 * 	there is none.
+	 * @see #indexOf(byte)
+	 */
+	public long parallelIndexOf(byte b)
+	{
+		return ParallelChunkSearch.indexOf(this, b, Tunables.getParallelSplitSize());
+	}
+
+	/**
+	 * Find the first occurrence of a sequence of bytes searching
+	 * ranges of this chunk in parallel.
+	 * @param pattern Bytes to find.
+	 * @return Offset of the first match or {@code -1} if there is
+	 * 	none.
+	 * @see #indexOf(Chunk)
+	 * @see #parallelIndexOf(byte)
+	 */
+	public long parallelIndexOf(Chunk pattern)
+	{
+		return ParallelChunkSearch.indexOf(this, requireNonNull(pattern), Tunables.getParallelSplitSize());
+	}
+
+	/**
+	 * Count the occurrences of a byte counting ranges of this chunk
+	 * in parallel.
+	 * @param b Byte to count.
+	 * @return Number of bytes in this chunk equal to {@code b}.
+	 * @see #count(byte)
+	 * @see #parallelIndexOf(byte)
+	 */
+	public long parallelCount(byte b)
+	{
+		return ParallelChunkSearch.count(this, b, Tunables.getParallelSplitSize());
+	}
+
+	/**
+	 * Find the first occurrence of a {@link Byte} without boxing
+	 * every byte of this chunk.
+	 * @param o Object to find.
+	 * @return Index of the first byte equal to {@code o} or
+	 * 	{@code -1} if there is none in the first
+	 * 	{@link #size()} bytes.
+	 */
+	@Override
+	public int indexOf(Object o)
+	{
+		long i;
+
+		if(!(o instanceof Byte))
+			return -1;
+		i = indexOf(((Byte)o).byteValue(), 0L);
+		if(i < size())
+			return (int)i;
+		return -1;
+	}
+
+	/**
+	 * Find the last occurrence of a {@link Byte} without boxing
+	 * every byte of this chunk.
+	 * @param o Object to find.
+	 * @return Index of the last byte equal to {@code o} in the
+	 * 	first {@link #size()} bytes or {@code -1} if there is none.
+	 */
+	@Override
+	public int lastIndexOf(Object o)
+	{
+		if(!(o instanceof Byte))
+			return -1;
+		return (int)lastIndexOf(((Byte)o).byteValue(), size() - 1L);
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return indexOf(o) >= 0;
+	}
+
 	/**
 	 * Get a subchunk starting at an offset.
 	 * @param off Offset into parent chunk for sub chunk.
@@ -434,12 +786,62 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 		return copyTo(new byte[len], off, 0, len);
 	}
 
+	/**
+	 * Pass the contents of a range of this {@code Chunk} to an
+	 * action as a sequence of read only {@link ByteBuffer}s in
+	 * order. Chunks backed by buffers or arrays pass views of
+	 * them so no bytes are copied. The action may change the
+	 * position, limit and byte order of each buffer it is passed.
+	 * @param off Offset of the range (inclusive).
+	 * @param len Length of the range.
+	 * @param action Action to pass each buffer to. Empty buffers
+	 * 	are never passed.
+	 * @throws IndexOutOfBoundsException if the range is not within
+	 * 	this {@code Chunk}.
+	 */
+	public void forEachSegment(long off, long len, Consumer<? super ByteBuffer> action)
+	{
+		requireNonNull(action);
+		Util.requireValidOffLen(spiSize, off, len);
+		ChunkContent.forEachSegment(this, off, len, action);
+	}
+
+	/**
+	 * Pass the contents of this {@code Chunk} to an action as a
+	 * sequence of read only {@link ByteBuffer}s in order.
+	 * @param action Action to pass each buffer to.
+	 * @see #forEachSegment(long,long,Consumer)
+	 */
+	public void forEachSegment(Consumer<? super ByteBuffer> action)
+	{
+		forEachSegment(0L, spiSize, action);
+	}
+
+	/**
+	 * Get the contents of this {@code Chunk} as a list of read only
+	 * {@link ByteBuffer}s. Buffers of chunks mapped by a
+	 * {@link ChunkScope} are views of its mappings and must not be
+	 * used after it is closed. Use {@link #forEachSegment(Consumer)}
+	 * to have the scope held open while they are used.
+	 * @return Unmodifiable list of buffers that together contain
+	 * 	the contents of this chunk in order.
+	 * @see #forEachSegment(long,long,Consumer)
+	 */
+	public List<ByteBuffer> segments()
+	{
+		List<ByteBuffer> segments = new ArrayList<>();
+
+		forEachSegment(segments::add);
+		return Collections.unmodifiableList(segments);
+	}
+
        /*---------------+
         | Serialization |
         +---------------*/
 
 	/**
-	 * Serialize via proxy.
+	 * Serialize via proxy. Use {@link SharedChunks} to share backing
+	 * buffers between chunks serialized together.
 	 * @return Serialization proxy for this chunk.
 	 * @throws ObjectStreamException Doesn't. This is per the serialization specification.
 	 */
@@ -473,6 +875,20 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 		writeTo(dataOut, Collections.emptySet());
 	}
 
+	/**
+	 * Write this {@code Chunk} to a channel. The buffers backing
+	 * this chunk are written directly without copying and are
+	 * passed together to {@link GatheringByteChannel}s.
+	 * @param channel Channel to write to. This should be in
+	 * 	blocking mode as writing is retried until all bytes
+	 * 	have been written.
+	 * @throws IOException if writing to {@code channel} does.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException
+	{
+		ChunkChannels.write(this, 0L, spiSize, requireNonNull(channel));
+	}
+
        /*-----------+
         | debugging |
         +-----------*/
@@ -486,6 +902,68 @@ public final class Chunk extends AbstractList<Byte> implements Serializable, Com
 		return spi;
 	}
 
+	/**
+	 * Compare the contents of this chunk with another chunk of the
+	 * same size.
+	 * @param that Chunk to compare to.
+	 * @return {@code true} if the contents are the same.
+	 */
+	private boolean contentEquals(Chunk that)
+	{
+		int thisHash;
+		int thatHash;
+
+		if(spiSize != that.spiSize)
+			return false;
+		thisHash = hash;
+		thatHash = that.hash;
+		if(thisHash!=0 && thatHash!=0 && thisHash!=thatHash)
+			return false;
+		return ChunkContent.contentEquals(this, that);
+	}
+
+	/**
+	 * Compare this {@code Chunk} to another object. Two
+	 * {@code Chunk}s are equal if they have the same size and the
+	 * same bytes. This is done in bulk over the buffers or arrays
+	 * backing each chunk instead of byte by byte and works for
+	 * chunks larger than {@link Integer#MAX_VALUE}. Other
+	 * {@link List}s are compared as {@link AbstractList#equals(Object)}
+	 * does.
+	 * @param o Object to compare to.
+	 * @return {@code true} if {@code o} is equal to this chunk.
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this==o)
+			return true;
+		if(o instanceof Chunk)
+			return contentEquals((Chunk)o);
+		if(o instanceof List)
+			return super.equals(o);
+		return false;
+	}
+
+	/**
+	 * Get the hash code for this chunk. This is the same value
+	 * {@link List#hashCode()} specifies for a list of the same
+	 * {@link Byte}s but it is computed a word at a time over the
+	 * chunk's backing storage, covers all bytes of chunks larger
+	 * than {@link Integer#MAX_VALUE} and is cached.
+	 * @return Hash code for this chunk.
+	 */
+	@Override
+	public int hashCode()
+	{
+		@Var
+		int h = hash;
+
+		if(h==0)
+			hash = h = ChunkContent.contentHash(this);
+		return h;
+	}
+
 	/**
 	 * Compare this {@code Chunk} to another {@code Chunk}. This is done by comparing each byte of both chunks from the first byte to the last of the smallest {@code Chunk}.
 	 * @return If at any point when comparing bytes the bytes
@@ -0,0 +1,141 @@
+package net.darkmist.chunks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Writing chunks to channels.
+ *
+ * The segments of a chunk are handed straight to the channel so
+ * nothing is copied for chunks backed by buffers. Channels that are
+ * {@link GatheringByteChannel}s are given as many segments per write
+ * as {@link Tunables#getGatherLimit()} allows. Chunks mapped from
+ * files are sent from the file by the kernel where possible.
+ */
+final class ChunkChannels
+{
+	private ChunkChannels()
+	{
+	}
+
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException
+	{
+		while(buf.hasRemaining())
+			channel.write(buf);
+	}
+
+	private static void gatherFully(GatheringByteChannel channel, ByteBuffer[] bufs) throws IOException
+	{
+		int limit = Tunables.getGatherLimit();
+		@Var
+		int first = 0;
+
+		while(first < bufs.length)
+		{
+			channel.write(bufs, first, Math.min(bufs.length - first, limit));
+			while(first < bufs.length && !bufs[first].hasRemaining())
+				first++;
+		}
+	}
+
+	private static void flush(WritableByteChannel channel, List<ByteBuffer> pending) throws IOException
+	{
+		if(pending.size() > 1 && channel instanceof GatheringByteChannel)
+			gatherFully((GatheringByteChannel)channel, pending.toArray(new ByteBuffer[0]));
+		else
+			for(ByteBuffer segment : pending)
+				writeFully(channel, segment);
+		pending.clear();
+	}
+
+	private static void write(Chunk chunk, long off, long len, WritableByteChannel channel, int minTransfer, FileOrigin.Transfers transfers) throws IOException
+	{
+		List<ByteBuffer> pending = new ArrayList<>();
+
+		for(ChunkContent.Piece piece : ChunkContent.pieces(chunk, off, len))
+		{
+			if(piece.spi instanceof ScopedChunkSPI)
+			{
+				flush(channel, pending);
+				writeScoped((ScopedChunkSPI)piece.spi, piece.off, piece.len, channel, minTransfer, transfers);
+				continue;
+			}
+			if(piece.len >= minTransfer && piece.spi instanceof RootedChunkSPI && ((RootedChunkSPI)piece.spi).isFileBacked())
+			{
+				flush(channel, pending);
+				if(((RootedChunkSPI)piece.spi).transferTo((int)piece.off, (int)piece.len, channel, transfers))
+					continue;
+			}
+			ChunkContent.leafSegments(piece.spi, piece.off, piece.len, pending::add);
+		}
+		flush(channel, pending);
+	}
+
+	/**
+	 * Write the mappings wrapped by a scoped leaf while holding its
+	 * scope open.
+	 */
+	private static void writeScoped(ScopedChunkSPI scoped, long off, long len, WritableByteChannel channel, int minTransfer, FileOrigin.Transfers transfers) throws IOException
+	{
+		ChunkScope scope = scoped.getScope();
+
+		scope.beginRead();
+		try
+		{
+			write(scoped.getChunk(), off, len, channel, minTransfer, transfers);
+		}
+		finally
+		{
+			scope.endRead();
+		}
+	}
+
+	/**
+	 * Write all of a range of a chunk to a channel. Parts of the
+	 * chunk mapped from files are transferred from the file with
+	 * {@link java.nio.channels.FileChannel#transferTo(long,long,WritableByteChannel)}
+	 * while the file is still available. Files are opened at most
+	 * once per write.
+	 * @param chunk The chunk to write.
+	 * @param off Offset of the range in {@code chunk}.
+	 * @param len Length of the range.
+	 * @param channel The channel to write to. This is expected to
+	 * 	be in blocking mode.
+	 * @param minTransfer Smallest piece to transfer from its file.
+	 * 	Smaller pieces are written from their buffers.
+	 * @throws IOException if writing to {@code channel} does.
+	 */
+	// package for testing
+	static void write(Chunk chunk, long off, long len, WritableByteChannel channel, int minTransfer) throws IOException
+	{
+		try(FileOrigin.Transfers transfers = new FileOrigin.Transfers())
+		{
+			write(chunk, off, len, channel, minTransfer, transfers);
+		}
+	}
+
+	/**
+	 * Write all of a range of a chunk to a channel. Parts of the
+	 * chunk mapped from files of at least
+	 * {@link Tunables#getMinTransferSize()} bytes are transferred
+	 * from the file with
+	 * {@link java.nio.channels.FileChannel#transferTo(long,long,WritableByteChannel)}
+	 * while the file is still available.
+	 * @param chunk The chunk to write.
+	 * @param off Offset of the range in {@code chunk}.
+	 * @param len Length of the range.
+	 * @param channel The channel to write to. This is expected to
+	 * 	be in blocking mode.
+	 * @throws IOException if writing to {@code channel} does.
+	 */
+	static void write(Chunk chunk, long off, long len, WritableByteChannel channel) throws IOException
+	{
+		write(chunk, off, len, channel, Tunables.getMinTransferSize());
+	}
+}
@@ -0,0 +1,426 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Bulk content operations used to implement {@link Chunk#equals(Object)},
+ * {@link Chunk#hashCode()} and {@link Chunk#forEachSegment(Consumer)}.
+ *
+ * Composite SPIs ({@link PairChunkSPI}, {@link MultiChunkSPI} and
+ * {@link SubChunkSPI}) are broken down into the leaf SPIs they are
+ * built from so bytes can be handled in the largest pieces possible.
+ * {@link LargeChunkSPI} leaves are broken into buffer backed pieces.
+ * Leaves backed by a {@link ByteBuffer} are compared and hashed in
+ * place. Any other leaf is copied a block at a time with
+ * {@link ChunkSPI#copyTo(byte[],long,int,int)}.
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+final class ChunkContent
+{
+	// Powers of 31 so List.hashCode() can be computed a long at a time.
+	private static final int P1 = 31;
+	private static final int P2 = P1 * 31;
+	private static final int P3 = P2 * 31;
+	private static final int P4 = P3 * 31;
+	private static final int P5 = P4 * 31;
+	private static final int P6 = P5 * 31;
+	private static final int P7 = P6 * 31;
+	private static final int P8 = P7 * 31;
+
+	private ChunkContent()
+	{
+	}
+
+	/**
+	 * A range of a leaf SPI.
+	 */
+	static final class Piece
+	{
+		final ChunkSPI spi;
+		final long off;
+		final long len;
+
+		Piece(ChunkSPI spi, long off, long len)
+		{
+			this.spi = spi;
+			this.off = off;
+			this.len = len;
+		}
+	}
+
+	/**
+	 * Lazily acquired temporary buffers for leaves that have to
+	 * be copied out.
+	 */
+	// Non-private for ChunkSearch.
+	static final class Scratch implements AutoCloseable
+	{
+		private ByteBuffer first;
+		private ByteBuffer second;
+
+		ByteBuffer first()
+		{
+			if(first==null)
+				first = ByteBuffer.wrap(Tunables.acquireTmpBuf());
+			return first;
+		}
+
+		ByteBuffer second()
+		{
+			if(second==null)
+				second = ByteBuffer.wrap(Tunables.acquireTmpBuf());
+			return second;
+		}
+
+		@Override
+		public void close()
+		{
+			if(first!=null)
+				Tunables.releaseTmpBuf(first.array());
+			if(second!=null)
+				Tunables.releaseTmpBuf(second.array());
+			first = null;
+			second = null;
+		}
+	}
+
+	static boolean isComposite(ChunkSPI spi)
+	{
+		return spi instanceof PairChunkSPI
+			|| spi instanceof MultiChunkSPI
+			|| spi instanceof SubChunkSPI
+			|| spi instanceof LargeChunkSPI;
+	}
+
+	private static void pushChild(Deque<Piece> todo, Chunk child, long childStart, long off, long end)
+	{
+		long childEnd = childStart + child.getSize();
+		long pieceStart = Math.max(off, childStart);
+		long pieceEnd = Math.min(end, childEnd);
+
+		if(pieceStart < pieceEnd)
+			todo.push(new Piece(child.getSPI(), pieceStart - childStart, pieceEnd - pieceStart));
+	}
+
+	/**
+	 * Break a range of a chunk down into leaf pieces. This is done
+	 * iteratively so deeply nested composites do not exhaust the
+	 * stack.
+	 * @param chunk The chunk to break down.
+	 * @param off Offset of the range in {@code chunk}.
+	 * @param len Length of the range.
+	 * @return Leaf pieces in order. Pieces never have a length of zero.
+	 */
+	static List<Piece> pieces(Chunk chunk, long off, long len)
+	{
+		List<Piece> pieces = new ArrayList<>();
+		Deque<Piece> todo = new ArrayDeque<>();
+
+		if(len > 0)
+			todo.push(new Piece(chunk.getSPI(), off, len));
+		while(!todo.isEmpty())
+		{
+			Piece piece = todo.pop();
+			ChunkSPI spi = piece.spi;
+			long end = piece.off + piece.len;
+
+			if(spi instanceof PairChunkSPI)
+			{
+				PairChunkSPI pair = (PairChunkSPI)spi;
+				long secondOffset = pair.getFirst().getSize();
+
+				// pushed in reverse so they pop in order
+				pushChild(todo, pair.getSecond(), secondOffset, piece.off, end);
+				pushChild(todo, pair.getFirst(), 0L, piece.off, end);
+			}
+			else if(spi instanceof MultiChunkSPI)
+			{
+				MultiChunkSPI multi = (MultiChunkSPI)spi;
+
+				for(int i=multi.getChunkCount()-1;i>=0;i--)
+					pushChild(todo, multi.getChunk(i), multi.getChunkOffset(i), piece.off, end);
+			}
+			else if(spi instanceof SubChunkSPI)
+			{
+				SubChunkSPI sub = (SubChunkSPI)spi;
+
+				todo.push(new Piece(sub.getChunk().getSPI(), sub.getSubChunkOff() + piece.off, piece.len));
+			}
+			else if(spi instanceof LargeChunkSPI)
+			{
+				LargeChunkSPI large = (LargeChunkSPI)spi;
+
+				// leaves so added directly in order
+				for(@Var long done=0L; done<piece.len; )
+				{
+					int n = (int)Math.min(piece.len - done, LargeChunksHelper.LARGE_CHUNK_SIZE);
+
+					pieces.add(new Piece(large.piece(piece.off + done, n), 0L, n));
+					done += n;
+				}
+			}
+			else
+				pieces.add(piece);
+		}
+		return pieces;
+	}
+
+	// Non-private for ChunkSearch.
+	static ByteBuffer window(ChunkSPI spi, long off, long len)
+	{
+		return ((RootedChunkSPI)spi).window((int)off, (int)len).order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Copy part of a leaf into a scratch buffer.
+	 * @return {@code tmp} with its position at zero and its limit
+	 * at the number of bytes copied.
+	 */
+	// Non-private for ChunkSearch.
+	static ByteBuffer fill(ByteBuffer tmp, ChunkSPI spi, long off, long remaining)
+	{
+		int n = (int)Math.min(tmp.capacity(), remaining);
+
+		spi.copyTo(tmp.array(), off, 0, n);
+		tmp.limit(n).position(0);
+		return tmp;
+	}
+
+	/**
+	 * Compare a buffer to part of a leaf that is not buffer backed.
+	 */
+	private static boolean bufferEquals(ByteBuffer buf, ChunkSPI spi, long off, long len, ByteBuffer tmp)
+	{
+		int base = buf.position();
+
+		for(@Var long done=0L; done<len; )
+		{
+			ByteBuffer block = fill(tmp, spi, off+done, len-done);
+			int n = block.remaining();
+
+			buf.limit(base+(int)done+n);
+			buf.position(base+(int)done);
+			if(!buf.equals(block))
+				return false;
+			done+=n;
+		}
+		return true;
+	}
+
+	private static boolean leafEquals(ChunkSPI a, long aOff, ChunkSPI b, long bOff, long len, Scratch scratch)
+	{
+		boolean aBuf = a instanceof RootedChunkSPI;
+		boolean bBuf = b instanceof RootedChunkSPI;
+
+		if(aBuf && bBuf)
+			return window(a, aOff, len).equals(window(b, bOff, len));
+		if(aBuf)
+			return bufferEquals(window(a, aOff, len), b, bOff, len, scratch.first());
+		if(bBuf)
+			return bufferEquals(window(b, bOff, len), a, aOff, len, scratch.first());
+		for(@Var long done=0L; done<len; )
+		{
+			ByteBuffer aBlock = fill(scratch.first(), a, aOff+done, len-done);
+			ByteBuffer bBlock = fill(scratch.second(), b, bOff+done, len-done);
+
+			if(!aBlock.equals(bBlock))
+				return false;
+			done+=aBlock.remaining();
+		}
+		return true;
+	}
+
+	/**
+	 * Compare the contents of two chunks.
+	 * @param a First chunk.
+	 * @param b Second chunk. This must be the same size as {@code a}.
+	 * @return {@code true} if the contents are the same.
+	 */
+	static boolean contentEquals(Chunk a, Chunk b)
+	{
+		try
+		(
+			Scratch scratch = new Scratch();
+		)
+		{
+			return contentEquals(a, b, scratch);
+		}
+	}
+
+	private static boolean contentEquals(Chunk a, Chunk b, Scratch scratch)
+	{
+		long size = a.getSize();
+		ChunkSPI aSPI = a.getSPI();
+		ChunkSPI bSPI = b.getSPI();
+		List<Piece> aPieces;
+		List<Piece> bPieces;
+		@Var
+		int ai = 0;
+		@Var
+		int bi = 0;
+		@Var
+		long aDone = 0L;
+		@Var
+		long bDone = 0L;
+
+		if(!isComposite(aSPI) && !isComposite(bSPI))
+			return leafEquals(aSPI, 0L, bSPI, 0L, size, scratch);
+		aPieces = pieces(a, 0L, size);
+		bPieces = pieces(b, 0L, size);
+		while(ai < aPieces.size())
+		{
+			Piece aPiece = aPieces.get(ai);
+			Piece bPiece = bPieces.get(bi);
+			long n = Math.min(aPiece.len - aDone, bPiece.len - bDone);
+
+			if(!leafEquals(aPiece.spi, aPiece.off + aDone, bPiece.spi, bPiece.off + bDone, n, scratch))
+				return false;
+			aDone += n;
+			bDone += n;
+			if(aDone == aPiece.len)
+			{
+				ai++;
+				aDone = 0L;
+			}
+			if(bDone == bPiece.len)
+			{
+				bi++;
+				bDone = 0L;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Continue a {@link List#hashCode()} over the remaining bytes of
+	 * a big endian buffer. Eight bytes are folded in at a time.
+	 * @param initial Hash so far.
+	 * @param buf Buffer to hash. Its position is not changed.
+	 * @return The updated hash.
+	 */
+	static int hash(int initial, ByteBuffer buf)
+	{
+		@Var
+		int h = initial;
+		@Var
+		int pos = buf.position();
+		int limit = buf.limit();
+		int wordsEnd = pos + ((limit - pos) & ~(Long.BYTES-1));
+
+		for(; pos<wordsEnd; pos+=Long.BYTES)
+		{
+			long w = buf.getLong(pos);
+
+			h = h * P8
+				+ (byte)(w>>>56) * P7
+				+ (byte)(w>>>48) * P6
+				+ (byte)(w>>>40) * P5
+				+ (byte)(w>>>32) * P4
+				+ (byte)(w>>>24) * P3
+				+ (byte)(w>>>16) * P2
+				+ (byte)(w>>> 8) * P1
+				+ (byte)w;
+		}
+		for(; pos<limit; pos++)
+			h = h * 31 + buf.get(pos);
+		return h;
+	}
+
+	private static int leafHash(int initial, ChunkSPI spi, long off, long len, Scratch scratch)
+	{
+		@Var
+		int h = initial;
+
+		if(spi instanceof RootedChunkSPI)
+			return hash(h, window(spi, off, len));
+		for(@Var long done=0L; done<len; )
+		{
+			ByteBuffer block = fill(scratch.first(), spi, off+done, len-done);
+
+			h = hash(h, block);
+			done += block.remaining();
+		}
+		return h;
+	}
+
+	/**
+	 * Compute the {@link List#hashCode()} of a chunk's contents.
+	 * Unlike {@link java.util.AbstractList#hashCode()}, this covers
+	 * all bytes of chunks larger than {@link Integer#MAX_VALUE}.
+	 * @param chunk Chunk to hash.
+	 * @return Hash of the chunk.
+	 */
+	static int contentHash(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+		@Var
+		int h = 1;
+
+		try
+		(
+			Scratch scratch = new Scratch();
+		)
+		{
+			if(!isComposite(spi))
+				return leafHash(h, spi, 0L, chunk.getSize(), scratch);
+			for(Piece piece : pieces(chunk, 0L, chunk.getSize()))
+				h = leafHash(h, piece.spi, piece.off, piece.len, scratch);
+			return h;
+		}
+	}
+
+	/**
+	 * Pass part of a leaf to an action as read only buffers.
+	 * Array, buffer and byte leaves are passed views of their contents.
+	 * Scoped leaves pass views of their mappings while holding their
+	 * scope open. Anything else has to be copied.
+	 */
+	static void leafSegments(ChunkSPI spi, long off, long len, Consumer<? super ByteBuffer> action)
+	{
+		if(spi instanceof RootedChunkSPI)
+		{
+			action.accept(((RootedChunkSPI)spi).window((int)off, (int)len));
+			return;
+		}
+		if(spi instanceof ScopedChunkSPI)
+		{
+			((ScopedChunkSPI)spi).forEachSegment(off, len, action);
+			return;
+		}
+		if(spi instanceof ByteChunkSPI)
+		{
+			action.accept(((ByteChunkSPI)spi).buffer());
+			return;
+		}
+		for(@Var long done=0L; done<len; )
+		{
+			int n = (int)Math.min(len - done, LargeChunksHelper.LARGE_CHUNK_SIZE);
+
+			action.accept(ByteBuffer.wrap(spi.copyTo(new byte[n], off + done, 0, n)).asReadOnlyBuffer());
+			done += n;
+		}
+	}
+
+	/**
+	 * Pass a range of a chunk to an action as a sequence of read
+	 * only buffers in order.
+	 * @param chunk The chunk.
+	 * @param off Offset of the range in {@code chunk}.
+	 * @param len Length of the range.
+	 * @param action Action to pass buffers to. Empty buffers are
+	 * 	never passed.
+	 */
+	static void forEachSegment(Chunk chunk, long off, long len, Consumer<? super ByteBuffer> action)
+	{
+		for(Piece piece : pieces(chunk, off, len))
+			leafSegments(piece.spi, piece.off, piece.len, action);
+	}
+}
@@ -0,0 +1,619 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Compiled set of byte patterns that finds every occurrence of any of
+ * them in a single pass over a chunk.
+ *
+ * The patterns are compiled into an Aho-Corasick automaton stored as
+ * a dense transition table. Byte values that appear in no pattern all
+ * share one column so the table has one column per distinct pattern
+ * byte plus one instead of 256. Matching reads each byte of the chunk
+ * once, from its leaves in place, and carries the automaton state
+ * from one leaf to the next. Matches that cross the boundaries between
+ * the pieces of a composite chunk are found without coalescing it.
+ *
+ * A matcher is immutable and can be used by any number of threads at
+ * once.
+ *
+ * <pre>
+ * ChunkMatcher matcher = ChunkMatcher.of(signatures);
+ *
+ * matcher.forEachMatch(payload, (pattern, off)-&gt;...);
+ * </pre>
+ */
+// Immutability: the tables are never modified after construction.
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressWarnings("Immutable")
+public final class ChunkMatcher
+{
+	/**
+	 * Action to take for each match.
+	 */
+	@FunctionalInterface
+	public static interface MatchHandler
+	{
+		/**
+		 * Handle a match.
+		 * @param pattern Index of the pattern that matched.
+		 * @param off Offset in the chunk of the first byte of the
+		 * 	match.
+		 */
+		public void onMatch(int pattern, long off);
+	}
+
+	/**
+	 * Internal handler that can stop matching early.
+	 */
+	@FunctionalInterface
+	private static interface Handler
+	{
+		/**
+		 * @return {@code false} to stop matching.
+		 */
+		public boolean onMatch(int pattern, long off);
+	}
+
+	private final List<Chunk> patterns;
+	private final int[] patternLens;
+	private final int maxPatternLen;
+	/**
+	 * Column of each byte value in {@link #delta}.
+	 */
+	private final int[] columns;
+	private final int columnCount;
+	/**
+	 * Transitions. The row of a state starts at its number times
+	 * {@link #columnCount} and each entry is the start of the row of
+	 * the next state. The start state is row zero.
+	 */
+	private final int[] delta;
+	/**
+	 * States are numbered so all those with matches come last.
+	 * Any row at or after this one has matches.
+	 */
+	private final int firstMatchRow;
+	private final int firstMatchState;
+	/**
+	 * Patterns that end at each state with matches, longest first.
+	 */
+	private final int[][] outputs;
+
+	private ChunkMatcher(List<Chunk> patterns)
+	{
+		int patternCount = patterns.size();
+		byte[][] bytes = new byte[patternCount][];
+		int[] cols = new int[256];
+		Builder builder;
+		@Var
+		int width = 1;	// column zero is for bytes in no pattern
+		@Var
+		long maxStates = 1L;
+
+		for(int p=0;p<patternCount;p++)
+		{
+			Chunk pattern = patterns.get(p);
+
+			if(pattern.isEmpty())
+				throw new IllegalArgumentException("Pattern " + p + " is empty.");
+			bytes[p] = pattern.copy();
+			maxStates += bytes[p].length;
+			for(byte b : bytes[p])
+				if(cols[b&0xff] == 0)
+					cols[b&0xff] = width++;
+		}
+		if(maxStates * width > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Patterns are too large to compile.");
+		this.patterns = patterns;
+		this.patternLens = new int[patternCount];
+		this.columns = cols;
+		this.columnCount = width;
+		builder = new Builder(cols, width, (int)maxStates);
+		for(int p=0;p<patternCount;p++)
+		{
+			patternLens[p] = bytes[p].length;
+			builder.add(bytes[p], p);
+		}
+		this.maxPatternLen = Arrays.stream(patternLens).max().orElse(0);
+		builder.link();
+		this.delta = builder.renumber();
+		this.firstMatchState = builder.firstMatchState;
+		this.firstMatchRow = firstMatchState * width;
+		this.outputs = builder.finalOutputs;
+	}
+
+	/**
+	 * Builds the automaton with states numbered in the order they
+	 * are created and then renumbers them for {@link ChunkMatcher}.
+	 */
+	private static final class Builder
+	{
+		private final int[] columns;
+		private final int width;
+		private final int[] next;
+		/**
+		 * Patterns ending at each state or {@code null} for none.
+		 */
+		private final int[][] out;
+		private final int[] fail;
+		private int states = 1;
+
+		private int firstMatchState;
+		private int[][] finalOutputs;
+
+		Builder(int[] columns, int width, int maxStates)
+		{
+			this.columns = columns;
+			this.width = width;
+			this.next = new int[maxStates * width];
+			this.out = new int[maxStates][];
+			this.fail = new int[maxStates];
+			Arrays.fill(next, -1);
+		}
+
+		void add(byte[] pattern, int index)
+		{
+			@Var
+			int state = 0;
+
+			for(byte b : pattern)
+			{
+				int i = state * width + columns[b&0xff];
+
+				if(next[i] < 0)
+					next[i] = states++;
+				state = next[i];
+			}
+			out[state] = append(out[state], index);
+		}
+
+		private static int[] append(@Nullable int[] a, int v)
+		{
+			int[] ret;
+
+			if(a == null)
+				return new int[]{v};
+			ret = Arrays.copyOf(a, a.length + 1);
+			ret[a.length] = v;
+			return ret;
+		}
+
+		@Nullable
+		private static int[] concat(@Nullable int[] a, @Nullable int[] b)
+		{
+			int[] ret;
+
+			if(a == null)
+				return b;
+			if(b == null)
+				return a;
+			ret = Arrays.copyOf(a, a.length + b.length);
+			System.arraycopy(b, 0, ret, a.length, b.length);
+			return ret;
+		}
+
+		/**
+		 * Fill in failure transitions breadth first so each state
+		 * has a transition for every column.
+		 */
+		void link()
+		{
+			Deque<Integer> todo = new ArrayDeque<>();
+
+			for(int c=0;c<width;c++)
+			{
+				int child = next[c];
+
+				if(child < 0)
+					next[c] = 0;
+				else
+				{
+					fail[child] = 0;
+					todo.add(child);
+				}
+			}
+			while(!todo.isEmpty())
+			{
+				int state = todo.remove();
+				int row = state * width;
+				int failRow = fail[state] * width;
+
+				// Shallower states are done so the failure's outputs are complete.
+				out[state] = concat(out[state], out[fail[state]]);
+				for(int c=0;c<width;c++)
+				{
+					int child = next[row + c];
+
+					if(child < 0)
+						next[row + c] = next[failRow + c];
+					else
+					{
+						fail[child] = next[failRow + c];
+						todo.add(child);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Number states with matches last and turn transitions
+		 * into row starts.
+		 * @return The transition table for {@link ChunkMatcher}.
+		 */
+		int[] renumber()
+		{
+			int[] map = new int[states];
+			int[] ret = new int[states * width];
+			@Var
+			int n = 0;
+
+			for(int s=0;s<states;s++)
+				if(out[s] == null)
+					map[s] = n++;
+			firstMatchState = n;
+			finalOutputs = new int[states - n][];
+			for(int s=0;s<states;s++)
+				if(out[s] != null)
+				{
+					finalOutputs[n - firstMatchState] = out[s];
+					map[s] = n++;
+				}
+			for(int s=0;s<states;s++)
+				for(int c=0;c<width;c++)
+					ret[map[s] * width + c] = map[next[s * width + c]] * width;
+			return ret;
+		}
+	}
+
+	/**
+	 * Compile a matcher.
+	 * @param patterns Patterns to find. Patterns are identified in
+	 * 	matches by their index in this collection's iteration
+	 * 	order.
+	 * @return Matcher for {@code patterns}.
+	 * @throws IllegalArgumentException if a pattern is empty or the
+	 * 	patterns are too large to compile.
+	 * @throws IndexOutOfBoundsException if a pattern is larger than
+	 * 	{@link Integer#MAX_VALUE}.
+	 */
+	public static ChunkMatcher of(Collection<? extends Chunk> patterns)
+	{
+		List<Chunk> list = new ArrayList<>(patterns.size());
+
+		for(Chunk pattern : patterns)
+			list.add(requireNonNull(pattern));
+		return new ChunkMatcher(Collections.unmodifiableList(list));
+	}
+
+	/**
+	 * Compile a matcher.
+	 * @param patterns Patterns to find.
+	 * @return Matcher for {@code patterns}.
+	 * @see #of(Collection)
+	 */
+	public static ChunkMatcher of(Chunk...patterns)
+	{
+		return of(Arrays.asList(patterns));
+	}
+
+	/**
+	 * @return Number of patterns.
+	 */
+	public int getPatternCount()
+	{
+		return patterns.size();
+	}
+
+	/**
+	 * @param i Index of a pattern.
+	 * @return The pattern.
+	 */
+	public Chunk getPattern(int i)
+	{
+		return patterns.get(i);
+	}
+
+	/**
+	 * @return Unmodifiable list of the patterns.
+	 */
+	public List<Chunk> getPatterns()
+	{
+		return patterns;
+	}
+
+	/**
+	 * Number of states in the automaton.
+	 */
+	// package for testing
+	int getStateCount()
+	{
+		return delta.length / columnCount;
+	}
+
+	/**
+	 * Report the matches ending at a state.
+	 * @param row Row of the state.
+	 * @param end Offset of the last byte matched.
+	 * @return {@code false} if the handler asked to stop.
+	 */
+	private boolean report(int row, long end, Handler handler)
+	{
+		for(int p : outputs[row / columnCount - firstMatchState])
+			if(!handler.onMatch(p, end - patternLens[p] + 1L))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Run the automaton over bytes of an array.
+	 * @param row Row of the current state.
+	 * @param pos Offset in the chunk of {@code bytes[off]}.
+	 * @return Row of the state after the last byte or {@code -1}
+	 * 	if the handler asked to stop.
+	 */
+	private int run(@Var int row, byte[] bytes, int off, int len, long pos, Handler handler)
+	{
+		for(int i=0;i<len;i++)
+		{
+			row = delta[row + columns[bytes[off + i]&0xff]];
+			if(row >= firstMatchRow && !report(row, pos + i, handler))
+				return -1;
+		}
+		return row;
+	}
+
+	/**
+	 * Run the automaton over the remaining bytes of a buffer.
+	 * @see #run(int,byte[],int,int,long,Handler)
+	 */
+	private int run(@Var int row, ByteBuffer buf, long pos, Handler handler)
+	{
+		int start = buf.position();
+		int limit = buf.limit();
+
+		for(int i=start;i<limit;i++)
+		{
+			row = delta[row + columns[buf.get(i)&0xff]];
+			if(row >= firstMatchRow && !report(row, pos + i - start, handler))
+				return -1;
+		}
+		return row;
+	}
+
+	/**
+	 * Run the automaton over a range of a chunk from the start
+	 * state.
+	 * @return {@code false} if the handler asked to stop.
+	 */
+	private boolean scan(Chunk chunk, long off, long len, Handler handler)
+	{
+		@Var
+		int row = 0;
+		@Var
+		long pos = off;
+
+		Util.requireValidOffLen(chunk.getSize(), off, len);
+		try
+		(
+			ChunkContent.Scratch scratch = new ChunkContent.Scratch();
+		)
+		{
+			for(ChunkContent.Piece piece : ChunkContent.pieces(chunk, off, len))
+			{
+				if(piece.spi instanceof RootedChunkSPI)
+				{
+					RootedChunkSPI rooted = (RootedChunkSPI)piece.spi;
+					byte[] array = rooted.backingArray();
+
+					if(array != null)
+						row = run(row, array, rooted.backingOffset() + (int)piece.off, (int)piece.len, pos, handler);
+					else
+						row = run(row, ChunkContent.window(rooted, piece.off, piece.len), pos, handler);
+					if(row < 0)
+						return false;
+					pos += piece.len;
+					continue;
+				}
+				for(@Var long done=0L; done<piece.len; )
+				{
+					ByteBuffer block = ChunkContent.fill(scratch.first(), piece.spi, piece.off + done, piece.len - done);
+					int n = block.remaining();
+
+					if((row = run(row, block.array(), 0, n, pos, handler)) < 0)
+						return false;
+					done += n;
+					pos += n;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find every match in a range of a chunk. Matches are reported in
+	 * the order they end. Matches ending at the same byte are
+	 * reported longest first. Only matches wholly inside the range
+	 * are reported.
+	 * @param chunk Chunk to search.
+	 * @param off Offset of the range.
+	 * @param len Length of the range.
+	 * @param handler Action for each match. Offsets passed to it are
+	 * 	offsets in {@code chunk}.
+	 * @throws IndexOutOfBoundsException if the range is not within
+	 * 	{@code chunk}.
+	 */
+	public void forEachMatch(Chunk chunk, long off, long len, MatchHandler handler)
+	{
+		requireNonNull(handler);
+		scan(requireNonNull(chunk), off, len, (pattern, matchOff)->{
+			handler.onMatch(pattern, matchOff);
+			return true;
+		});
+	}
+
+	/**
+	 * Find every match in a chunk.
+	 * @param chunk Chunk to search.
+	 * @param handler Action for each match.
+	 * @see #forEachMatch(Chunk,long,long,MatchHandler)
+	 */
+	public void forEachMatch(Chunk chunk, MatchHandler handler)
+	{
+		forEachMatch(chunk, 0L, chunk.getSize(), handler);
+	}
+
+	/**
+	 * Does a chunk contain any of the patterns? Matching stops at
+	 * the first match.
+	 * @param chunk Chunk to search.
+	 * @return {@code true} if any pattern occurs in {@code chunk}.
+	 */
+	public boolean matchesAny(Chunk chunk)
+	{
+		return !scan(requireNonNull(chunk), 0L, chunk.getSize(), (pattern, off)->false);
+	}
+
+	/**
+	 * Count the matches in a chunk.
+	 * @param chunk Chunk to search.
+	 * @return Number of matches of all patterns including ones that
+	 * 	overlap.
+	 */
+	public long countMatches(Chunk chunk)
+	{
+		long[] count = new long[1];
+
+		forEachMatch(chunk, (pattern, off)->count[0]++);
+		return count[0];
+	}
+
+	/**
+	 * Growable list of matches for merging the results of parallel
+	 * matching in order.
+	 */
+	private static final class MatchList
+	{
+		private int[] matchPatterns = new int[16];
+		private long[] matchOffs = new long[16];
+		private int size;
+
+		boolean add(int pattern, long off)
+		{
+			if(size == matchPatterns.length)
+			{
+				matchPatterns = Arrays.copyOf(matchPatterns, size * 2);
+				matchOffs = Arrays.copyOf(matchOffs, size * 2);
+			}
+			matchPatterns[size] = pattern;
+			matchOffs[size] = off;
+			size++;
+			return true;
+		}
+
+		MatchList addAll(MatchList that)
+		{
+			for(int i=0;i<that.size;i++)
+				add(that.matchPatterns[i], that.matchOffs[i]);
+			return this;
+		}
+
+		void forEach(MatchHandler handler)
+		{
+			for(int i=0;i<size;i++)
+				handler.onMatch(matchPatterns[i], matchOffs[i]);
+		}
+	}
+
+	/**
+	 * Find the matches ending in a range. Scanning starts early
+	 * enough to see the longest pattern ending at the start of the
+	 * range.
+	 * @param off Start of the range.
+	 * @param end End of the range (exclusive).
+	 */
+	private void scanEnding(Chunk chunk, long off, long end, Handler handler)
+	{
+		long lead = Math.max(0L, off - maxPatternLen + 1L);
+
+		scan(chunk, lead, end - lead, (pattern, matchOff)->
+			matchOff + patternLens[pattern] <= off
+			|| handler.onMatch(pattern, matchOff)
+		);
+	}
+
+	// package for testing
+	void parallelForEachMatch(Chunk chunk, MatchHandler handler, long splitSize)
+	{
+		requireNonNull(handler);
+		ParallelChunkSearch.invoke(chunk.getSize(), splitSize, (off, end)->{
+			MatchList matches = new MatchList();
+
+			scanEnding(chunk, off, end, matches::add);
+			return matches;
+		}, MatchList::addAll).forEach(handler);
+	}
+
+	/**
+	 * Find every match in a chunk matching ranges of it in parallel
+	 * on the common {@link java.util.concurrent.ForkJoinPool}. The
+	 * matches are collected and then passed to {@code handler} on
+	 * the calling thread in the same order as
+	 * {@link #forEachMatch(Chunk,MatchHandler)}. This is only worth
+	 * while for chunks of many megabytes such as large mapped files.
+	 * @param chunk Chunk to search.
+	 * @param handler Action for each match.
+	 */
+	public void parallelForEachMatch(Chunk chunk, MatchHandler handler)
+	{
+		parallelForEachMatch(chunk, handler, Tunables.getParallelSplitSize());
+	}
+
+	// package for testing
+	long parallelCountMatches(Chunk chunk, long splitSize)
+	{
+		return ParallelChunkSearch.invoke(chunk.getSize(), splitSize, (off, end)->{
+			long[] count = new long[1];
+
+			scanEnding(chunk, off, end, (pattern, matchOff)->{
+				count[0]++;
+				return true;
+			});
+			return count[0];
+		}, Long::sum);
+	}
+
+	/**
+	 * Count the matches in a chunk matching ranges of it in
+	 * parallel.
+	 * @param chunk Chunk to search.
+	 * @return Number of matches of all patterns including ones that
+	 * 	overlap.
+	 * @see #parallelForEachMatch(Chunk,MatchHandler)
+	 */
+	public long parallelCountMatches(Chunk chunk)
+	{
+		return parallelCountMatches(chunk, Tunables.getParallelSplitSize());
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " of " + patterns.size() + " patterns with " + getStateCount() + " states";
+	}
+}
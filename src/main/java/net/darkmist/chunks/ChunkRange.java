@@ -0,0 +1,206 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Range of a chunk whose bounds are checked once when it is created
+ * so that reads inside it do not check them again. Protocol decoders
+ * that validate a header length up front can read the fields inside
+ * without paying for bounds checks in every layer of a composite
+ * chunk on every read.
+ *
+ * When the range lies in a single array or buffer backed leaf reads
+ * index its storage directly. Otherwise reads go to the chunk as
+ * usual.
+ *
+ * Offsets passed to reads are relative to the start of the range and
+ * are trusted. Reads that are not inside the range may return other
+ * bytes of the backing array or buffer or throw
+ * {@link IndexOutOfBoundsException}.
+ */
+// Immutability: the array is never modified.
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressWarnings("Immutable")
+public final class ChunkRange
+{
+	private final Chunk chunk;
+	private final long rangeOff;
+	private final long rangeLen;
+
+	@Nullable
+	private final byte[] array;
+	@Nullable
+	private final ByteBuffer buf;
+	/**
+	 * Index of the start of the range in {@link #array} or
+	 * {@link #buf}.
+	 */
+	private final int base;
+	/**
+	 * SPI to read from when there is no direct storage.
+	 */
+	private final ChunkSPI spi;
+	/**
+	 * Offset of the start of the range in {@link #spi}.
+	 */
+	private final long spiOff;
+
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2", justification="Backing storage is only read.")
+	ChunkRange(Chunk chunk, long off, long len)
+	{
+		List<ChunkContent.Piece> pieces;
+		ChunkContent.Piece piece;
+		RootedChunkSPI rooted;
+
+		Util.requireValidOffLen(requireNonNull(chunk).getSize(), off, len);
+		this.chunk = chunk;
+		this.rangeOff = off;
+		this.rangeLen = len;
+		pieces = ChunkContent.pieces(chunk, off, len);
+		if(pieces.size() != 1)
+		{	// empty or spans leaves
+			this.array = null;
+			this.buf = null;
+			this.base = 0;
+			this.spi = chunk.getSPI();
+			this.spiOff = off;
+			return;
+		}
+		piece = pieces.get(0);
+		this.spi = piece.spi;
+		this.spiOff = piece.off;
+		if(!(piece.spi instanceof RootedChunkSPI))
+		{
+			this.array = null;
+			this.buf = null;
+			this.base = 0;
+			return;
+		}
+		rooted = (RootedChunkSPI)piece.spi;
+		this.array = rooted.backingArray();
+		this.buf = array==null ? rooted.backingBuffer() : null;
+		this.base = rooted.backingOffset() + (int)piece.off;
+	}
+
+	/**
+	 * @return Size of the range.
+	 */
+	public long getSize()
+	{
+		return rangeLen;
+	}
+
+	/**
+	 * Get a byte without checking its offset.
+	 * @param off Offset in the range.
+	 * @return Unsigned byte value at {@code off}.
+	 */
+	public int getByte(long off)
+	{
+		if(array != null)
+			return array[base + (int)off]&0xff;
+		if(buf != null)
+			return buf.get(base + (int)off)&0xff;
+		return spi.getByte(spiOff + off);
+	}
+
+	/**
+	 * Get a {@code short} without checking its offset.
+	 * @param off Offset in the range.
+	 * @param order Byte order of the value.
+	 * @return {@code short} value at {@code off}.
+	 */
+	@SuppressWarnings("PMD.AvoidUsingShortType")
+	public short getShort(long off, ByteOrder order)
+	{
+		int i = base + (int)off;
+
+		if(array != null)
+			return Util.shortFromBytes(array[i], array[i+1], order);
+		if(buf != null)
+			return Util.fromBig(buf.getShort(i), order);
+		return spi.getShort(spiOff + off, order);
+	}
+
+	/**
+	 * Get an unsigned {@code short} without checking its offset.
+	 * @param off Offset in the range.
+	 * @param order Byte order of the value.
+	 * @return Unsigned {@code short} value at {@code off} as an
+	 * 	{@code int}.
+	 */
+	public int getShortUnsigned(long off, ByteOrder order)
+	{
+		return getShort(off, order)&0xffff;
+	}
+
+	/**
+	 * Get an {@code int} without checking its offset.
+	 * @param off Offset in the range.
+	 * @param order Byte order of the value.
+	 * @return {@code int} value at {@code off}.
+	 */
+	public int getInt(long off, ByteOrder order)
+	{
+		int i = base + (int)off;
+
+		if(array != null)
+			return Util.intFromBytes(array[i], array[i+1], array[i+2], array[i+3], order);
+		if(buf != null)
+			return Util.fromBig(buf.getInt(i), order);
+		return spi.getInt(spiOff + off, order);
+	}
+
+	/**
+	 * Get an unsigned {@code int} without checking its offset.
+	 * @param off Offset in the range.
+	 * @param order Byte order of the value.
+	 * @return Unsigned {@code int} value at {@code off} as a
+	 * 	{@code long}.
+	 */
+	public long getIntUnsigned(long off, ByteOrder order)
+	{
+		return getInt(off, order)&0xffffffffL;
+	}
+
+	/**
+	 * Get a {@code long} without checking its offset.
+	 * @param off Offset in the range.
+	 * @param order Byte order of the value.
+	 * @return {@code long} value at {@code off}.
+	 */
+	public long getLong(long off, ByteOrder order)
+	{
+		int i = base + (int)off;
+
+		if(array != null)
+			return Util.longFromBytes(array[i], array[i+1], array[i+2], array[i+3], array[i+4], array[i+5], array[i+6], array[i+7], order);
+		if(buf != null)
+			return Util.fromBig(buf.getLong(i), order);
+		return spi.getLong(spiOff + off, order);
+	}
+
+	/**
+	 * @return The range as a chunk.
+	 */
+	public Chunk toChunk()
+	{
+		return chunk.subChunk(rangeOff, rangeLen);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " of " + chunk + " from " + rangeOff + " for " + rangeLen + " bytes";
+	}
+}
@@ -0,0 +1,385 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.Nullable;
+
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Sequential cursor over a chunk. Reads return the value at the
+ * current position and advance past it. The chunk is broken into its
+ * leaves once when the reader is created and the reader keeps track
+ * of the leaf it is in so each read only has to look at that leaf.
+ * Values that cross from one leaf into the next are assembled from
+ * both. No read other than {@link #readChunk(long)} allocates.
+ *
+ * Multi-byte reads without a byte order are big endian like
+ * {@link java.io.DataInput}. Reads past the end throw
+ * {@link IndexOutOfBoundsException} without moving the position.
+ */
+@NotThreadSafe
+@SuppressWarnings({"PMD.TooManyMethods","PMD.AvoidUsingShortType"})
+public final class ChunkReader
+{
+	private final Chunk chunk;
+	private final long size;
+	private final ChunkContent.Piece[] pieces;
+	/**
+	 * Offset in {@link #chunk} of each piece followed by the size.
+	 */
+	private final long[] starts;
+
+	private long pos;
+
+	// Current piece:
+	private int piece = -1;
+	private long pieceStart;
+	private long pieceEnd;
+	@Nullable
+	private byte[] array;
+	@Nullable
+	private ByteBuffer buf;
+	/**
+	 * Index of {@link #pieceStart} in {@link #array} or {@link #buf}.
+	 */
+	private int base;
+	@Nullable
+	private ChunkSPI spi;
+	/**
+	 * Offset of {@link #pieceStart} in {@link #spi}.
+	 */
+	private long spiOff;
+
+	ChunkReader(Chunk chunk)
+	{
+		List<ChunkContent.Piece> pieceList;
+
+		this.chunk = requireNonNull(chunk);
+		this.size = chunk.getSize();
+		pieceList = ChunkContent.pieces(chunk, 0L, size);
+		this.pieces = pieceList.toArray(new ChunkContent.Piece[0]);
+		this.starts = new long[pieces.length+1];
+		for(int i=0;i<pieces.length;i++)
+			starts[i+1] = starts[i] + pieces[i].len;
+		if(pieces.length > 0)
+			enter(0);
+	}
+
+	/**
+	 * Make a piece the current one.
+	 * @param i Index of the piece.
+	 */
+	private void enter(int i)
+	{
+		ChunkContent.Piece p = pieces[i];
+
+		piece = i;
+		pieceStart = starts[i];
+		pieceEnd = starts[i+1];
+		spi = p.spi;
+		spiOff = p.off;
+		if(p.spi instanceof RootedChunkSPI)
+		{
+			RootedChunkSPI rooted = (RootedChunkSPI)p.spi;
+
+			array = rooted.backingArray();
+			buf = array==null ? rooted.backingBuffer() : null;
+			base = rooted.backingOffset() + (int)p.off;
+		}
+		else
+		{
+			array = null;
+			buf = null;
+			base = 0;
+		}
+	}
+
+	/**
+	 * @param len Number of bytes about to be read.
+	 * @throws IndexOutOfBoundsException if there are not
+	 * 	{@code len} bytes remaining.
+	 */
+	private void require(long len)
+	{
+		if(len < 0 || size - pos < len)
+			throw new IndexOutOfBoundsException("Read of " + len + " bytes at position " + pos + " is outside chunk of size " + size + '.');
+	}
+
+	/**
+	 * Read a byte of the current piece at the position.
+	 */
+	private int byteHere()
+	{
+		int i = (int)(pos - pieceStart);
+
+		if(array != null)
+			return array[base + i]&0xff;
+		if(buf != null)
+			return buf.get(base + i)&0xff;
+		return requireNonNull(spi).getByte(spiOff + i);
+	}
+
+	/**
+	 * Read a value one byte at a time moving to the next piece
+	 * where needed. Only used for values crossing pieces.
+	 * @param len Size of the value.
+	 * @return The value as big endian.
+	 */
+	private long readStraddling(int len)
+	{
+		@Var
+		long value = 0L;
+
+		require(len);
+		for(int i=0;i<len;i++)
+		{
+			if(pos == pieceEnd)
+				enter(piece+1);
+			value = (value << Byte.SIZE) | byteHere();
+			pos++;
+		}
+		return value;
+	}
+
+	/**
+	 * @return The chunk being read.
+	 */
+	public Chunk getChunk()
+	{
+		return chunk;
+	}
+
+	/**
+	 * @return Offset in the chunk of the next read.
+	 */
+	public long position()
+	{
+		return pos;
+	}
+
+	/**
+	 * Move to an offset in the chunk.
+	 * @param newPos Offset of the next read.
+	 * @return this
+	 * @throws IndexOutOfBoundsException if {@code newPos} is
+	 * 	negative or past the end of the chunk.
+	 */
+	@CanIgnoreReturnValue
+	public ChunkReader position(long newPos)
+	{
+		@Var
+		int i;
+
+		if(newPos < 0 || newPos > size)
+			throw new IndexOutOfBoundsException("Position " + newPos + " is outside chunk of size " + size + '.');
+		pos = newPos;
+		if(pieces.length == 0 || (pieceStart <= newPos && newPos < pieceEnd))
+			return this;
+		i = Arrays.binarySearch(starts, 0, pieces.length, newPos);
+		if(i<0)	// not a piece start, so it is in the piece before the insertion point
+			i = -i-2;
+		enter(i);
+		return this;
+	}
+
+	/**
+	 * @return Number of bytes after the position.
+	 */
+	public long remaining()
+	{
+		return size - pos;
+	}
+
+	public boolean hasRemaining()
+	{
+		return pos < size;
+	}
+
+	/**
+	 * Skip over bytes.
+	 * @param len Number of bytes to skip.
+	 * @return this
+	 * @throws IndexOutOfBoundsException if {@code len} is negative
+	 * 	or more than the bytes remaining.
+	 */
+	@CanIgnoreReturnValue
+	public ChunkReader skip(long len)
+	{
+		require(len);
+		return position(pos + len);
+	}
+
+	public byte readByte()
+	{
+		return (byte)readUnsignedByte();
+	}
+
+	public int readUnsignedByte()
+	{
+		int value;
+
+		if(pos >= pieceEnd)
+			return (int)readStraddling(Byte.BYTES);
+		value = byteHere();
+		pos++;
+		return value;
+	}
+
+	public short readShort(ByteOrder order)
+	{
+		int i = (int)(pos - pieceStart);
+		short value;
+
+		if(pos + Short.BYTES > pieceEnd)
+			return Util.fromBig((short)readStraddling(Short.BYTES), order);
+		if(array != null)
+			value = Util.shortFromBytes(array[base+i], array[base+i+1], order);
+		else if(buf != null)
+			value = Util.fromBig(buf.getShort(base+i), order);
+		else
+			value = requireNonNull(spi).getShort(spiOff + i, order);
+		pos += Short.BYTES;
+		return value;
+	}
+
+	public short readShort()
+	{
+		return readShort(ByteOrder.BIG_ENDIAN);
+	}
+
+	public short readShortLE()
+	{
+		return readShort(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public int readUnsignedShort()
+	{
+		return readShort(ByteOrder.BIG_ENDIAN)&0xffff;
+	}
+
+	public int readUnsignedShortLE()
+	{
+		return readShort(ByteOrder.LITTLE_ENDIAN)&0xffff;
+	}
+
+	public int readInt(ByteOrder order)
+	{
+		int i = (int)(pos - pieceStart);
+		int value;
+
+		if(pos + Integer.BYTES > pieceEnd)
+			return Util.fromBig((int)readStraddling(Integer.BYTES), order);
+		if(array != null)
+			value = Util.intFromBytes(array[base+i], array[base+i+1], array[base+i+2], array[base+i+3], order);
+		else if(buf != null)
+			value = Util.fromBig(buf.getInt(base+i), order);
+		else
+			value = requireNonNull(spi).getInt(spiOff + i, order);
+		pos += Integer.BYTES;
+		return value;
+	}
+
+	public int readInt()
+	{
+		return readInt(ByteOrder.BIG_ENDIAN);
+	}
+
+	public int readIntLE()
+	{
+		return readInt(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public long readUnsignedInt()
+	{
+		return readInt(ByteOrder.BIG_ENDIAN)&0xffffffffL;
+	}
+
+	public long readUnsignedIntLE()
+	{
+		return readInt(ByteOrder.LITTLE_ENDIAN)&0xffffffffL;
+	}
+
+	public long readLong(ByteOrder order)
+	{
+		int i = (int)(pos - pieceStart);
+		long value;
+
+		if(pos + Long.BYTES > pieceEnd)
+			return Util.fromBig(readStraddling(Long.BYTES), order);
+		if(array != null)
+			value = Util.longFromBytes(array[base+i], array[base+i+1], array[base+i+2], array[base+i+3], array[base+i+4], array[base+i+5], array[base+i+6], array[base+i+7], order);
+		else if(buf != null)
+			value = Util.fromBig(buf.getLong(base+i), order);
+		else
+			value = requireNonNull(spi).getLong(spiOff + i, order);
+		pos += Long.BYTES;
+		return value;
+	}
+
+	public long readLong()
+	{
+		return readLong(ByteOrder.BIG_ENDIAN);
+	}
+
+	public long readLongLE()
+	{
+		return readLong(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Read bytes into an array.
+	 * @param bytes The array to read into.
+	 * @param off Offset in {@code bytes} to read into.
+	 * @param len Number of bytes to read.
+	 * @return {@code bytes}
+	 * @throws IndexOutOfBoundsException if {@code off} and
+	 * 	{@code len} are outside {@code bytes} or there are not
+	 * 	{@code len} bytes remaining.
+	 */
+	@CanIgnoreReturnValue
+	public byte[] readFully(byte[] bytes, int off, int len)
+	{
+		Util.requireValidOffLen(bytes, off, len);
+		require(len);
+		chunk.copyTo(bytes, pos, off, len);
+		position(pos + len);
+		return bytes;
+	}
+
+	@CanIgnoreReturnValue
+	public byte[] readFully(byte[] bytes)
+	{
+		return readFully(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Read bytes as a chunk. The bytes are not copied.
+	 * @param len Number of bytes to read.
+	 * @return Sub chunk of the bytes read.
+	 * @throws IndexOutOfBoundsException if there are not
+	 * 	{@code len} bytes remaining.
+	 */
+	public Chunk readChunk(long len)
+	{
+		Chunk ret;
+
+		require(len);
+		ret = chunk.subChunk(pos, len);
+		position(pos + len);
+		return ret;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " at " + pos + " of " + size;
+	}
+}
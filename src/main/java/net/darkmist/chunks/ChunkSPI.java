@@ -111,45 +111,23 @@ public interface ChunkSPI
 	 */
 	public default void writeTo(DataOutput dataOut, Set<WriteFlag> flags) throws IOException
 	{
-		//final Logger logger = LoggerFactory.getLogger(ChunkSPI.class);
 		long size = getSize();
-		byte[] buf;
-		@Var
-		long fullBuffersEnd;
-		int extra;
-		int bufSize = Tunables.getTmpBufSize();
-
-		//logger.debug("writeTo: size={} bufSize={}", size, bufSize);
-		if(size <= bufSize)
-		{
-			buf = new byte[(int)size];
-			copyTo(buf, 0L, 0, (int)size);
-			dataOut.write(buf);
-			return;
-		}
-
-		extra = (int)(size % bufSize);
-		//logger.debug("\textra={}", extra);
+		byte[] buf = Tunables.acquireTmpBuf();
 
-		fullBuffersEnd = size;
-		if(extra != 0)
+		try
 		{
-			//logger.debug("have extra");
-			fullBuffersEnd = size-extra;
+			for(@Var long off=0L;off<size;)
+			{
+				int len = (int)Math.min(buf.length, size-off);
+
+				copyTo(buf, off, 0, len);
+				dataOut.write(buf, 0, len);
+				off+=len;
+			}
 		}
-
-		buf=Tunables.getTmpBuf();
-		for(long off=0L;off<fullBuffersEnd;off+=buf.length)
-		{
-			copyTo(buf, off, 0, buf.length);
-			dataOut.write(buf);
-		}
-
-		if(extra != 0)
+		finally
 		{
-			//logger.debug("have extra");
-			copyTo(buf, fullBuffersEnd, 0, extra);
-			dataOut.write(buf, 0, extra);
+			Tunables.releaseTmpBuf(buf);
 		}
 	}
 
@@ -0,0 +1,261 @@
+package net.darkmist.chunks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.annotation.Nullable;
+
+/**
+ * Owner of file mappings that are released when it is closed instead
+ * of when the garbage collector gets around to it. Processes that map
+ * many files can otherwise run out of mappings or address space long
+ * before there is enough heap pressure for a collection.
+ *
+ * <pre>
+ * try(ChunkScope scope = FileChunks.openScope())
+ * {
+ * 	Chunk chunk = scope.map(path);
+ * 	...
+ * }
+ * </pre>
+ *
+ * Chunks mapped by a scope, including sub chunks and chunks built from
+ * them, throw {@link IllegalStateException} when read after the scope
+ * is closed. Copy anything needed afterwards before closing. Closing a
+ * scope waits for reads of its chunks already in progress in other
+ * threads to finish before unmapping anything.
+ */
+@ThreadSafe
+public final class ChunkScope implements Closeable
+{
+	/**
+	 * Number of reader cells. This MUST be a power of 2.
+	 */
+	private static final int READER_CELLS = 64;
+	/**
+	 * Ints between reader cells so each is on its own cache line.
+	 */
+	private static final int READER_CELL_SPACING = 16;
+
+	@GuardedBy("this")
+	private final List<MappedByteBuffer> mappings = new ArrayList<>();
+	/**
+	 * Held for reading while a chunk of this scope runs code of the
+	 * caller, such as an action passed its segments, and for writing
+	 * while closing. This lets close detect being called from such
+	 * code instead of waiting on itself.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * Counts of short reads in progress spread by thread so readers
+	 * on different threads do not contend. Close waits for all of
+	 * them to reach zero after clearing {@link #open}.
+	 */
+	private final AtomicIntegerArray readers = new AtomicIntegerArray(READER_CELLS * READER_CELL_SPACING);
+	private volatile boolean open = true;
+
+	ChunkScope()
+	{
+	}
+
+	/**
+	 * @return {@code true} if this scope has not been closed.
+	 */
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * @throws IllegalStateException if this scope has been closed.
+	 */
+	void requireOpen()
+	{
+		if(!open)
+			throw new IllegalStateException("Chunk scope has been closed.");
+	}
+
+	/**
+	 * Start a short read of chunks of this scope that does not run
+	 * any code of the caller. Every call that returns must be
+	 * followed by a call to {@link #exit(int)}. This costs an
+	 * uncontended atomic increment instead of taking {@link #lock}.
+	 * @return Cell to pass to {@link #exit(int)}.
+	 * @throws IllegalStateException if this scope has been closed.
+	 */
+	int enter()
+	{
+		int cell = ((int)Thread.currentThread().getId() & (READER_CELLS - 1)) * READER_CELL_SPACING;
+
+		readers.getAndIncrement(cell);
+		// Close clears open before checking the cells so either it
+		// sees this increment or this sees open cleared.
+		if(!open)
+		{
+			readers.getAndDecrement(cell);
+			requireOpen();
+		}
+		return cell;
+	}
+
+	/**
+	 * Finish a short read of chunks of this scope.
+	 * @param cell Cell returned by {@link #enter()}.
+	 */
+	void exit(int cell)
+	{
+		readers.getAndDecrement(cell);
+	}
+
+	/**
+	 * Wait for short reads in progress to finish.
+	 */
+	private void awaitReaders()
+	{
+		for(int i=0;i<READER_CELLS * READER_CELL_SPACING;i+=READER_CELL_SPACING)
+			while(readers.get(i) != 0)
+				Thread.yield();
+	}
+
+	/**
+	 * Start reading chunks of this scope in a way that runs code of
+	 * the caller. Every call that returns must be followed by a call
+	 * to {@link #endRead()}.
+	 * @throws IllegalStateException if this scope has been closed.
+	 */
+	void beginRead()
+	{
+		lock.readLock().lock();
+		if(!open)
+		{
+			lock.readLock().unlock();
+			requireOpen();
+		}
+	}
+
+	/**
+	 * Finish reading chunks of this scope.
+	 */
+	void endRead()
+	{
+		lock.readLock().unlock();
+	}
+
+	private synchronized void register(MappedByteBuffer buf)
+	{
+		if(!open)
+		{	// closed while we were mapping
+			Unmapper.unmap(buf);
+			requireOpen();
+		}
+		mappings.add(buf);
+	}
+
+	private Chunk map(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
+	{
+		requireOpen();
+		return ScopedChunkSPI.instance(this, FileChunks.map(fc, off, len, origin, this::register));
+	}
+
+	/**
+	 * Map part of a file into a chunk owned by this scope.
+	 * @param fc The channel to map.
+	 * @param off Offset in the file of the chunk.
+	 * @param len Length of the chunk.
+	 * @return Chunk of the mapped bytes.
+	 * @throws IOException if mapping fails.
+	 * @throws IllegalStateException if this scope has been closed.
+	 */
+	public Chunk map(FileChannel fc, long off, long len) throws IOException
+	{
+		return map(fc, off, len, FileOrigin.forChannel(fc));
+	}
+
+	public Chunk map(FileChannel fc, long off) throws IOException
+	{
+		return map(fc, off, Math.subtractExact(fc.size(), off));
+	}
+
+	public Chunk map(FileChannel fc) throws IOException
+	{
+		return map(fc, 0L);
+	}
+
+	public Chunk map(Path path, long off, long len) throws IOException
+	{
+		FileOrigin origin = FileOrigin.forPath(path);
+
+		return FileChunks.withFileChannelFor(path, (fc)->map(fc, off, len, origin));
+	}
+
+	public Chunk map(Path path, long off) throws IOException
+	{
+		FileOrigin origin = FileOrigin.forPath(path);
+
+		return FileChunks.withFileChannelFor(path, (fc)->map(fc, off, Math.subtractExact(fc.size(), off), origin));
+	}
+
+	public Chunk map(Path path) throws IOException
+	{
+		return map(path, 0L);
+	}
+
+	/**
+	 * @return Number of mappings currently held by this scope.
+	 */
+	// package for testing
+	synchronized int getMappingCount()
+	{
+		return mappings.size();
+	}
+
+	/**
+	 * Unmap everything mapped by this scope after waiting for reads
+	 * in progress to finish. Closing a closed scope does nothing.
+	 * @throws IllegalStateException if called while the current
+	 * 	thread is reading a chunk of this scope, such as from an
+	 * 	action passed to {@link Chunk#forEachSegment(java.util.function.Consumer)}.
+	 */
+	@Override
+	public void close()
+	{
+		List<MappedByteBuffer> toUnmap;
+
+		if(lock.getReadHoldCount() > 0)
+			throw new IllegalStateException("Chunk scope closed while reading one of its chunks.");
+		lock.writeLock().lock();
+		try
+		{
+			synchronized(this)
+			{
+				if(!open)
+					return;
+				open = false;
+				toUnmap = new ArrayList<>(mappings);
+				mappings.clear();
+			}
+			awaitReaders();
+			for(MappedByteBuffer buf : toUnmap)
+				Unmapper.unmap(buf);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + (open ? " (open)" : " (closed)");
+	}
+}
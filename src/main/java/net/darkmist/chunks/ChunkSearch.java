@@ -0,0 +1,477 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Searching used to implement {@link Chunk#indexOf(byte,long)},
+ * {@link Chunk#indexOf(Chunk,long)} and friends.
+ *
+ * Chunks are broken into leaf pieces with
+ * {@link ChunkContent#pieces(Chunk,long,long)} and each piece is
+ * searched in place as a buffer. Leaves that are not buffer or array
+ * backed are copied out a scratch buffer at a time. Single bytes are
+ * searched for eight at a time by reading longs and testing each
+ * byte of the word at once. Longer patterns use Boyer-Moore-Horspool
+ * inside each buffer. Matches that cross from one buffer into the
+ * next are checked separately at each boundary.
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+final class ChunkSearch
+{
+	private static final long ONES = 0x0101010101010101L;
+	private static final long LOWS = 0x7f7f7f7f7f7f7f7fL;
+	private static final long NOT_FOUND = -1L;
+
+	private ChunkSearch()
+	{
+	}
+
+	/**
+	 * Find the zero bytes in a word. Unlike the usual
+	 * {@code (w - 0x01..) & ~w & 0x80..} test this has no false
+	 * positives above a real zero byte so it can be used to count
+	 * and to find the last match as well as the first.
+	 * @param w Word to test.
+	 * @return Word with the high bit of each byte that was zero
+	 * 	in {@code w} set and all other bits clear.
+	 */
+	// package for testing
+	static long zeroBytes(long w)
+	{
+		long t = (w & LOWS) + LOWS;
+
+		return ~(t | w | LOWS);
+	}
+
+	private static long broadcast(byte b)
+	{
+		return (b & 0xffL) * ONES;
+	}
+
+	/**
+	 * Get part of a leaf as a big endian buffer. Rooted leaves are
+	 * viewed in place. Anything else has as much as fits copied into
+	 * a scratch buffer.
+	 * @return Buffer with the bytes between its position and limit.
+	 */
+	private static ByteBuffer block(ChunkSPI spi, long off, long len, ChunkContent.Scratch scratch)
+	{
+		if(spi instanceof RootedChunkSPI)
+			return ChunkContent.window(spi, off, len);
+		return ChunkContent.fill(scratch.first(), spi, off, len);
+	}
+
+	/**
+	 * Length of the last block of part of a leaf when walking it
+	 * backwards.
+	 */
+	private static long lastBlockLen(ChunkSPI spi, long len, ChunkContent.Scratch scratch)
+	{
+		if(spi instanceof RootedChunkSPI)
+			return len;
+		return Math.min(len, scratch.first().capacity());
+	}
+
+       /*-------------+
+        | Single byte |
+        +-------------*/
+
+	/**
+	 * @return Index of the first {@code b} after the position of
+	 * 	{@code buf} relative to its position or {@code -1}.
+	 */
+	private static int indexOf(ByteBuffer buf, byte b)
+	{
+		int start = buf.position();
+		int limit = buf.limit();
+		long pattern = broadcast(b);
+		@Var
+		int i = start;
+
+		for(; i <= limit - Long.BYTES; i += Long.BYTES)
+		{
+			long found = zeroBytes(buf.getLong(i) ^ pattern);
+
+			if(found != 0L)
+				return i - start + Long.numberOfLeadingZeros(found) / Byte.SIZE;
+		}
+		for(; i < limit; i++)
+			if(buf.get(i) == b)
+				return i - start;
+		return -1;
+	}
+
+	/**
+	 * @return Index of the last {@code b} before the limit of
+	 * 	{@code buf} relative to its position or {@code -1}.
+	 */
+	private static int lastIndexOf(ByteBuffer buf, byte b)
+	{
+		int start = buf.position();
+		long pattern = broadcast(b);
+		@Var
+		int i = buf.limit();
+
+		for(; i - Long.BYTES >= start; i -= Long.BYTES)
+		{
+			long found = zeroBytes(buf.getLong(i - Long.BYTES) ^ pattern);
+
+			if(found != 0L)
+				return i - start - 1 - Long.numberOfTrailingZeros(found) / Byte.SIZE;
+		}
+		while(i > start)
+			if(buf.get(--i) == b)
+				return i - start;
+		return -1;
+	}
+
+	private static long count(ByteBuffer buf, byte b)
+	{
+		int limit = buf.limit();
+		long pattern = broadcast(b);
+		@Var
+		int i = buf.position();
+		@Var
+		long count = 0L;
+
+		for(; i <= limit - Long.BYTES; i += Long.BYTES)
+			count += Long.bitCount(zeroBytes(buf.getLong(i) ^ pattern));
+		for(; i < limit; i++)
+			if(buf.get(i) == b)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Find the first occurrence of a byte.
+	 * @param chunk Chunk to search.
+	 * @param b Byte to find.
+	 * @param from First offset to consider. Negative values are
+	 * 	treated as zero.
+	 * @return Offset of the first {@code b} at or after
+	 * 	{@code from} or {@code -1} if there is none.
+	 */
+	static long indexOf(Chunk chunk, byte b, long from)
+	{
+		long size = chunk.getSize();
+		long start = Math.max(from, 0L);
+		@Var
+		long pos = start;
+
+		if(start >= size)
+			return NOT_FOUND;
+		try
+		(
+			ChunkContent.Scratch scratch = new ChunkContent.Scratch();
+		)
+		{
+			for(ChunkContent.Piece piece : ChunkContent.pieces(chunk, start, size - start))
+				for(@Var long done=0L; done<piece.len; )
+				{
+					ByteBuffer buf = block(piece.spi, piece.off + done, piece.len - done, scratch);
+					int i = indexOf(buf, b);
+
+					if(i >= 0)
+						return pos + i;
+					done += buf.remaining();
+					pos += buf.remaining();
+				}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Find the last occurrence of a byte.
+	 * @param chunk Chunk to search.
+	 * @param b Byte to find.
+	 * @param from Last offset to consider. Values past the end of
+	 * 	{@code chunk} are treated as the last byte.
+	 * @return Offset of the last {@code b} at or before
+	 * 	{@code from} or {@code -1} if there is none.
+	 */
+	static long lastIndexOf(Chunk chunk, byte b, long from)
+	{
+		long end = Math.min(from, chunk.getSize() - 1L) + 1L;
+		List<ChunkContent.Piece> pieces;
+		@Var
+		long pos = end;
+
+		if(end <= 0L)
+			return NOT_FOUND;
+		pieces = ChunkContent.pieces(chunk, 0L, end);
+		try
+		(
+			ChunkContent.Scratch scratch = new ChunkContent.Scratch();
+		)
+		{
+			for(int p=pieces.size()-1;p>=0;p--)
+			{
+				ChunkContent.Piece piece = pieces.get(p);
+
+				for(@Var long left=piece.len; left>0L; )
+				{
+					long n = lastBlockLen(piece.spi, left, scratch);
+					ByteBuffer buf = block(piece.spi, piece.off + left - n, n, scratch);
+					int i = lastIndexOf(buf, b);
+
+					pos -= n;
+					if(i >= 0)
+						return pos + i;
+					left -= n;
+				}
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Count the occurrences of a byte.
+	 * @param chunk Chunk to search.
+	 * @param b Byte to count.
+	 * @return Number of bytes in {@code chunk} equal to {@code b}.
+	 */
+	static long count(Chunk chunk, byte b)
+	{
+		@Var
+		long count = 0L;
+
+		try
+		(
+			ChunkContent.Scratch scratch = new ChunkContent.Scratch();
+		)
+		{
+			for(ChunkContent.Piece piece : ChunkContent.pieces(chunk, 0L, chunk.getSize()))
+				for(@Var long done=0L; done<piece.len; )
+				{
+					ByteBuffer buf = block(piece.spi, piece.off + done, piece.len - done, scratch);
+
+					count += count(buf, b);
+					done += buf.remaining();
+				}
+		}
+		return count;
+	}
+
+       /*----------+
+        | Patterns |
+        +----------*/
+
+	/**
+	 * Build the Horspool shift table for searching forwards.
+	 * @return How far the window can move when each byte value is
+	 * 	the last byte of the window.
+	 */
+	private static int[] skipTable(byte[] pattern)
+	{
+		int m = pattern.length;
+		int[] skip = new int[256];
+
+		Arrays.fill(skip, m);
+		for(int j=0;j<m-1;j++)
+			skip[pattern[j]&0xff] = m - 1 - j;
+		return skip;
+	}
+
+	/**
+	 * Build the Horspool shift table for searching backwards.
+	 * @return How far the window can move when each byte value is
+	 * 	the first byte of the window.
+	 */
+	private static int[] backSkipTable(byte[] pattern)
+	{
+		int m = pattern.length;
+		int[] skip = new int[256];
+
+		Arrays.fill(skip, m);
+		for(int j=m-1;j>0;j--)
+			skip[pattern[j]&0xff] = j;
+		return skip;
+	}
+
+	private static boolean matchesAt(ByteBuffer buf, int i, byte[] pattern)
+	{
+		for(int j=0;j<pattern.length;j++)
+			if(buf.get(i + j) != pattern[j])
+				return false;
+		return true;
+	}
+
+	private static boolean matchesAt(Chunk chunk, long off, byte[] pattern)
+	{
+		for(int j=0;j<pattern.length;j++)
+			if((byte)chunk.getByte(off + j) != pattern[j])
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return Index of the first match wholly inside {@code buf}
+	 * 	relative to its position or {@code -1}.
+	 */
+	private static int indexOf(ByteBuffer buf, byte[] pattern, int[] skip)
+	{
+		int start = buf.position();
+		int m = pattern.length;
+		int last = buf.limit() - m;
+		byte lastByte = pattern[m - 1];
+		@Var
+		int i = start;
+
+		while(i <= last)
+		{
+			byte b = buf.get(i + m - 1);
+
+			if(b == lastByte && matchesAt(buf, i, pattern))
+				return i - start;
+			i += skip[b&0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Index of the last match wholly inside {@code buf}
+	 * 	relative to its position or {@code -1}.
+	 */
+	private static int lastIndexOf(ByteBuffer buf, byte[] pattern, int[] skip)
+	{
+		int start = buf.position();
+		byte firstByte = pattern[0];
+		@Var
+		int i = buf.limit() - pattern.length;
+
+		while(i >= start)
+		{
+			byte b = buf.get(i);
+
+			if(b == firstByte && matchesAt(buf, i, pattern))
+				return i - start;
+			i -= skip[b&0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the first occurrence of a pattern.
+	 * @param chunk Chunk to search.
+	 * @param pattern Bytes to find.
+	 * @param from First offset to consider. Negative values are
+	 * 	treated as zero.
+	 * @return Offset of the first match at or after {@code from}
+	 * 	or {@code -1} if there is none. An empty pattern matches
+	 * 	at {@code from} or the end of the chunk if that is
+	 * 	smaller.
+	 * @throws IndexOutOfBoundsException if {@code pattern} is too
+	 * 	large to fit in an array.
+	 */
+	static long indexOf(Chunk chunk, Chunk pattern, long from)
+	{
+		long size = chunk.getSize();
+		long m = pattern.getSize();
+		long start = Math.max(from, 0L);
+		long last = size - m;
+		byte[] bytes;
+		int[] skip;
+		@Var
+		long pos = start;
+
+		if(m == 0L)
+			return Math.min(start, size);
+		if(m == 1L)
+			return indexOf(chunk, (byte)pattern.getByte(0L), start);
+		if(start > last)
+			return NOT_FOUND;
+		bytes = pattern.copy();
+		skip = skipTable(bytes);
+		try
+		(
+			ChunkContent.Scratch scratch = new ChunkContent.Scratch();
+		)
+		{
+			for(ChunkContent.Piece piece : ChunkContent.pieces(chunk, start, size - start))
+				for(@Var long done=0L; done<piece.len; )
+				{
+					ByteBuffer buf = block(piece.spi, piece.off + done, piece.len - done, scratch);
+					int n = buf.remaining();
+					int i = indexOf(buf, bytes, skip);
+
+					if(i >= 0)
+						return pos + i;
+					// Matches starting here that run into the next block.
+					for(long q=Math.max(pos, pos + n - m + 1L); q<pos+n && q<=last; q++)
+						if(matchesAt(chunk, q, bytes))
+							return q;
+					done += n;
+					pos += n;
+				}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Find the last occurrence of a pattern.
+	 * @param chunk Chunk to search.
+	 * @param pattern Bytes to find.
+	 * @param from Last offset to consider. Values past the last
+	 * 	place {@code pattern} fits are treated as that place.
+	 * @return Offset of the last match at or before {@code from}
+	 * 	or {@code -1} if there is none. An empty pattern matches
+	 * 	at {@code from} or the end of the chunk if that is
+	 * 	smaller.
+	 * @throws IndexOutOfBoundsException if {@code pattern} is too
+	 * 	large to fit in an array.
+	 */
+	static long lastIndexOf(Chunk chunk, Chunk pattern, long from)
+	{
+		long m = pattern.getSize();
+		long last = Math.min(from, chunk.getSize() - m);
+		List<ChunkContent.Piece> pieces;
+		byte[] bytes;
+		int[] skip;
+		@Var
+		long pos;
+
+		if(m == 1L)
+			return lastIndexOf(chunk, (byte)pattern.getByte(0L), from);
+		if(last < 0L)
+			return NOT_FOUND;
+		if(m == 0L)
+			return last;
+		bytes = pattern.copy();
+		skip = backSkipTable(bytes);
+		pos = last + m;
+		pieces = ChunkContent.pieces(chunk, 0L, pos);
+		try
+		(
+			ChunkContent.Scratch scratch = new ChunkContent.Scratch();
+		)
+		{
+			for(int p=pieces.size()-1;p>=0;p--)
+			{
+				ChunkContent.Piece piece = pieces.get(p);
+
+				for(@Var long left=piece.len; left>0L; )
+				{
+					long n = lastBlockLen(piece.spi, left, scratch);
+					long blockEnd = pos;
+					ByteBuffer buf;
+					int i;
+
+					pos -= n;
+					// Matches starting here that run into the next block.
+					for(long q=Math.min(blockEnd - 1L, last); q>=pos && q>blockEnd-m; q--)
+						if(matchesAt(chunk, q, bytes))
+							return q;
+					buf = block(piece.spi, piece.off + left - n, n, scratch);
+					if((i = lastIndexOf(buf, bytes, skip)) >= 0)
+						return pos + i;
+					left -= n;
+				}
+			}
+		}
+		return NOT_FOUND;
+	}
+}
@@ -6,8 +6,13 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
+import com.google.errorprone.annotations.Var;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 final class ChunkSerializationProxy implements Externalizable
@@ -26,13 +31,90 @@ final class ChunkSerializationProxy implements Externalizable
 		this(null);
 	}
 
+	private static ByteBuffer readHeapBuffer(ObjectInput oi, int len) throws IOException
+	{
+		byte[] bytes = new byte[len];
+
+		oi.readFully(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	private static ByteBuffer readDirectBuffer(ObjectInput oi, int len) throws IOException
+	{
+		byte[] tmp = Tunables.acquireTmpBuf();
+		ByteBuffer buf = ByteBuffer.allocateDirect(len);
+
+		try
+		{
+			while(buf.hasRemaining())
+			{
+				int n = Math.min(tmp.length, buf.remaining());
+
+				oi.readFully(tmp, 0, n);
+				buf.put(tmp, 0, n);
+			}
+		}
+		finally
+		{
+			Tunables.releaseTmpBuf(tmp);
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Read bytes into a new buffer allocated at exactly the length
+	 * given. Callers bound {@code len} so a bogus length on a short
+	 * stream costs at most one allocation of that size before
+	 * reading fails.
+	 * @param oi Input to read from.
+	 * @param len Number of bytes to read.
+	 * @param direct Read into a direct buffer instead of an array.
+	 * @return Buffer containing the bytes read.
+	 * @throws IOException if reading from {@code oi} does.
+	 */
+	static ByteBuffer readBuffer(ObjectInput oi, int len, boolean direct) throws IOException
+	{
+		if(len == 0)
+			return ByteBuffer.allocate(0);
+		if(direct)
+			return readDirectBuffer(oi, len);
+		return readHeapBuffer(oi, len);
+	}
+
+	/**
+	 * Read the bytes of a chunk.
+	 * @param oi Input to read from.
+	 * @param len Number of bytes to read.
+	 * @param segmentSize Maximum size of each segment to read into.
+	 * @param direct Read into direct buffers instead of arrays.
+	 * @return The chunk read. Chunks larger than
+	 * 	{@code segmentSize} are multi chunks of segments. Each
+	 * 	segment is allocated once at its final size so no more
+	 * 	than one segment is allocated ahead of the bytes read.
+	 * @throws IOException if reading from {@code oi} does.
+	 */
+	// package for testing
+	static Chunk readChunk(ObjectInput oi, long len, int segmentSize, boolean direct) throws IOException
+	{
+		List<Chunk> segments = new ArrayList<>();
+
+		for(@Var long remaining = len; remaining > 0; )
+		{
+			int n = (int)Math.min(remaining, segmentSize);
+
+			segments.add(Chunks.giveBuffer(readBuffer(oi, n, direct)));
+			remaining -= n;
+		}
+		return Chunks.ofChunks(segments);
+	}
+
 	@Override
 	@SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
 		// I really do want to check for 1
 	public void readExternal(ObjectInput oi) throws IOException
 	{
 		long len;
-		byte[] bytes;
 		len = oi.readLong();
 		if(len < 0)
 			throw new InvalidObjectException("Length " + len + " was negative while deserializaing chunk.");
@@ -49,23 +131,19 @@ final class ChunkSerializationProxy implements Externalizable
 			this.chunk=Chunks.ofByte(b);
 			return;
 		}
-		// FIXME: handle lengths larger than Integer.MAX_VALUE
-		if(len > Integer.MAX_VALUE)
-			throw new UnsupportedOperationException("Deserializaing of Chunks larger than Integer.MAX_VALUE is not yet supported.");
-		bytes = new byte[(int)len];
-		oi.readFully(bytes);
-		this.chunk = Chunks.giveBytes(bytes);
+		this.chunk = readChunk(oi, len, Tunables.getSerialSegmentSize(), Tunables.isSerialDirect());
 	}
 
-	// FIXME: and how inefficient can we be?
+	/**
+	 * Write the length followed by the bytes of the chunk. The bytes
+	 * are written in blocks by {@link Chunk#writeTo(java.io.DataOutput)}
+	 * which handles composite chunks a segment at a time.
+	 */
 	@Override
 	public void writeExternal(ObjectOutput oo) throws IOException
 	{
-		long len = chunk.getSize();
-
-		oo.writeLong(len);
-		for(long pos=0;pos<len;pos++)
-			oo.write(chunk.getByte(pos));
+		oo.writeLong(chunk.getSize());
+		chunk.writeTo(oo);
 	}
 
 	// Non-private for testing.
@@ -0,0 +1,340 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.Nullable;
+
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Reusable view of part of a chunk for loops that look at many short
+ * lived pieces, such as the fields of each packet. Unlike
+ * {@link Chunk#subChunk(long,long)} pointing a window somewhere new
+ * allocates nothing. A window becomes a real chunk only when
+ * {@link #toChunk()} is called.
+ *
+ * When the viewed range is inside a single leaf of the chunk, reads
+ * go straight to that leaf's storage. Offsets are relative to the
+ * start of the window and are checked against its size.
+ */
+@NotThreadSafe
+@SuppressWarnings("PMD.AvoidUsingShortType")
+public final class ChunkWindow
+{
+	private Chunk chunk = Chunks.empty();
+	private long off;
+	private long len;
+
+	// Where reads go:
+	@Nullable
+	private byte[] array;
+	@Nullable
+	private ByteBuffer buf;
+	/**
+	 * Index of the start of the window in {@link #array} or
+	 * {@link #buf}.
+	 */
+	private int base;
+	private ChunkSPI spi = chunk.getSPI();
+	/**
+	 * Offset of the start of the window in {@link #spi}.
+	 */
+	private long spiOff;
+
+	/**
+	 * Create an empty window.
+	 */
+	public ChunkWindow()
+	{
+	}
+
+	/**
+	 * Point this window at part of a chunk.
+	 * @param target The chunk to view.
+	 * @param targetOff Offset of the window in {@code target}.
+	 * @param targetLen Size of the window.
+	 * @return this
+	 * @throws IndexOutOfBoundsException if the window would be
+	 * 	outside {@code target}.
+	 */
+	@CanIgnoreReturnValue
+	public ChunkWindow reset(Chunk target, long targetOff, long targetLen)
+	{
+		@Var
+		ChunkSPI leaf = requireNonNull(target).getSPI();
+		@Var
+		long leafOff = targetOff;
+
+		Util.requireValidOffLen(target.getSize(), targetOff, targetLen);
+		chunk = target;
+		off = targetOff;
+		len = targetLen;
+		// Find the leaf holding the whole window without allocating.
+		while(targetLen > 0)
+		{
+			if(leaf instanceof SubChunkSPI)
+			{
+				SubChunkSPI sub = (SubChunkSPI)leaf;
+
+				leafOff += sub.getSubChunkOff();
+				leaf = sub.getChunk().getSPI();
+			}
+			else if(leaf instanceof PairChunkSPI)
+			{
+				PairChunkSPI pair = (PairChunkSPI)leaf;
+				long secondOffset = pair.getFirst().getSize();
+
+				if(leafOff + targetLen <= secondOffset)
+					leaf = pair.getFirst().getSPI();
+				else if(secondOffset <= leafOff)
+				{
+					leafOff -= secondOffset;
+					leaf = pair.getSecond().getSPI();
+				}
+				else
+					break;
+			}
+			else if(leaf instanceof MultiChunkSPI)
+			{
+				MultiChunkSPI multi = (MultiChunkSPI)leaf;
+				int i = multi.indexOf(leafOff);
+
+				if(leafOff + targetLen > multi.getChunkOffset(i+1))
+					break;
+				leafOff -= multi.getChunkOffset(i);
+				leaf = multi.getChunk(i).getSPI();
+			}
+			else
+				break;
+		}
+		spi = leaf;
+		spiOff = leafOff;
+		if(leaf instanceof RootedChunkSPI)
+		{
+			RootedChunkSPI rooted = (RootedChunkSPI)leaf;
+
+			array = rooted.backingArray();
+			buf = array==null ? rooted.backingBuffer() : null;
+			base = rooted.backingOffset() + (int)leafOff;
+		}
+		else
+		{
+			array = null;
+			buf = null;
+			base = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * Point this window at a whole chunk.
+	 * @param target The chunk to view.
+	 * @return this
+	 */
+	@CanIgnoreReturnValue
+	public ChunkWindow reset(Chunk target)
+	{
+		return reset(target, 0L, target.getSize());
+	}
+
+	/**
+	 * Shrink this window to part of itself.
+	 * @param subOff Offset of the new window in this one.
+	 * @param subLen Size of the new window.
+	 * @return this
+	 * @throws IndexOutOfBoundsException if the new window would be
+	 * 	outside this one.
+	 */
+	@CanIgnoreReturnValue
+	public ChunkWindow narrow(long subOff, long subLen)
+	{
+		Util.requireValidOffLen(len, subOff, subLen);
+		return reset(chunk, off + subOff, subLen);
+	}
+
+	/**
+	 * Check a read is inside this window.
+	 * @param readOff Offset of the read.
+	 * @param readLen Number of bytes read.
+	 * @return Index of {@code readOff} in {@link #array} or
+	 * 	{@link #buf}.
+	 */
+	private int index(long readOff, int readLen)
+	{
+		if(readOff < 0 || readOff > len - readLen)
+			throw new IndexOutOfBoundsException("Read of " + readLen + " bytes at offset " + readOff + " is outside window of size " + len + '.');
+		return base + (int)readOff;
+	}
+
+	/**
+	 * @return The chunk being viewed.
+	 */
+	public Chunk getChunk()
+	{
+		return chunk;
+	}
+
+	/**
+	 * @return Offset of this window in {@link #getChunk()}.
+	 */
+	public long getOffset()
+	{
+		return off;
+	}
+
+	/**
+	 * @return Size of this window.
+	 */
+	public long getSize()
+	{
+		return len;
+	}
+
+	/**
+	 * @return {@code true} if this window has no bytes.
+	 */
+	public boolean isEmpty()
+	{
+		return len == 0;
+	}
+
+	/**
+	 * Get a byte of this window.
+	 * @param readOff Offset in this window.
+	 * @return Unsigned byte value at {@code readOff}.
+	 * @throws IndexOutOfBoundsException if {@code readOff} is
+	 * 	outside this window.
+	 */
+	public int getByte(long readOff)
+	{
+		int i = index(readOff, Byte.BYTES);
+
+		if(array != null)
+			return array[i]&0xff;
+		if(buf != null)
+			return buf.get(i)&0xff;
+		return spi.getByte(spiOff + readOff);
+	}
+
+	/**
+	 * Get a {@code short} of this window.
+	 * @param readOff Offset in this window.
+	 * @param order Byte order of the value.
+	 * @return {@code short} value at {@code readOff}.
+	 * @throws IndexOutOfBoundsException if the value is not
+	 * 	entirely inside this window.
+	 */
+	public short getShort(long readOff, ByteOrder order)
+	{
+		int i = index(readOff, Short.BYTES);
+
+		if(array != null)
+			return Util.shortFromBytes(array[i], array[i+1], order);
+		if(buf != null)
+			return Util.fromBig(buf.getShort(i), order);
+		return spi.getShort(spiOff + readOff, order);
+	}
+
+	/**
+	 * Get an unsigned {@code short} of this window.
+	 * @param readOff Offset in this window.
+	 * @param order Byte order of the value.
+	 * @return Unsigned {@code short} value at {@code readOff} as
+	 * 	an {@code int}.
+	 * @throws IndexOutOfBoundsException if the value is not
+	 * 	entirely inside this window.
+	 */
+	public int getShortUnsigned(long readOff, ByteOrder order)
+	{
+		return getShort(readOff, order)&0xffff;
+	}
+
+	/**
+	 * Get an {@code int} of this window.
+	 * @param readOff Offset in this window.
+	 * @param order Byte order of the value.
+	 * @return {@code int} value at {@code readOff}.
+	 * @throws IndexOutOfBoundsException if the value is not
+	 * 	entirely inside this window.
+	 */
+	public int getInt(long readOff, ByteOrder order)
+	{
+		int i = index(readOff, Integer.BYTES);
+
+		if(array != null)
+			return Util.intFromBytes(array[i], array[i+1], array[i+2], array[i+3], order);
+		if(buf != null)
+			return Util.fromBig(buf.getInt(i), order);
+		return spi.getInt(spiOff + readOff, order);
+	}
+
+	/**
+	 * Get an unsigned {@code int} of this window.
+	 * @param readOff Offset in this window.
+	 * @param order Byte order of the value.
+	 * @return Unsigned {@code int} value at {@code readOff} as a
+	 * 	{@code long}.
+	 * @throws IndexOutOfBoundsException if the value is not
+	 * 	entirely inside this window.
+	 */
+	public long getIntUnsigned(long readOff, ByteOrder order)
+	{
+		return getInt(readOff, order)&0xffffffffL;
+	}
+
+	/**
+	 * Get a {@code long} of this window.
+	 * @param readOff Offset in this window.
+	 * @param order Byte order of the value.
+	 * @return {@code long} value at {@code readOff}.
+	 * @throws IndexOutOfBoundsException if the value is not
+	 * 	entirely inside this window.
+	 */
+	public long getLong(long readOff, ByteOrder order)
+	{
+		int i = index(readOff, Long.BYTES);
+
+		if(array != null)
+			return Util.longFromBytes(array[i], array[i+1], array[i+2], array[i+3], array[i+4], array[i+5], array[i+6], array[i+7], order);
+		if(buf != null)
+			return Util.fromBig(buf.getLong(i), order);
+		return spi.getLong(spiOff + readOff, order);
+	}
+
+	/**
+	 * Copy bytes from this window into an array.
+	 * @param bytes The array to copy into.
+	 * @param windowOff Offset in this window to copy from.
+	 * @param arrayOff Offset in {@code bytes} to copy to.
+	 * @param copyLen Number of bytes to copy.
+	 * @return {@code bytes}
+	 * @throws IndexOutOfBoundsException if either range is out of
+	 * 	bounds.
+	 */
+	@CanIgnoreReturnValue
+	public byte[] copyTo(byte[] bytes, long windowOff, int arrayOff, int copyLen)
+	{
+		Util.requireValidOffLen(len, windowOff, copyLen);
+		return chunk.copyTo(bytes, off + windowOff, arrayOff, copyLen);
+	}
+
+	/**
+	 * @return An immutable chunk of the bytes in this window that
+	 * 	stays valid after the window is reset.
+	 */
+	public Chunk toChunk()
+	{
+		return chunk.subChunk(off, len);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " of " + chunk + " from " + off + " for " + len + " bytes";
+	}
+}
@@ -561,7 +561,7 @@ public final class Chunks
 	 */
 	public static Chunk copyBytes(byte...byteValues)
 	{
-		return BufferChunkSPI.copyInstance(byteValues);
+		return ArrayChunkSPI.copyInstance(byteValues);
 	}
 
 	/**
@@ -580,7 +580,7 @@ public final class Chunks
 	 */
 	public static Chunk copyBytes(byte[] array, int off, int len)
 	{
-		return BufferChunkSPI.copyInstance(array, off, len);
+		return ArrayChunkSPI.copyInstance(array, off, len);
 	}
 
 	/**
@@ -651,6 +651,54 @@ public final class Chunks
 		return BufferChunkSPI.copyInstance(buf);
 	}
 
+	/**
+	 * Copy bytes from an array into off heap storage.
+	 * @param array The array to copy from. This may be
+	 * 	{@code null} if and only if {@code off} and {@code len}
+	 * 	are zero.
+	 * @param off Offset of the bytes in {@code array}.
+	 * @param len Number of bytes to copy.
+	 * @return Chunk backed by a direct buffer containing a copy
+	 * 	of the specified bytes.
+	 * @throws NullPointerException if {@code array} is
+	 * 	{@code null} and either {@code off} or {@code len} is
+	 * 	not zero.
+	 * @throws IndexOutOfBoundsException if {@code off} and
+	 * 	{@code len} would reference bytes not in {@code array}.
+	 * @see DirectArena#copy(byte[],int,int)
+	 */
+	public static Chunk copyDirect(byte[] array, int off, int len)
+	{
+		return BufferChunkSPI.copyInstance(array, off, len, ByteBuffer::allocateDirect);
+	}
+
+	/**
+	 * Copy bytes from an array into off heap storage.
+	 * @param array The array to copy. This may be {@code null}.
+	 * @return Chunk backed by a direct buffer containing a copy
+	 * 	of {@code array}.
+	 * @see DirectArena#copy(byte[])
+	 */
+	public static Chunk copyDirect(byte[] array)
+	{
+		if(array==null)
+			return empty();
+		return copyDirect(array, 0, array.length);
+	}
+
+	/**
+	 * Copy the remaining bytes of a buffer into off heap storage.
+	 * @param buf The buffer to copy. This may be {@code null}.
+	 * 	Its position is not changed.
+	 * @return Chunk backed by a direct buffer containing a copy
+	 * 	of {@code buf}.
+	 * @see DirectArena#copy(ByteBuffer)
+	 */
+	public static Chunk copyDirect(ByteBuffer buf)
+	{
+		return BufferChunkSPI.copyInstance(buf, ByteBuffer::allocateDirect);
+	}
+
 	/**
 	 * Get a {@code Chunk} backed by the provided {@code byte} array.
 	 * @param bytes The {@code byte} array to use. <b>{@code bytes} should not be changed after this call!</b>
@@ -661,7 +709,7 @@ public final class Chunks
 	)
 	public static Chunk giveBytes(byte...bytes)
 	{
-		return BufferChunkSPI.giveInstance(bytes);
+		return ArrayChunkSPI.giveInstance(bytes);
 	}
 
 	/**
@@ -673,7 +721,7 @@ public final class Chunks
 	 */ 
 	public static Chunk giveBytes(byte[] array, int off, int len)
 	{
-		return BufferChunkSPI.giveInstance(array,off,len);
+		return ArrayChunkSPI.giveInstance(array,off,len);
 	}
 
 	/**
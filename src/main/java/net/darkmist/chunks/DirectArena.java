@@ -0,0 +1,121 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Allocator of off heap storage for chunks. Small allocations are
+ * carved out of larger direct buffer slabs so many small chunks do
+ * not each pay for a separate native allocation. Allocations larger
+ * than half a slab get their own direct buffer.
+ *
+ * Chunks are immutable and do not know when they are no longer used
+ * so storage is never handed out twice. A slab is released by the
+ * garbage collector once no chunk allocated from it is reachable.
+ * Long lived chunks can therefore keep the rest of their slab
+ * alive.
+ */
+@ThreadSafe
+public final class DirectArena
+{
+	private final int slabSize;
+	@GuardedBy("this")
+	private ByteBuffer slab;
+
+	/**
+	 * @param slabSize Size of the direct buffers allocations are
+	 * 	carved out of.
+	 * @throws IllegalArgumentException if {@code slabSize} is not
+	 * 	positive.
+	 */
+	public DirectArena(int slabSize)
+	{
+		if(slabSize < 1)
+			throw new IllegalArgumentException("Slab size " + slabSize + " is not positive.");
+		this.slabSize = slabSize;
+		this.slab = ByteBuffer.allocateDirect(0);
+	}
+
+	/**
+	 * Create an arena with the default slab size.
+	 */
+	public DirectArena()
+	{
+		this(Tunables.getDirectSlabSize());
+	}
+
+	/**
+	 * Allocate off heap storage.
+	 * @param len The number of bytes needed.
+	 * @return A direct buffer with a position of zero and
+	 * 	{@code len} bytes remaining that is not shared with any
+	 * 	other allocation.
+	 */
+	ByteBuffer allocate(int len)
+	{
+		ByteBuffer buf;
+
+		if(len > slabSize / 2)
+			return ByteBuffer.allocateDirect(len);
+		synchronized(this)
+		{
+			if(slab.remaining() < len)
+				slab = ByteBuffer.allocateDirect(slabSize);
+			buf = slab.slice();
+			slab.position(slab.position() + len);
+		}
+		buf.limit(len);
+		return buf;
+	}
+
+	/**
+	 * Copy bytes from an array into a chunk backed by this arena.
+	 * @param array The array to copy from. This may be
+	 * 	{@code null} if and only if {@code off} and {@code len}
+	 * 	are zero.
+	 * @param off Offset of the bytes in {@code array}.
+	 * @param len Number of bytes to copy.
+	 * @return Chunk containing a copy of the specified bytes.
+	 * @throws NullPointerException if {@code array} is
+	 * 	{@code null} and either {@code off} or {@code len} is
+	 * 	not zero.
+	 * @throws IndexOutOfBoundsException if {@code off} and
+	 * 	{@code len} would reference bytes not in {@code array}.
+	 */
+	public Chunk copy(byte[] array, int off, int len)
+	{
+		return BufferChunkSPI.copyInstance(array, off, len, this::allocate);
+	}
+
+	/**
+	 * Copy bytes from an array into a chunk backed by this arena.
+	 * @param array The array to copy. This may be {@code null}.
+	 * @return Chunk containing a copy of {@code array}.
+	 */
+	public Chunk copy(byte[] array)
+	{
+		if(array==null)
+			return Chunks.empty();
+		return copy(array, 0, array.length);
+	}
+
+	/**
+	 * Copy the remaining bytes of a buffer into a chunk backed by
+	 * this arena.
+	 * @param buf The buffer to copy. This may be {@code null}.
+	 * 	Its position is not changed.
+	 * @return Chunk containing a copy of {@code buf}.
+	 */
+	public Chunk copy(ByteBuffer buf)
+	{
+		return BufferChunkSPI.copyInstance(buf, this::allocate);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " with slab size " + slabSize;
+	}
+}
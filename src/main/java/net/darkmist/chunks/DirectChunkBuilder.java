@@ -0,0 +1,222 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.errorprone.annotations.Var;
+
+/**
+ * Builds chunks in off heap storage. Bytes are appended into direct
+ * buffer blocks which become the segments of the built chunk. After
+ * {@link #build()} the builder is empty and can be reused. The
+ * unfilled part of the last block is used by the next chunk built.
+ * Each new block is twice the size of the one before, up to
+ * {@link LargeChunksHelper#LARGE_CHUNK_SIZE}, so a large chunk built
+ * from small appends has few segments.
+ */
+@NotThreadSafe
+public final class DirectChunkBuilder
+{
+	private final IntFunction<ByteBuffer> allocator;
+	private final int blockSize;
+	private final List<Chunk> chunks = new ArrayList<>();
+
+	/**
+	 * Block being filled. Bytes before {@link #start} belong to
+	 * chunks that have already been built.
+	 */
+	private ByteBuffer block = ByteBuffer.allocateDirect(0);
+	private int start;
+	private long size;
+	/**
+	 * Size of the next block. Reset to {@link #blockSize} on
+	 * build.
+	 */
+	private int nextBlockSize;
+
+	private DirectChunkBuilder(IntFunction<ByteBuffer> allocator)
+	{
+		this.allocator = allocator;
+		this.blockSize = Tunables.getDirectBlockSize();
+		this.nextBlockSize = blockSize;
+	}
+
+	/**
+	 * Create a builder that allocates its own direct buffers.
+	 */
+	public DirectChunkBuilder()
+	{
+		this(ByteBuffer::allocateDirect);
+	}
+
+	/**
+	 * Create a builder that allocates from an arena.
+	 * @param arena The arena to allocate blocks from.
+	 */
+	public DirectChunkBuilder(DirectArena arena)
+	{
+		this(arena::allocate);
+	}
+
+	/**
+	 * Add the bytes put in the current block since the last seal
+	 * to the chunks being built.
+	 */
+	private void seal()
+	{
+		int pos = block.position();
+		ByteBuffer filled;
+
+		if(pos == start)
+			return;
+		filled = block.duplicate();
+		filled.limit(pos);
+		filled.position(start);
+		chunks.add(Chunks.giveBuffer(filled));
+		start = pos;
+	}
+
+	/**
+	 * Get the current block with room for at least one byte.
+	 * @param wanted The number of bytes the caller wants to put.
+	 * 	A new block is made large enough for all of them if
+	 * 	this is larger than the next block size.
+	 * @return The current block.
+	 */
+	private ByteBuffer room(long wanted)
+	{
+		if(!block.hasRemaining())
+		{
+			seal();
+			block = allocator.apply((int)Math.max(nextBlockSize, Math.min(wanted, LargeChunksHelper.LARGE_CHUNK_SIZE)));
+			start = 0;
+			nextBlockSize = (int)Math.min(2L * nextBlockSize, LargeChunksHelper.LARGE_CHUNK_SIZE);
+		}
+		return block;
+	}
+
+	/**
+	 * Append a byte.
+	 * @param byteValue The byte to append. Values from
+	 * 	{@link Byte#MIN_VALUE} to 0xff are accepted.
+	 * @return this
+	 * @throws IllegalArgumentException if {@code byteValue} is
+	 * 	not a byte value.
+	 */
+	@CanIgnoreReturnValue
+	public DirectChunkBuilder append(int byteValue)
+	{
+		byte b = Util.requireExtendedByteValue(byteValue);
+
+		room(1L).put(b);
+		size++;
+		return this;
+	}
+
+	/**
+	 * Append bytes from an array.
+	 * @param array The array to append from.
+	 * @param off Offset of the bytes in {@code array}.
+	 * @param len Number of bytes to append.
+	 * @return this
+	 * @throws IndexOutOfBoundsException if {@code off} and
+	 * 	{@code len} would reference bytes not in {@code array}.
+	 */
+	@CanIgnoreReturnValue
+	public DirectChunkBuilder append(byte[] array, int off, int len)
+	{
+		Util.requireValidOffLen(array, off, len);
+		for(@Var int done=0;done<len;)
+		{
+			ByteBuffer dst = room(len-done);
+			int n = Math.min(dst.remaining(), len-done);
+
+			dst.put(array, off+done, n);
+			done+=n;
+		}
+		size += len;
+		return this;
+	}
+
+	/**
+	 * Append bytes from an array.
+	 * @param array The array to append.
+	 * @return this
+	 */
+	@CanIgnoreReturnValue
+	public DirectChunkBuilder append(byte[] array)
+	{
+		return append(array, 0, array.length);
+	}
+
+	/**
+	 * Append the remaining bytes of a buffer.
+	 * @param buf The buffer to append. Its position is not changed.
+	 * @return this
+	 */
+	@CanIgnoreReturnValue
+	public DirectChunkBuilder append(ByteBuffer buf)
+	{
+		ByteBuffer src = buf.duplicate();
+		int limit = src.limit();
+
+		size += src.remaining();
+		while(src.hasRemaining())
+		{
+			ByteBuffer dst = room(src.remaining());
+
+			src.limit(src.position() + Math.min(dst.remaining(), src.remaining()));
+			dst.put(src);
+			src.limit(limit);
+		}
+		return this;
+	}
+
+	/**
+	 * Append a copy of a chunk.
+	 * @param chunk The chunk to append.
+	 * @return this
+	 */
+	@CanIgnoreReturnValue
+	public DirectChunkBuilder append(Chunk chunk)
+	{
+		chunk.forEachSegment(this::append);
+		return this;
+	}
+
+	/**
+	 * @return Number of bytes appended since the last build.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Build a chunk of the bytes appended since the last build and
+	 * empty the builder.
+	 * @return Chunk of the appended bytes.
+	 */
+	public Chunk build()
+	{
+		Chunk ret;
+
+		seal();
+		ret = Chunks.ofChunks(chunks);
+		chunks.clear();
+		size = 0;
+		nextBlockSize = blockSize;
+		return ret;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " with size " + size;
+	}
+}
@@ -2,13 +2,18 @@ package net.darkmist.chunks;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import javax.annotation.Nullable;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -22,12 +27,14 @@ public final class FileChunks
 	private static final Logger logger = LoggerFactory.getLogger(FileChunks.class);
 	// No OpenOption other than StandardOpenOption.READ make any sense for us.
 	private static final Set<OpenOption> READ_OPEN_OPTIONS = Collections.singleton(StandardOpenOption.READ);
+	// Mappings made outside of a scope are left for the GC to unmap.
+	private static final Consumer<MappedByteBuffer> UNSCOPED = (buf)->{};
 
 	private FileChunks()
 	{
 	}
 
-	private static <R> R withFileChannelFor(Path path, IOEFunctional.IOEFunction<FileChannel,R> func) throws IOException
+	static <R> R withFileChannelFor(Path path, IOEFunctional.IOEFunction<FileChannel,R> func) throws IOException
 	{
 		try
 		(
@@ -52,35 +59,62 @@ public final class FileChunks
 	// Private map methods:
 	// --------------------
 
+	// Every buffer mapped is passed to mapped before it is used.
+	private static MappedByteBuffer mapBuffer(FileChannel fc, long off, long len, Consumer<? super MappedByteBuffer> mapped) throws IOException
+	{
+		MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, off, len);
+
+		mapped.accept(buf);
+		return buf;
+	}
+
 	// Final internal map method. This assumes that the arguments have already been properly checked.
-	private static Chunk mapSmallPreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk mapSmallPreviouslyChecked(FileChannel fc, long off, long len, @Nullable FileOrigin origin, Consumer<? super MappedByteBuffer> mapped) throws IOException
 	{	// optimize zero length here so other methods don't have to check.
 		if(len==0)
 			return Chunks.empty();
-		return Chunks.giveBuffer(fc.map(FileChannel.MapMode.READ_ONLY, off, len));	
+		return BufferChunkSPI.giveMappedInstance(
+			mapBuffer(fc, off, len, mapped),
+			origin == null ? null : origin.at(off)
+		);
 	}
 
-	private static Chunk mapLargePreviouslyChecked(FileChannel fc, long off, long len)  throws IOException
-	{
+	private static Chunk mapLargePreviouslyChecked(FileChannel fc, long off, long len, @Nullable FileOrigin origin, Consumer<? super MappedByteBuffer> mapped)  throws IOException
+	{	// Whole file segments are unmapped by the GC so scopes still map buffers.
+		if(mapped == UNSCOPED && LargeMappings.isAvailable())
+			return LargeMappings.map(fc, off, len, origin);
 		return LargeChunksHelper.instance(off,len).readChunks(
-			(offArg,lenArg)->mapSmallPreviouslyChecked(fc,offArg,lenArg)
+			(offArg,lenArg)->mapSmallPreviouslyChecked(fc,offArg,lenArg,origin,mapped)
 		);
 	}
 
-	private static Chunk mapPreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk mapPreviouslyChecked(FileChannel fc, long off, long len, @Nullable FileOrigin origin, Consumer<? super MappedByteBuffer> mapped) throws IOException
 	{
 		if(len > LargeChunksHelper.LARGE_CHUNK_SIZE)
-			return mapLargePreviouslyChecked(fc, off, len);
-		return mapSmallPreviouslyChecked(fc, off, len);
+			return mapLargePreviouslyChecked(fc, off, len, origin, mapped);
+		return mapSmallPreviouslyChecked(fc, off, len, origin, mapped);
+	}
+
+	// Package for ChunkScope.
+	static Chunk map(FileChannel fc, long off, long len, @Nullable FileOrigin origin, Consumer<? super MappedByteBuffer> mapped) throws IOException
+	{
+		checkFileChannelOffLen(fc, off, len);
+		return mapPreviouslyChecked(fc, off, len, origin, mapped);
+	}
+
+	private static Chunk map(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
+	{
+		return map(fc, off, len, origin, UNSCOPED);
 	}
 
 	// Public map methods:
 	// -------------------
+	// Mapped chunks remember the file they came from so they can be
+	// written to channels with FileChannel.transferTo(...).
 
 	public static Chunk map(FileChannel fc, long off, long len) throws IOException
 	{
-		checkFileChannelOffLen(fc, off, len);
-		return mapPreviouslyChecked(fc, off, len);
+		return map(fc, off, len, FileOrigin.forChannel(fc));
 	}
 
 	public static Chunk map(FileChannel fc, long off) throws IOException
@@ -95,12 +129,16 @@ public final class FileChunks
 
 	public static Chunk map(Path path, long off, long len) throws IOException
 	{
-		return withFileChannelFor(path, (fc)->map(fc, off, len));
+		FileOrigin origin = FileOrigin.forPath(path);
+
+		return withFileChannelFor(path, (fc)->map(fc, off, len, origin));
 	}
 
 	public static Chunk map(Path path, long off) throws IOException
 	{
-		return withFileChannelFor(path, (fc)->map(fc, off));
+		FileOrigin origin = FileOrigin.forPath(path);
+
+		return withFileChannelFor(path, (fc)->map(fc, off, Math.subtractExact(fc.size(), off), origin));
 	}
 
 	public static Chunk map(Path path) throws IOException
@@ -121,48 +159,59 @@ public final class FileChunks
 		return FileChunks::uncheckedMap;
 	}
 
+	/**
+	 * Open a scope to map files in that unmaps them all when it is
+	 * closed.
+	 * @return A new open scope.
+	 * @see ChunkScope
+	 */
+	public static ChunkScope openScope()
+	{
+		return new ChunkScope();
+	}
+
 	// Slurp private methods:
 	// ----------------------
 
 	// Slurp a small chunk of provided length at the current file channel position.
-	private static Chunk slurpSmallLenPreviouslyChecked(FileChannel fc, long len) throws IOException
+	private static Chunk slurpSmallLenPreviouslyChecked(FileChannel fc, long len, IntFunction<ByteBuffer> allocator) throws IOException
 	{
 		ByteBuffer buf;
 
-		buf = ByteBuffer.allocate((int)len);
+		buf = allocator.apply((int)len);
 		while(buf.hasRemaining())
 		{
 			if(fc.read(buf)<0)
-				throw new IOException(fc.toString() + " shrank while we were reading it (Size was " + buf.capacity() + " but we hit end of file after " + buf.position() + '.');
+				throw new IOException(fc.toString() + " shrank while we were reading it (Size was " + buf.limit() + " but we hit end of file after " + buf.position() + '.');
 		}
 		buf.flip();
 		return Chunks.giveBuffer(buf);
 	}
 
-	private static Chunk slurpSmallPreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk slurpSmallPreviouslyChecked(FileChannel fc, long off, long len, IntFunction<ByteBuffer> allocator) throws IOException
 	{
 		if(len==0)
 			return Chunks.empty();
 		if(off>0)
 			fc.position(off);
-		return slurpSmallLenPreviouslyChecked(fc, (int)len);
+		return slurpSmallLenPreviouslyChecked(fc, (int)len, allocator);
 	}
 
-	private static Chunk slurpLargePreviouslyChecked(FileChannel fc, long off, long len)  throws IOException
+	private static Chunk slurpLargePreviouslyChecked(FileChannel fc, long off, long len, IntFunction<ByteBuffer> allocator)  throws IOException
 	{
 		if(off>0)
 			fc.position(off);
 		// Off is kept track of in the fc so we ignore it in our read method.
 		return LargeChunksHelper.instance(off,len).readChunks(
-			(offArg,lenArg)->slurpSmallLenPreviouslyChecked(fc,lenArg)
+			(offArg,lenArg)->slurpSmallLenPreviouslyChecked(fc,lenArg,allocator)
 		);
 	}
 
-	private static Chunk slurpPreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk slurpPreviouslyChecked(FileChannel fc, long off, long len, IntFunction<ByteBuffer> allocator) throws IOException
 	{
 		if(len > LargeChunksHelper.LARGE_CHUNK_SIZE)
-			return slurpLargePreviouslyChecked(fc, off, len);
-		return slurpSmallPreviouslyChecked(fc, off, len);
+			return slurpLargePreviouslyChecked(fc, off, len, allocator);
+		return slurpSmallPreviouslyChecked(fc, off, len, allocator);
 	}
 
 	// Public slurp:
@@ -171,7 +220,7 @@ public final class FileChunks
 	public static Chunk slurp(FileChannel fc, long off, long len) throws IOException
 	{
 		checkFileChannelOffLen(fc, off, len);
-		return slurpPreviouslyChecked(fc, off, len);
+		return slurpPreviouslyChecked(fc, off, len, ByteBuffer::allocate);
 	}
 
 	public static Chunk slurp(FileChannel fc, long off) throws IOException
@@ -199,6 +248,67 @@ public final class FileChunks
 		return slurp(path,0L);
 	}
 
+	// Public slurpDirect:
+	// -------------------
+
+	/**
+	 * Read part of a file into off heap storage.
+	 * @param fc The channel to read from.
+	 * @param off Offset in the file to start reading at.
+	 * @param len Number of bytes to read.
+	 * @param arena Arena to allocate storage from.
+	 * @return Chunk backed by direct buffers.
+	 * @throws IOException if reading fails.
+	 */
+	public static Chunk slurpDirect(FileChannel fc, long off, long len, DirectArena arena) throws IOException
+	{
+		checkFileChannelOffLen(fc, off, len);
+		return slurpPreviouslyChecked(fc, off, len, arena::allocate);
+	}
+
+	public static Chunk slurpDirect(FileChannel fc, long off, long len) throws IOException
+	{
+		checkFileChannelOffLen(fc, off, len);
+		return slurpPreviouslyChecked(fc, off, len, ByteBuffer::allocateDirect);
+	}
+
+	public static Chunk slurpDirect(FileChannel fc, long off) throws IOException
+	{
+		return slurpDirect(fc, off, Math.subtractExact(fc.size(), off));
+	}
+
+	public static Chunk slurpDirect(FileChannel fc) throws IOException
+	{
+		return slurpDirect(fc, 0L);
+	}
+
+	public static Chunk slurpDirect(Path path, long off, long len) throws IOException
+	{
+		return withFileChannelFor(path, (fc)->slurpDirect(fc, off, len));
+	}
+
+	public static Chunk slurpDirect(Path path, long off) throws IOException
+	{
+		return withFileChannelFor(path, (fc)->slurpDirect(fc,off));
+	}
+
+	public static Chunk slurpDirect(Path path) throws IOException
+	{
+		return slurpDirect(path,0L);
+	}
+
+	/**
+	 * Read a file into off heap storage.
+	 * @param path The file to read.
+	 * @param arena Arena to allocate storage from.
+	 * @return Chunk backed by direct buffers.
+	 * @throws IOException if reading fails.
+	 */
+	public static Chunk slurpDirect(Path path, DirectArena arena) throws IOException
+	{
+		return withFileChannelFor(path, (fc)->slurpDirect(fc, 0L, fc.size(), arena));
+	}
+
 	public static Chunk uncheckedSlurp(Path path)
 	{
 		return IOEFunctional.wrapIOEFunction(FileChunks::slurp, path);
@@ -215,11 +325,11 @@ public final class FileChunks
 	// Private mapOrSlurp methods:
 	// ---------------------------
 
-	private static Chunk mapOrSlurpSmallPreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk mapOrSlurpSmallPreviouslyChecked(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
 	{
 		try
 		{
-			return mapSmallPreviouslyChecked(fc, off, len);
+			return mapSmallPreviouslyChecked(fc, off, len, origin, UNSCOPED);
 		}
 		catch(IOException e)
 		{
@@ -228,15 +338,13 @@ public final class FileChunks
 		return slurp(fc,off, len);
 	}
 
-	private static Chunk mapOrSlurpLargePreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk mapOrSlurpLargePreviouslyChecked(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
 	{
 		LargeChunksHelper helper = LargeChunksHelper.instance(off,len);
 
 		try
 		{
-			return helper.readChunks(
-				(offArg,lenArg)->mapSmallPreviouslyChecked(fc,offArg,lenArg)
-			);
+			return mapLargePreviouslyChecked(fc, off, len, origin, UNSCOPED);
 		}
 		catch(IOException e)
 		{
@@ -246,15 +354,21 @@ public final class FileChunks
 		fc.position(off);
 		// Offset kept track of in fc position
 		return helper.readChunks(
-			(offArg,lenArg)->slurpSmallLenPreviouslyChecked(fc,lenArg)
+			(offArg,lenArg)->slurpSmallLenPreviouslyChecked(fc,lenArg,ByteBuffer::allocate)
 		);
 	}
 
-	private static Chunk mapOrSlurpPreviouslyChecked(FileChannel fc, long off, long len) throws IOException
+	private static Chunk mapOrSlurpPreviouslyChecked(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
 	{
 		if(len > LargeChunksHelper.LARGE_CHUNK_SIZE)
-			return mapOrSlurpLargePreviouslyChecked(fc, off, len);
-		return mapOrSlurpSmallPreviouslyChecked(fc, off, len);
+			return mapOrSlurpLargePreviouslyChecked(fc, off, len, origin);
+		return mapOrSlurpSmallPreviouslyChecked(fc, off, len, origin);
+	}
+
+	private static Chunk mapOrSlurp(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
+	{
+		checkFileChannelOffLen(fc, off, len);
+		return mapOrSlurpPreviouslyChecked(fc, off, len, origin);
 	}
 
 	// Public mapOrSlurp methods:
@@ -262,8 +376,7 @@ public final class FileChunks
 
 	public static Chunk mapOrSlurp(FileChannel fc, long off, long len) throws IOException
 	{
-		checkFileChannelOffLen(fc, off, len);
-		return mapOrSlurpPreviouslyChecked(fc, off, len);
+		return mapOrSlurp(fc, off, len, FileOrigin.forChannel(fc));
 	}
 
 	public static Chunk mapOrSlurp(FileChannel fc, long off) throws IOException
@@ -278,12 +391,16 @@ public final class FileChunks
 
 	public static Chunk mapOrSlurp(Path path, long off,  long len) throws IOException
 	{
-		return withFileChannelFor(path, (fc)->mapOrSlurp(fc, off, len));
+		FileOrigin origin = FileOrigin.forPath(path);
+
+		return withFileChannelFor(path, (fc)->mapOrSlurp(fc, off, len, origin));
 	}
 
 	public static Chunk mapOrSlurp(Path path, long off) throws IOException
 	{
-		return withFileChannelFor(path, (fc)->mapOrSlurp(fc,off));
+		FileOrigin origin = FileOrigin.forPath(path);
+
+		return withFileChannelFor(path, (fc)->mapOrSlurp(fc, off, Math.subtractExact(fc.size(), off), origin));
 	}
 
 	public static Chunk mapOrSlurp(Path path) throws IOException
@@ -0,0 +1,243 @@
+package net.darkmist.chunks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.errorprone.annotations.Var;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The file a mapped buffer came from so its contents can be sent
+ * with {@link FileChannel#transferTo(long,long,WritableByteChannel)}
+ * instead of being copied through user space.
+ *
+ * An origin is either a {@link Path} or a {@link FileChannel}. Files
+ * mapped by path are reopened once per {@link Transfers} and are only
+ * used if they are still the same file (by
+ * {@link BasicFileAttributes#fileKey()}) as the one mapped. Files
+ * mapped from a channel the caller owns are only used while that
+ * channel is open.
+ */
+@Immutable
+@SuppressWarnings("Immutable")	// FileChannel is only used, never changed.
+final class FileOrigin
+{
+	private static final Logger logger = LoggerFactory.getLogger(FileOrigin.class);
+	@Nullable
+	private final Path path;
+	@Nullable
+	private final Object fileKey;
+	@Nullable
+	private final FileChannel channel;
+	private final long off;
+
+	private FileOrigin(@Nullable Path path, @Nullable Object fileKey, @Nullable FileChannel channel, long off)
+	{
+		this.path = path;
+		this.fileKey = fileKey;
+		this.channel = channel;
+		this.off = off;
+	}
+
+	/**
+	 * Get an origin for a file channel.
+	 * @param channel The channel.
+	 * @return Origin at the start of the file.
+	 */
+	static FileOrigin forChannel(FileChannel channel)
+	{
+		return new FileOrigin(null, null, channel, 0L);
+	}
+
+	/**
+	 * Get an origin for a path. This should be called before the
+	 * file is opened so that if the file is replaced in between the
+	 * keys do not match and the origin is never used.
+	 * @param path The path.
+	 * @return Origin at the start of the file or {@code null} if
+	 * 	the file system does not provide file keys to check that
+	 * 	the file is the same one later.
+	 * @throws IOException if the file's attributes cannot be read.
+	 */
+	@Nullable
+	static FileOrigin forPath(Path path) throws IOException
+	{
+		Object key = fileKey(path);
+
+		if(key == null)
+			return null;
+		return new FileOrigin(path, key, null, 0L);
+	}
+
+	@Nullable
+	private static Object fileKey(Path path) throws IOException
+	{
+		return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+	}
+
+	/**
+	 * Get an origin for a mapping starting at an offset.
+	 * @param mapOff Offset of the mapping in the file.
+	 * @return Origin for the same file at {@code mapOff}.
+	 */
+	FileOrigin at(long mapOff)
+	{
+		return new FileOrigin(path, fileKey, channel, mapOff);
+	}
+
+	private static void transferFully(FileChannel source, long position, long len, WritableByteChannel target) throws IOException
+	{
+		@Var
+		long done = 0L;
+
+		while(done < len)
+		{
+			long n = source.transferTo(position + done, len - done, target);
+
+			if(n <= 0)
+				throw new IOException(source.toString() + " shrank while we were transfering from it (Needed " + len + " bytes from " + position + " but only got " + done + ".");
+			done += n;
+		}
+	}
+
+	/**
+	 * Open the file by path if it is still the file that was mapped.
+	 * @return The opened channel or {@code null} if the file can
+	 * 	not be opened or is not the same file.
+	 */
+	@Nullable
+	@SuppressWarnings("PMD.CloseResource")	// returned to the caller to close.
+	@SuppressFBWarnings(value="EXS_EXCEPTION_SOFTENING_RETURN_FALSE", justification="Caller falls back to writing from the buffer.")
+	private FileChannel openIfSame()
+	{
+		FileChannel fc;
+
+		try
+		{
+			fc = FileChannel.open(path, StandardOpenOption.READ);
+		}
+		catch(IOException e)
+		{
+			logger.debug("Unable to reopen {}.", path, e);
+			return null;
+		}
+		try
+		{
+			if(fileKey.equals(fileKey(path)))
+				return fc;
+			logger.debug("{} is no longer the file that was mapped.", path);
+		}
+		catch(IOException e)
+		{
+			logger.debug("Unable to read attributes of {}.", path, e);
+		}
+		try
+		{
+			fc.close();
+		}
+		catch(IOException e)
+		{
+			logger.debug("Ignoring failure to close {}.", path, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Files reopened by path for the transfers of one write. Each
+	 * file is opened and checked once no matter how many pieces of
+	 * it are written. Files that could not be reopened are
+	 * remembered so they are not tried again.
+	 */
+	static final class Transfers implements Closeable
+	{
+		/**
+		 * Channels by file key. A {@code null} value is a file
+		 * that is not available.
+		 */
+		private final Map<Object,FileChannel> opened = new HashMap<>();
+
+		Transfers()
+		{
+		}
+
+		/**
+		 * @param origin Origin mapped by path.
+		 * @return Channel for the file of {@code origin} or
+		 * 	{@code null} if it is no longer available.
+		 */
+		@Nullable
+		@SuppressWarnings("PMD.CloseResource")	// closed by close().
+		FileChannel channelFor(FileOrigin origin)
+		{
+			FileChannel fc;
+
+			if(opened.containsKey(origin.fileKey))
+				return opened.get(origin.fileKey);
+			fc = origin.openIfSame();
+			opened.put(origin.fileKey, fc);
+			return fc;
+		}
+
+		@Override
+		public void close()
+		{
+			for(FileChannel fc : opened.values())
+			{
+				if(fc == null)
+					continue;
+				try
+				{
+					fc.close();
+				}
+				catch(IOException e)
+				{
+					logger.debug("Ignoring failure to close {}.", fc, e);
+				}
+			}
+			opened.clear();
+		}
+	}
+
+	/**
+	 * Transfer part of the mapping to a channel.
+	 * @param pos Offset in the mapping.
+	 * @param len Number of bytes to transfer.
+	 * @param target Channel to transfer to.
+	 * @param transfers Files already opened for the current write.
+	 * @return {@code true} if the bytes were transferred or
+	 * 	{@code false} if the file is no longer available and
+	 * 	nothing was written.
+	 * @throws IOException if the transfer fails part way.
+	 */
+	boolean transferTo(long pos, long len, WritableByteChannel target, Transfers transfers) throws IOException
+	{
+		FileChannel fc;
+
+		if(channel != null)
+		{
+			if(!channel.isOpen())
+				return false;
+			transferFully(channel, off + pos, len, target);
+			return true;
+		}
+		if((fc = transfers.channelFor(this)) == null)
+			return false;
+		transferFully(fc, off + pos, len, target);
+		return true;
+	}
+}
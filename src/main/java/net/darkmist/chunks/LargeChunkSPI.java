@@ -0,0 +1,53 @@
+package net.darkmist.chunks;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Leaf addressed with long offsets that is too large to be backed by
+ * a single buffer. Bulk operations in {@link ChunkContent} break it
+ * into buffer backed pieces of at most
+ * {@link LargeChunksHelper#LARGE_CHUNK_SIZE} bytes instead of copying
+ * it out.
+ */
+@com.google.errorprone.annotations.Immutable
+@Immutable
+abstract class LargeChunkSPI extends AbstractChunkSPI
+{
+	protected LargeChunkSPI(long size)
+	{
+		super(size);
+	}
+
+	/**
+	 * Get part of this leaf as a buffer backed leaf.
+	 * @param off Offset of the part in this leaf.
+	 * @param len Length of the part. This is never more than
+	 * 	{@link LargeChunksHelper#LARGE_CHUNK_SIZE}.
+	 * @return Leaf viewing the part in place.
+	 */
+	abstract ChunkSPI piece(long off, int len);
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Large leaves are already a single piece of storage.
+	 *
+	 * @return true
+	 */
+	@Override
+	public boolean isCoalesced()
+	{
+		return true;
+	}
+
+	/**
+	 * @return null which is translated to this
+	 */
+	@Nullable
+	@Override
+	public Chunk coalesce()
+	{
+		return null;
+	}
+}
@@ -0,0 +1,48 @@
+package net.darkmist.chunks;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.Nullable;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Maps files larger than {@link LargeChunksHelper#LARGE_CHUNK_SIZE}
+ * as a single leaf. Runtimes without the Foreign Function and Memory
+ * API can only map a buffer's worth at a time so this version maps
+ * nothing and large files are split by {@link LargeChunksHelper}.
+ * The multi-release jar replaces it on runtimes that can.
+ */
+final class LargeMappings
+{
+	private LargeMappings()
+	{
+	}
+
+	/**
+	 * @return Whether {@link #map(FileChannel,long,long,FileOrigin)}
+	 * 	is supported on this runtime.
+	 */
+	static boolean isAvailable()
+	{
+		return false;
+	}
+
+	/**
+	 * Map part of a file as one leaf that is unmapped when it is
+	 * garbage collected.
+	 * @param fc Channel to map.
+	 * @param off Offset in the file. This must already be checked.
+	 * @param len Length to map. This must already be checked.
+	 * @param origin The file {@code fc} is for.
+	 * @return Chunk of the mapping.
+	 * @throws IOException Doesn't on this runtime.
+	 * @throws UnsupportedOperationException always on this runtime.
+	 */
+	@SuppressFBWarnings(value="BED_BOGUS_EXCEPTION_DECLARATION",justification="Thrown by the multi-release version.")
+	static Chunk map(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
+	{
+		throw new UnsupportedOperationException("Mapping " + len + " bytes as a single leaf is not supported on this runtime.");
+	}
+}
@@ -1,15 +1,15 @@
 package net.darkmist.chunks;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.function.BiFunction;
+import java.util.Deque;
 import java.util.function.IntFunction;
 import java.util.List;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.Set;
 
 import static java.util.Objects.requireNonNull;
 
@@ -24,66 +24,175 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 //import org.slf4j.LoggerFactory;
 
 // PMD thinks this is a bean and doesn't like not having accessors.
-// FUTURE: cache offsets and/or use tree
-// Immutability: erroprone does not like the chunks member which is not
-//   modified. This might be alieviated with guaba immutable collections
-//   but we're trying to keep dependencies down.
+// Immutability: erroprone does not like the chunks and offsets arrays
+//   which are never modified or the hint which is only a cache.
 @com.google.errorprone.annotations.Immutable
 @Immutable
 @SuppressWarnings({"PMD.BeanMembersShouldSerialize","PMD.TooManyMethods","Immutable"})
 final class MultiChunkSPI extends AbstractChunkSPI
 {
 	//private static final Class<MultiChunkSPI> CLASS = MultiChunkSPI.class;
-	private static final byte[] CROSSES_CHUNK_BOUNDRIES = new byte[0];
 
-	// FIXME: Storing chunks as a list and binary searching an offset array would likely be more efficient.
-	private final NavigableMap<Long,Chunk> chunks;
+	/**
+	 * Offset of each chunk in {@link #chunks} followed by the total
+	 * size. The extra entry lets the chunk at index {@code i} be
+	 * described by {@code offsets[i]} and {@code offsets[i+1]}
+	 * without special casing the last one.
+	 */
+	private final long[] offsets;
+	private final Chunk[] chunks;
 
-	private MultiChunkSPI(long size, NavigableMap<Long,Chunk> chunks)
+	/**
+	 * Index of the chunk that satisfied the last lookup. Sequential
+	 * access nearly always hits this chunk or the next so it is
+	 * checked before falling back to a binary search. Any value is a
+	 * valid index so races between threads only cost a search.
+	 */
+	@SuppressFBWarnings(value="IS2_INCONSISTENT_SYNC", justification="Benign racy cache of any valid index.")
+	private int hint;
+
+	private MultiChunkSPI(long[] offsets, Chunk[] chunks)
 	{
-		super(size);
-		this.chunks = Collections.unmodifiableNavigableMap(requireNonNull(chunks));
+		super(offsets[chunks.length]);
+		this.offsets = offsets;
+		this.chunks = chunks;
 	}
 
 	private static Chunk internalInstance(List<Chunk> chunks)
 	{
-		NavigableMap<Long,Chunk> map = new TreeMap<>();
-		@Var
-		long off=0L;
+		List<Chunk> nonEmpty = new ArrayList<>(chunks.size());
 
-		// remove nulls and empty chunks while building map
+		// remove nulls and empty chunks and splice in composites
 		for(Chunk chunk : chunks)
-		{
-			long chunkSize; 
-
-			if(chunk==null)
-				continue;
-			if((chunkSize=chunk.getSize())==0)
-				continue;
-			map.put(off, chunk);
-			off+=chunkSize;
-		}
+			if(chunk!=null)
+				addLeaves(nonEmpty, chunk);
 
 		// with null and empty chunks removed, check for simpler implementations
-		switch(map.size())
+		switch(nonEmpty.size())
 		{
 			case 0:
 				return Chunks.empty();
 			case 1:
-				return map.firstEntry().getValue();
+				return nonEmpty.get(0);
 			case 2:
 				return PairChunkSPI.instance(
-					map.firstEntry().getValue(),
-					map.lastEntry().getValue()
+					nonEmpty.get(0),
+					nonEmpty.get(1)
 				);
 			default:
-				return Chunk.instance(new MultiChunkSPI(
-					off,
-					Collections.unmodifiableNavigableMap(map)
-				));
+				return fromLeaves(nonEmpty);
 		}
 	}
 
+	private static Chunk fromLeaves(List<Chunk> leaves)
+	{
+		long[] offsets = new long[leaves.size()+1];
+		@Var
+		long off=0L;
+
+		for(int i=0;i<leaves.size();i++)
+		{
+			offsets[i]=off;
+			off=Math.addExact(off, leaves.get(i).getSize());
+		}
+		offsets[leaves.size()]=off;
+		return Chunk.instance(new MultiChunkSPI(
+			offsets,
+			leaves.toArray(new Chunk[0])
+		));
+	}
+
+	/**
+	 * Get a flat multi chunk of two non-empty chunks. Unlike
+	 * {@link #instance(Chunk...)} two leaves are not turned into
+	 * a {@link PairChunkSPI} so the result can absorb further
+	 * leaves without growing the height of a pair tree.
+	 * @param first Non-empty first chunk.
+	 * @param second Non-empty second chunk.
+	 * @return Multi chunk of the leaves of {@code first} and
+	 * {@code second} or a single leaf if they merged into one.
+	 */
+	static Chunk flatInstance(Chunk first, Chunk second)
+	{
+		List<Chunk> leaves = new ArrayList<>();
+
+		addLeaves(leaves, first);
+		addLeaves(leaves, second);
+		if(leaves.size()==1)	// merged back into a single buffer
+			return leaves.get(0);
+		return fromLeaves(leaves);
+	}
+
+	/**
+	 * Add the non-empty leaves of a chunk to a list. Leaves of
+	 * {@link PairChunkSPI} and {@link MultiChunkSPI} chunks are added
+	 * in place of the composite itself so a multi chunk is never
+	 * more than one level deep.
+	 * @param leaves List to add to.
+	 * @param chunk Chunk to add the leaves of.
+	 */
+	private static void addLeaves(List<Chunk> leaves, Chunk chunk)
+	{
+		Deque<Chunk> todo = new ArrayDeque<>();
+
+		todo.push(chunk);
+		while(!todo.isEmpty())
+		{
+			Chunk next = todo.pop();
+			ChunkSPI spi = next.getSPI();
+
+			if(spi instanceof PairChunkSPI)
+			{	// pushed in reverse so they pop in order
+				todo.push(((PairChunkSPI)spi).getSecond());
+				todo.push(((PairChunkSPI)spi).getFirst());
+			}
+			else if(spi instanceof MultiChunkSPI)
+				for(Chunk leaf : ((MultiChunkSPI)spi).chunks)
+					addLeaf(leaves, leaf);
+			else if(!next.isEmpty())
+				addLeaf(leaves, next);
+		}
+	}
+
+	/**
+	 * Add a non-empty leaf to a list merging it with the previous
+	 * leaf if they are contiguous ranges of the same buffer.
+	 */
+	private static void addLeaf(List<Chunk> leaves, Chunk leaf)
+	{
+		int last = leaves.size()-1;
+		Chunk merged;
+
+		if(last >= 0 && (merged = RootedChunkSPI.merge(leaves.get(last), leaf)) != null)
+			leaves.set(last, merged);
+		else
+			leaves.add(leaf);
+	}
+
+	/**
+	 * Get the first leaf of a chunk that is not a {@link PairChunkSPI}.
+	 */
+	static Chunk firstLeaf(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+
+		if(spi instanceof MultiChunkSPI)
+			return ((MultiChunkSPI)spi).chunks[0];
+		return chunk;
+	}
+
+	/**
+	 * Get the last leaf of a chunk that is not a {@link PairChunkSPI}.
+	 */
+	static Chunk lastLeaf(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+
+		if(spi instanceof MultiChunkSPI)
+			return ((MultiChunkSPI)spi).chunks[((MultiChunkSPI)spi).chunks.length-1];
+		return chunk;
+	}
+
 	static Chunk instance(List<Chunk> chunks)
 	{
 		if(chunks==null || chunks.isEmpty())
@@ -98,87 +207,126 @@ final class MultiChunkSPI extends AbstractChunkSPI
 		return internalInstance(Arrays.asList(chunks));
 	}
 
-	private <T> T applyToSubChunk(long off, BiFunction<Chunk,Long,T> func)
+	int getChunkCount()
 	{
-		Map.Entry<Long,Chunk> entry;
-		long subChunkOffset;
+		return chunks.length;
+	}
 
-		entry = chunks.floorEntry(requireValidOffset(off));
-		subChunkOffset = off - entry.getKey();
-		return func.apply(entry.getValue(),subChunkOffset) ;
+	Chunk getChunk(int i)
+	{
+		return chunks[i];
+	}
+
+	long getChunkOffset(int i)
+	{
+		return offsets[i];
+	}
+
+	/**
+	 * Find the index of the chunk containing an offset.
+	 * @param off A valid offset into this chunk.
+	 * @return Index of the chunk containing {@code off}.
+	 */
+	// Non-private for ChunkWindow.
+	int indexOf(long off)
+	{
+		int h = hint;
+		@Var
+		int i;
+
+		if(offsets[h] <= off)
+		{
+			if(off < offsets[h+1])
+				return h;
+			// next chunk for sequential access
+			if(off < offsets[h+2])
+			{
+				hint = h+1;
+				return h+1;
+			}
+		}
+		i = Arrays.binarySearch(offsets, 0, chunks.length, off);
+		if(i<0)	// not a chunk start, so it is in the chunk before the insertion point
+			i = -i-2;
+		hint = i;
+		return i;
 	}
 
 	@Override
 	public int getByte(long off)
+	{	// This gets called a LOT
+		int i = indexOf(requireValidOffset(off));
+
+		return chunks[i].getByte(off - offsets[i]);
+	}
+
+	/**
+	 * Read a value that crosses chunk boundaries. Each chunk it
+	 * covers is read once starting from the chunk found for
+	 * {@code off} so there is no further searching.
+	 * @param off Valid offset of the value.
+	 * @param i Index of the chunk containing {@code off}.
+	 * @param len Size of the value in bytes. At most eight.
+	 * @return The value as big endian.
+	 * @throws IndexOutOfBoundsException if the value extends past
+	 * 	the end of this chunk.
+	 */
+	@SuppressFBWarnings(value="RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT", justification="validity check")
+	private long straddle(long off, int i, int len)
 	{
-		//return applyToSubChunk(off, (chunk, subOff)->{return chunk.getByte(subOff);});
-		// This gets called a LOT so let's inline it instead:
-		Map.Entry<Long,Chunk> entry;
+		@Var
+		long value = 0L;
+		@Var
+		int done = 0;
+
+		requireValidOffset(off+len-1);
+		for(@Var int j=i; done<len; j++)
+		{
+			long pos = off + done;
+			int n = (int)Math.min(len-done, offsets[j+1]-pos);
 
-		entry = chunks.floorEntry(requireValidOffset(off));
-		return entry.getValue().getByte(off - entry.getKey());
+			value = (value << (n*Byte.SIZE)) | Util.bigEndianBytes(chunks[j], pos-offsets[j], n);
+			done += n;
+		}
+		return value;
 	}
 
 	@Override
 	@SuppressWarnings("PMD.AvoidUsingShortType")
 	public short getShort(long off, ByteOrder order)
 	{
-		Short ret;
+		int i = indexOf(requireValidOffset(off));
 
-		ret = applyToSubChunk(off, (chunk,subOff)->
-		{
-			if(chunk.getSize()-off<Short.BYTES)
-				return null;	// crosses subchunk boundry
-			return chunk.getShort(subOff,order);
-		});
-		if(ret==null)
-		{	// on subchunk boundry, fall back to byte based method
-			return super.getShort(off, order);
-		}
-		return ret;
+		if(offsets[i+1]-off<Short.BYTES)
+			return Util.fromBig((short)straddle(off, i, Short.BYTES), order);
+		return chunks[i].getShort(off-offsets[i], order);
 	}
 
 	@Override
 	public int getInt(long off, ByteOrder order)
 	{
-		Integer ret;
+		int i = indexOf(requireValidOffset(off));
 
-		ret = applyToSubChunk(off, (chunk,subOff)->
-		{
-			if(chunk.getSize()-off<Integer.BYTES)
-				return null;	// crosses subchunk boundry
-			return chunk.getInt(subOff, order);
-		});
-		if(ret==null)
-		{	// on subchunk boundry, fall back to byte based method
-			return super.getInt(off, order);
-		}
-		return ret;
+		if(offsets[i+1]-off<Integer.BYTES)
+			return Util.fromBig((int)straddle(off, i, Integer.BYTES), order);
+		return chunks[i].getInt(off-offsets[i], order);
 	}
 
 	@Override
 	public long getLong(long off, ByteOrder order)
 	{
-		Long ret;
+		int i = indexOf(requireValidOffset(off));
 
-		ret = applyToSubChunk(off, (chunk,subOff)->
-		{
-			if(chunk.getSize()-off<Long.BYTES)
-				return null;	// crosses subchunk boundry
-			return chunk.getLong(subOff, order);
-		});
-		if(ret==null)
-		{	// on subchunk boundry, fall back to byte based method
-			return super.getLong(off, order);
-		}
-		return ret;
+		if(offsets[i+1]-off<Long.BYTES)
+			return Util.fromBig(straddle(off, i, Long.BYTES), order);
+		return chunks[i].getLong(off-offsets[i], order);
 	}
 
 	@Override
-	@SuppressFBWarnings(value="RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT", justification="validity checks")
 	public byte[] copyTo(byte[] bytes, long chunkOff, int arrayOff, int len)
 	{
-		byte[] ret;
+		@Var
+		int done = 0;
 
 		requireNonNull(bytes);
 
@@ -188,38 +336,16 @@ final class MultiChunkSPI extends AbstractChunkSPI
 
 		if(len==0)
 			return bytes;
-		ret = applyToSubChunk(chunkOff, (subChunk,subOff)->
+		// copy from each chunk the range covers in turn
+		for(@Var int i = indexOf(chunkOff); done<len; i++)
 		{
-			if(subChunk.getSize()-subOff<len)
-				return CROSSES_CHUNK_BOUNDRIES;	// crosses subchunk boundry
-			return subChunk.copyTo(bytes, subOff, arrayOff, len);
-		});
-		if(ret==CROSSES_CHUNK_BOUNDRIES)
-		{	// on subchunk boundry, fall back to byte based method
-			return super.copyTo(bytes, chunkOff, arrayOff, len);
-		}
-		return ret;
-	}
-
-	private static Chunk subChunkEntryOff(Map.Entry<Long,Chunk> entry, long off)
-	{
-		long chunkOff = entry.getKey();
-		Chunk chunk = entry.getValue();
-		long chunkSize = chunk.getSize();
-		long offInChunk = off - chunkOff;
-		long lenInChunk = chunkSize - offInChunk;
+			long subOff = chunkOff + done - offsets[i];
+			int n = (int)Math.min(len - done, offsets[i+1] - offsets[i] - subOff);
 
-		return chunk.subChunk(offInChunk, lenInChunk);
-	}
-
-	private static Chunk subChunkEntryLen(Map.Entry<Long,Chunk> entry, long subChunkOff, long subChunkLen)
-	{
-		long chunkOff = entry.getKey();
-		Chunk chunk = entry.getValue();
-		long subChunkEnd = subChunkOff + subChunkLen;
-		long lenInChunk = subChunkEnd - chunkOff;
-
-		return chunk.subChunk(0L, lenInChunk);
+			chunks[i].copyTo(bytes, subOff, arrayOff + done, n);
+			done += n;
+		}
+		return bytes;
 	}
 
 	@Nullable
@@ -228,12 +354,9 @@ final class MultiChunkSPI extends AbstractChunkSPI
 	public Chunk subChunk(long off, long len)
 	{
 		long end;
-		Map.Entry<Long,Chunk> firstEntry;
-		Map.Entry<Long,Chunk> lastEntry;
-		NavigableMap<Long,Chunk> subMap;
+		int first;
+		int last;
 		List<Chunk> subChunks;
-		Chunk firstChunk;
-		Chunk lastChunk;
 
 		// Empty case and validation
 		if(off==0 && len==size)
@@ -245,30 +368,33 @@ final class MultiChunkSPI extends AbstractChunkSPI
 			return Chunks.ofByte(getByte(off));
 
 		// Figure out the first chunk
-		firstEntry = chunks.floorEntry(off);
+		first = indexOf(off);
 
 		// Check for trivial casae:
-		if(firstEntry.getValue().getSize() >= end - firstEntry.getKey())
-			return firstEntry.getValue().subChunk(off - firstEntry.getKey(), len);
+		if(end <= offsets[first+1])
+			return chunks[first].subChunk(off - offsets[first], len);
 
 		// Figure out last chunk
-		lastEntry = chunks.lowerEntry(end);
-
-		// first firstChunk, lastChunk and any chunks in between:
-		firstChunk = subChunkEntryOff(firstEntry, off);
-		lastChunk = subChunkEntryLen(lastEntry, off, len);
-		subMap = chunks.subMap(firstEntry.getKey(), false, lastEntry.getKey(), false);
+		last = indexOf(end-1);
 
-		// Build our sub chunk list
-		subChunks = new ArrayList<>(subMap.size() + 2);
-		subChunks.add(firstChunk);
-		if(!subMap.isEmpty())
-			subChunks.addAll(subMap.values());
-		subChunks.add(lastChunk);
+		// Build our sub chunk list from the end of the first
+		// chunk, any chunks in between and the start of the last.
+		subChunks = new ArrayList<>(last - first + 1);
+		subChunks.add(chunks[first].subChunk(off - offsets[first]));
+		for(int i=first+1;i<last;i++)
+			subChunks.add(chunks[i]);
+		subChunks.add(chunks[last].subChunk(0L, end - offsets[last]));
 
 		return internalInstance(subChunks);
 	}
 
+	@Override
+	public void writeTo(DataOutput dataOut, Set<WriteFlag> flags) throws IOException
+	{
+		for(Chunk chunk : chunks)
+			chunk.writeTo(dataOut, flags);
+	}
+
 	@Override
 	public boolean isCoalesced()
 	{
@@ -289,7 +415,7 @@ final class MultiChunkSPI extends AbstractChunkSPI
 		// we know we're less then MAX_INT here.
 		if((bytes = allocator.apply((int)size))==null)
 			return null;
-		for(Chunk chunk : chunks.values())
+		for(Chunk chunk : chunks)
 		{
 			int chunkSize = chunk.size();
 			chunk.copyTo(bytes, 0L, off, chunkSize);
@@ -315,6 +441,6 @@ final class MultiChunkSPI extends AbstractChunkSPI
 	@Override
 	public String toString()
 	{
-		return getClass().getSimpleName() + " containing " + chunks.size() + " chunks.";
+		return getClass().getSimpleName() + " containing " + chunks.length + " chunks.";
 	}
 }
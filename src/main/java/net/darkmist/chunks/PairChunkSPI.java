@@ -1,10 +1,15 @@
 package net.darkmist.chunks;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import com.google.errorprone.annotations.Var;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import org.slf4j.Logger;
@@ -23,19 +28,35 @@ final class PairChunkSPI extends AbstractChunkSPI
 	private final Chunk first;
 	private final Chunk second;
 	private final long secondOffset;
+	private final int height;
+	private final long leaves;
 
-	private PairChunkSPI(Chunk first, Chunk second, long secondOffset, long size)
+	private PairChunkSPI(Chunk first, Chunk second, long secondOffset, long size, int height, long leaves)
 	{	// checks performed in factory
 		super(size);
 		this.first=first;
 		this.second=second;
 		this.secondOffset = secondOffset;
+		this.height = height;
+		this.leaves = leaves;
 	}
 
+	/**
+	 * Get a chunk of two others. Pairs are kept height balanced
+	 * the same way as an AVL tree so chunks built by repeatedly
+	 * appending or prepending have a depth logarithmic in the
+	 * number of chunks appended instead of linear. Concatenations
+	 * of up to {@link Tunables#getFlattenLimit()} leaf chunks are
+	 * flattened into a single {@link MultiChunkSPI} instead.
+	 * Contiguous ranges of the same buffer are merged back into a
+	 * single buffer chunk.
+	 * @param first The first chunk.
+	 * @param second The second chunk.
+	 * @return Chunk of {@code first} followed by {@code second}.
+	 */
 	static Chunk instance(Chunk first, Chunk second)
 	{
-		long secondOffset;
-		long size;
+		Chunk merged;
 
 		if(first == null || first.isEmpty())
 			if(second == null || second.isEmpty())
@@ -45,9 +66,192 @@ final class PairChunkSPI extends AbstractChunkSPI
 		else if(second == null || second.isEmpty())
 			return first;
 		// OK, now we know both are non-null
-		secondOffset = first.getSize();
-		size = Math.addExact(secondOffset, second.getSize());
-		return Chunk.instance(new PairChunkSPI(first,second, secondOffset, size));
+		if((merged = RootedChunkSPI.merge(first, second)) != null)
+			return merged;
+		if(isLeaf(first) && isLeaf(second))
+			return node(first, second);
+		if(leafCount(first) + leafCount(second) <= Tunables.getFlattenLimit())
+			return MultiChunkSPI.instance(first, second);
+		return join(first, second);
+	}
+
+	private static boolean isLeaf(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+
+		return !(spi instanceof PairChunkSPI || spi instanceof MultiChunkSPI);
+	}
+
+	/**
+	 * Number of leaf chunks in a chunk.
+	 * @param chunk The chunk.
+	 * @return Number of non-composite chunks {@code chunk} is
+	 * made of.
+	 */
+	static long leafCount(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+
+		if(spi instanceof PairChunkSPI)
+			return ((PairChunkSPI)spi).leaves;
+		if(spi instanceof MultiChunkSPI)
+			return ((MultiChunkSPI)spi).getChunkCount();
+		return 1L;
+	}
+
+	/**
+	 * Height of a chunk in the pair tree.
+	 * @param chunk The chunk.
+	 * @return Height of the pair tree {@code chunk} is the root
+	 * of or zero if it is not a pair.
+	 */
+	static int height(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+
+		if(spi instanceof PairChunkSPI)
+			return ((PairChunkSPI)spi).height;
+		return 0;
+	}
+
+	private static PairChunkSPI pair(Chunk chunk)
+	{
+		return (PairChunkSPI)chunk.getSPI();
+	}
+
+	/**
+	 * Create a pair without rebalancing.
+	 * @param first Non-empty first chunk.
+	 * @param second Non-empty second chunk.
+	 */
+	private static Chunk node(Chunk first, Chunk second)
+	{
+		long secondOffset = first.getSize();
+		long size = Math.addExact(secondOffset, second.getSize());
+		int height = Math.max(height(first), height(second)) + 1;
+		long leaves = leafCount(first) + leafCount(second);
+
+		return Chunk.instance(new PairChunkSPI(first, second, secondOffset, size, height, leaves));
+	}
+
+	/**
+	 * Pair two chunks at the bottom of a join. If neither is a
+	 * pair and they are small enough they are flattened into a
+	 * single {@link MultiChunkSPI} so appending many small chunks
+	 * does not leave a pair for every one. The result is never
+	 * taller than the pair it replaces so balance is unaffected.
+	 */
+	private static Chunk attach(Chunk first, Chunk second)
+	{
+		@Var
+		long leaves;
+
+		if(height(first)!=0 || height(second)!=0)
+			return node(first, second);
+		leaves = leafCount(first) + leafCount(second);
+		if(RootedChunkSPI.isContiguous(MultiChunkSPI.lastLeaf(first), MultiChunkSPI.firstLeaf(second)))
+			leaves--;
+		if(leaves <= Tunables.getFlattenLimit())
+			return MultiChunkSPI.flatInstance(first, second);
+		return node(first, second);
+	}
+
+	/**
+	 * Rotate {@code node(a, node(b, c))} to {@code node(node(a, b), c)}.
+	 */
+	private static Chunk rotateLeft(Chunk a, Chunk bc)
+	{
+		PairChunkSPI right = pair(bc);
+
+		return node(node(a, right.first), right.second);
+	}
+
+	/**
+	 * Rotate {@code node(node(a, b), c)} to {@code node(a, node(b, c))}.
+	 */
+	private static Chunk rotateRight(Chunk ab, Chunk c)
+	{
+		PairChunkSPI left = pair(ab);
+
+		return node(left.first, node(left.second, c));
+	}
+
+	/**
+	 * Join two balanced trees into a balanced tree. This is the
+	 * usual AVL join restricted to concatenation so it takes time
+	 * proportional to the difference in heights.
+	 * @param left Non-empty first chunk.
+	 * @param right Non-empty second chunk.
+	 * @return Balanced chunk of {@code left} followed by {@code right}.
+	 */
+	private static Chunk join(Chunk left, Chunk right)
+	{
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+
+		if(leftHeight > rightHeight + 1)
+			return joinRight(left, right);
+		if(rightHeight > leftHeight + 1)
+			return joinLeft(left, right);
+		return node(left, right);
+	}
+
+	/**
+	 * Join when {@code left} is more than one taller than {@code right}
+	 * by descending the right spine of {@code left}.
+	 */
+	private static Chunk joinRight(Chunk left, Chunk right)
+	{
+		PairChunkSPI pair = pair(left);
+		Chunk outer = pair.first;
+		Chunk inner = pair.second;
+		Chunk joined;
+
+		if(height(inner) <= height(right) + 1)
+		{
+			joined = attach(inner, right);
+			if(height(joined) <= height(outer) + 1)
+				return node(outer, joined);
+			return rotateLeft(outer, rotateRight(inner, right));
+		}
+		joined = joinRight(inner, right);
+		if(height(joined) <= height(outer) + 1)
+			return node(outer, joined);
+		return rotateLeft(outer, joined);
+	}
+
+	/**
+	 * Join when {@code right} is more than one taller than {@code left}
+	 * by descending the left spine of {@code right}.
+	 */
+	private static Chunk joinLeft(Chunk left, Chunk right)
+	{
+		PairChunkSPI pair = pair(right);
+		Chunk inner = pair.first;
+		Chunk outer = pair.second;
+		Chunk joined;
+
+		if(height(inner) <= height(left) + 1)
+		{
+			joined = attach(left, inner);
+			if(height(joined) <= height(outer) + 1)
+				return node(joined, outer);
+			return rotateRight(rotateLeft(left, inner), outer);
+		}
+		joined = joinLeft(left, inner);
+		if(height(joined) <= height(outer) + 1)
+			return node(joined, outer);
+		return rotateRight(joined, outer);
+	}
+
+	Chunk getFirst()
+	{
+		return first;
+	}
+
+	Chunk getSecond()
+	{
+		return second;
 	}
 
 	@Override
@@ -90,8 +294,7 @@ final class PairChunkSPI extends AbstractChunkSPI
 			{	// all in second chunk
 				return second.getShort(off-secondOffset, order);
 			}
-			// split
-			return Util.shortFromBytes(first.getByte(aOff), second.getByte(0), order);
+			return Util.fromBig((short)straddle(aOff, Short.BYTES), order);
 		/*}
 		catch(IndexOutOfBoundsException e)
 		{
@@ -104,15 +307,14 @@ final class PairChunkSPI extends AbstractChunkSPI
 	@SuppressFBWarnings(value="RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT", justification="validity checks")
 	public int getInt(long off, ByteOrder order)
 	{
-		requireValidOffset(off+Integer.BYTES-1);
-		if(requireValidOffset(off) < secondOffset)
-		{
-			if(first.getSize() - off < Integer.BYTES)
-				return super.getInt(off, order);
-			else
-				return first.getInt(off, order);
-		}
-		return second.getInt(off - secondOffset, order);
+		long firstOff = requireValidOffset(off);
+		long lastOff = requireValidOffset(off+Integer.BYTES-1);
+
+		if(lastOff < secondOffset)
+			return first.getInt(off, order);
+		if(secondOffset <= firstOff)
+			return second.getInt(off - secondOffset, order);
+		return Util.fromBig((int)straddle(off, Integer.BYTES), order);
 	}
 
 	@Override
@@ -126,7 +328,22 @@ final class PairChunkSPI extends AbstractChunkSPI
 			return first.getLong(off, order);
 		if(secondOffset <= firstOff)
 			return second.getLong(off - secondOffset, order);
-		return super.getLong(off, order);
+		return Util.fromBig(straddle(off, Long.BYTES), order);
+	}
+
+	/**
+	 * Read a value split between the first and second chunks with
+	 * one read of each.
+	 * @param off Valid offset of the value in the first chunk.
+	 * @param len Size of the value in bytes. At most eight.
+	 * @return The value as big endian.
+	 */
+	private long straddle(long off, int len)
+	{
+		int firstLen = (int)(secondOffset - off);
+		int secondLen = len - firstLen;
+
+		return (Util.bigEndianBytes(first, off, firstLen) << (secondLen*Byte.SIZE)) | Util.bigEndianBytes(second, 0L, secondLen);
 	}
 
 	@Nullable
@@ -174,24 +391,28 @@ final class PairChunkSPI extends AbstractChunkSPI
 	@Override
 	@SuppressFBWarnings(value="RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT", justification="validity checks")
 	public byte[] copyTo(byte[] bytes, long chunkOff, int arrayOff, int len)
-	{	// FIXME: we can do this better....
+	{
 		long chunkEndOff = Math.addExact(chunkOff, len);
-		Objects.requireNonNull(bytes);
-		/*
-		if(logger.isDebugEnabled())
-		{
-			logger.error("copyTo(bytes.length={}, chunkOff={}, arrayOff={}, len={}): size={}", bytes.length, chunkOff, arrayOff, len, size);
-			logger.error("copyTo(...): first.getSize()={} secondOffset={} second.getSize()={}", first.getSize(), secondOffset, second.getSize());
-		}
-		*/
+		int firstLen;
 
+		Objects.requireNonNull(bytes);
 		Util.requireValidOffLen(bytes, arrayOff, len);
 		Util.requireValidOffLen(size,chunkOff,len);
-		if(chunkEndOff < secondOffset)
+		if(chunkEndOff <= secondOffset)
 			return first.copyTo(bytes, chunkOff, arrayOff, len);
 		if(secondOffset <= chunkOff)
 			return second.copyTo(bytes, chunkOff-secondOffset, arrayOff, len);
-		return super.copyTo(bytes,chunkOff,arrayOff,len);
+		// split across both
+		firstLen = (int)(secondOffset - chunkOff);
+		first.copyTo(bytes, chunkOff, arrayOff, firstLen);
+		return second.copyTo(bytes, 0L, arrayOff + firstLen, len - firstLen);
+	}
+
+	@Override
+	public void writeTo(DataOutput dataOut, Set<WriteFlag> flags) throws IOException
+	{
+		first.writeTo(dataOut, flags);
+		second.writeTo(dataOut, flags);
 	}
 
 	@Override
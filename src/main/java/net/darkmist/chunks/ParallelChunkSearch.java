@@ -0,0 +1,164 @@
+package net.darkmist.chunks;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.ToLongFunction;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Searches that split a chunk into ranges and search them on the
+ * common {@link java.util.concurrent.ForkJoinPool} so very large
+ * chunks are not limited to the speed of one core.
+ *
+ * Ranges start at multiples of a split size. With the default split
+ * size from {@link Tunables#getParallelSplitSize()} most ranges lie in
+ * a single mapping of a large mapped chunk. Ranges are extended past
+ * their end by one less than the pattern length so matches starting
+ * near the end of a range are found by that range. Results are merged
+ * in order so they are the same as a sequential search.
+ */
+final class ParallelChunkSearch
+{
+	private static final long NOT_FOUND = -1L;
+
+	private ParallelChunkSearch()
+	{
+	}
+
+	/**
+	 * Computation over one range.
+	 */
+	@FunctionalInterface
+	static interface RangeFunction<R>
+	{
+		/**
+		 * @param off Start of the range.
+		 * @param end End of the range (exclusive).
+		 * @return Result for the range.
+		 */
+		public R apply(long off, long end);
+	}
+
+	/**
+	 * Splits a range in two until it is no larger than the split
+	 * size and merges the results of the two halves in order.
+	 */
+	@SuppressFBWarnings(value="SE_BAD_FIELD", justification="Tasks are never serialized.")
+	private static final class RangeTask<R> extends RecursiveTask<R>
+	{
+		private static final long serialVersionUID = 0L;
+		private final long off;
+		private final long end;
+		private final long splitSize;
+		private final RangeFunction<R> leaf;
+		private final BinaryOperator<R> merge;
+
+		RangeTask(long off, long end, long splitSize, RangeFunction<R> leaf, BinaryOperator<R> merge)
+		{
+			this.off = off;
+			this.end = end;
+			this.splitSize = splitSize;
+			this.leaf = leaf;
+			this.merge = merge;
+		}
+
+		@Override
+		protected R compute()
+		{
+			long mid = split(off, end, splitSize);
+			RangeTask<R> left;
+			RangeTask<R> right;
+
+			if(mid < 0L)
+				return leaf.apply(off, end);
+			left = new RangeTask<>(off, mid, splitSize, leaf, merge);
+			right = new RangeTask<>(mid, end, splitSize, leaf, merge);
+			right.fork();
+			return merge.apply(left.compute(), right.join());
+		}
+	}
+
+	/**
+	 * Find where to split a range.
+	 * @param off Start of the range. This is a multiple of
+	 * 	{@code splitSize}.
+	 * @param end End of the range.
+	 * @param splitSize Size to split down to.
+	 * @return Multiple of {@code splitSize} near the middle of the
+	 * 	range or {@code -1} if the range should not be split.
+	 */
+	// package for testing
+	static long split(long off, long end, long splitSize)
+	{
+		long mid;
+
+		if(end - off <= splitSize)
+			return -1L;
+		mid = off + (end - off) / 2L;
+		mid -= mid % splitSize;
+		if(mid <= off)
+			mid += splitSize;
+		return mid;
+	}
+
+	/**
+	 * Apply a function to each range of a chunk in parallel.
+	 * @param size Size of the chunk.
+	 * @param splitSize Size of the ranges.
+	 * @param leaf Function for each range.
+	 * @param merge Combines the results of two adjacent ranges.
+	 * @return Merged result.
+	 */
+	static <R> R invoke(long size, long splitSize, RangeFunction<R> leaf, BinaryOperator<R> merge)
+	{
+		if(splitSize <= 0L)
+			throw new IllegalArgumentException("Split size " + splitSize + " is not positive.");
+		return new RangeTask<>(0L, size, splitSize, leaf, merge).invoke();
+	}
+
+	/**
+	 * Find the first match of a sequential search in parallel.
+	 * Ranges after one that already has a match are skipped.
+	 * @param overlap Bytes past the end of each range it needs to
+	 * 	see.
+	 * @param search Sequential search returning the offset of the
+	 * 	first match in a sub chunk or {@code -1}.
+	 */
+	private static long first(Chunk chunk, long overlap, long splitSize, ToLongFunction<Chunk> search)
+	{
+		long size = chunk.getSize();
+		AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+
+		return invoke(size, splitSize, (off, end)->{
+			long i;
+
+			if(off > best.get())
+				return NOT_FOUND;
+			if((i = search.applyAsLong(chunk.subChunk(off, Math.min(end + overlap, size) - off))) < 0L)
+				return NOT_FOUND;
+			best.accumulateAndGet(off + i, Math::min);
+			return off + i;
+		}, (left, right)->left >= 0L ? left : right);
+	}
+
+	static long indexOf(Chunk chunk, byte b, long splitSize)
+	{
+		return first(chunk, 0L, splitSize, (sub)->ChunkSearch.indexOf(sub, b, 0L));
+	}
+
+	static long indexOf(Chunk chunk, Chunk pattern, long splitSize)
+	{
+		long m = pattern.getSize();
+
+		if(m == 0L)
+			return 0L;
+		return first(chunk, m - 1L, splitSize, (sub)->ChunkSearch.indexOf(sub, pattern, 0L));
+	}
+
+	static long count(Chunk chunk, byte b, long splitSize)
+	{
+		return invoke(chunk.getSize(), splitSize, (off, end)->ChunkSearch.count(chunk.subChunk(off, end - off), b), Long::sum);
+	}
+}
@@ -0,0 +1,216 @@
+package net.darkmist.chunks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Base of leaves backed by part of a {@link BufferRoot}. Sub chunks
+ * share their parent's root so two chunks with the same root are
+ * contiguous if the second starts in the root where the first ends.
+ */
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressFBWarnings(value="FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY",justification=/*FIXME:*/"Is there a decent way to break these cycles?")
+abstract class RootedChunkSPI extends ChunkIntSPI.Abstract
+{
+	private final transient BufferRoot root;
+	private final int rootOff;
+	private final int size;
+
+	RootedChunkSPI(BufferRoot root, int rootOff, int size)
+	{
+		this.root = requireNonNull(root);
+		this.rootOff = rootOff;
+		this.size = size;
+	}
+
+	/**
+	 * @return The root this chunk was derived from.
+	 */
+	final BufferRoot getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * @return Offset of the start of this chunk in its root.
+	 */
+	final int getRootOffset()
+	{
+		return rootOff;
+	}
+
+	/**
+	 * Get a view of part of the backing storage.
+	 * @param off Offset of the view in this chunk.
+	 * @param len Length of the view.
+	 * @return A read only buffer positioned at {@code off} with
+	 * 	{@code len} bytes remaining. The caller may change the
+	 * 	position, limit and order of the returned buffer.
+	 */
+	abstract ByteBuffer window(int off, int len);
+
+	/**
+	 * @return Array holding this chunk's bytes for {@link Chunk} to
+	 * 	read directly or {@code null} if there is none.
+	 */
+	@Nullable
+	byte[] backingArray()
+	{
+		return null;
+	}
+
+	/**
+	 * @return Big endian buffer holding this chunk's bytes for
+	 * 	{@link Chunk} to read directly with absolute gets or
+	 * 	{@code null} if there is none.
+	 */
+	@Nullable
+	ByteBuffer backingBuffer()
+	{
+		return null;
+	}
+
+	/**
+	 * @return Index in {@link #backingArray()} or
+	 * 	{@link #backingBuffer()} of the first byte of this chunk.
+	 */
+	int backingOffset()
+	{
+		return 0;
+	}
+
+	@Override
+	public final long getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean isCoalesced()
+	{
+		return rootOff==0 && size==root.getSize();
+	}
+
+	@Nullable
+	@Override
+	public Chunk subChunk(int off, int len)
+	{
+		if(off==0 && len==size)
+			return null;	// self
+		Util.requireValidOffLen(size, off, len);
+		return root.chunk(rootOff + off, len);
+	}
+
+	/**
+	 * Check if two chunks are rooted chunks where the second
+	 * immediately follows the first in the same root.
+	 * @param first The first chunk.
+	 * @param second The second chunk.
+	 * @return {@code true} if {@link #merge(Chunk,Chunk)} will
+	 * 	merge the two chunks.
+	 */
+	@SuppressWarnings("ReferenceEquality")	// identity of the root is the point
+	static boolean isContiguous(Chunk first, Chunk second)
+	{
+		ChunkSPI firstSPI = first.getSPI();
+		ChunkSPI secondSPI = second.getSPI();
+		RootedChunkSPI a;
+		RootedChunkSPI b;
+
+		if(!(firstSPI instanceof RootedChunkSPI && secondSPI instanceof RootedChunkSPI))
+			return false;
+		a = (RootedChunkSPI)firstSPI;
+		b = (RootedChunkSPI)secondSPI;
+		return a.root == b.root && a.rootOff + a.size == b.rootOff;
+	}
+
+	/**
+	 * Merge two contiguous ranges of the same root back into a
+	 * single chunk. No bytes are copied.
+	 * @param first The first chunk.
+	 * @param second The second chunk.
+	 * @return A single chunk of {@code first} followed by
+	 * 	{@code second} or {@code null} if they are not
+	 * 	contiguous.
+	 * @see #isContiguous(Chunk,Chunk)
+	 */
+	@Nullable
+	static Chunk merge(Chunk first, Chunk second)
+	{
+		RootedChunkSPI a;
+
+		if(!isContiguous(first, second))
+			return null;
+		a = (RootedChunkSPI)first.getSPI();
+		return a.root.chunk(a.rootOff, a.size + ((RootedChunkSPI)second.getSPI()).size);
+	}
+
+	/**
+	 * @return {@code true} if this chunk was mapped from a file.
+	 */
+	final boolean isFileBacked()
+	{
+		return root.getOrigin() != null;
+	}
+
+	/**
+	 * Transfer part of this chunk to a channel directly from the
+	 * file it was mapped from.
+	 * @param off Offset in this chunk.
+	 * @param len Number of bytes to transfer.
+	 * @param target Channel to transfer to.
+	 * @param transfers Files already opened for the current write.
+	 * @return {@code true} if the bytes were transferred or
+	 * 	{@code false} if this chunk is not file backed or the
+	 * 	file is no longer available. Nothing is written if
+	 * 	{@code false} is returned.
+	 * @throws IOException if the transfer fails.
+	 */
+	final boolean transferTo(int off, int len, WritableByteChannel target, FileOrigin.Transfers transfers) throws IOException
+	{
+		FileOrigin origin = root.getOrigin();
+
+		Util.requireValidOffLen(size, off, len);
+		if(origin == null)
+			return false;
+		return origin.transferTo((long)rootOff + off, len, target, transfers);
+	}
+
+	/**
+	 * Transfer part of this chunk to a channel directly from the
+	 * file it was mapped from.
+	 * @param off Offset in this chunk.
+	 * @param len Number of bytes to transfer.
+	 * @param target Channel to transfer to.
+	 * @return {@code true} if the bytes were transferred or
+	 * 	{@code false} if this chunk is not file backed or the
+	 * 	file is no longer available. Nothing is written if
+	 * 	{@code false} is returned.
+	 * @throws IOException if the transfer fails.
+	 */
+	final boolean transferTo(int off, int len, WritableByteChannel target) throws IOException
+	{
+		try(FileOrigin.Transfers transfers = new FileOrigin.Transfers())
+		{
+			return transferTo(off, len, target, transfers);
+		}
+	}
+
+        /*--------+
+         | Object |
+         +--------*/
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " with size " + size;
+	}
+}
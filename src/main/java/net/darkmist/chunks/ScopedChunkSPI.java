@@ -0,0 +1,256 @@
+package net.darkmist.chunks;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
+
+/**
+ * Chunk of mappings owned by a {@link ChunkScope}. Every access holds
+ * the scope open while touching the wrapped chunk so use after close
+ * throws instead of reading unmapped memory and close waits for
+ * accesses in progress. Reads that run no code of the caller use the
+ * scope's cheap {@link ChunkScope#enter()} guard. Those that do, such
+ * as passing segments to an action, hold its lock. Sub chunks and
+ * coalesced chunks are wrapped as well.
+ */
+// PMD thinks this is a bean and doesn't like not having accessors.
+// Immutability: the scope only ever goes from open to closed.
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressWarnings({"PMD.BeanMembersShouldSerialize","Immutable"})
+final class ScopedChunkSPI extends AbstractChunkSPI
+{
+	private final ChunkScope scope;
+	private final Chunk chunk;
+
+	private ScopedChunkSPI(ChunkScope scope, Chunk chunk)
+	{
+		super(chunk.getSize());
+		this.scope = scope;
+		this.chunk = chunk;
+	}
+
+	static Chunk instance(ChunkScope scope, Chunk chunk)
+	{
+		requireNonNull(scope);
+		if(chunk.isEmpty())
+			return chunk;
+		return Chunk.instance(new ScopedChunkSPI(scope, chunk));
+	}
+
+	/**
+	 * @return The scope owning the wrapped chunk.
+	 */
+	ChunkScope getScope()
+	{
+		return scope;
+	}
+
+	/**
+	 * @return The wrapped chunk. It must only be read between
+	 * 	{@link ChunkScope#beginRead()} and
+	 * 	{@link ChunkScope#endRead()} or {@link ChunkScope#enter()}
+	 * 	and {@link ChunkScope#exit(int)} of {@link #getScope()}.
+	 */
+	Chunk getChunk()
+	{
+		return chunk;
+	}
+
+	/**
+	 * Pass part of the wrapped mappings to an action as read only
+	 * buffers while holding the scope open. The scope can not be
+	 * closed until the action returns.
+	 * @param off Offset of the range in this chunk.
+	 * @param len Length of the range.
+	 * @param action Action to pass buffers to.
+	 * @throws IllegalStateException if the scope has been closed.
+	 */
+	void forEachSegment(long off, long len, Consumer<? super ByteBuffer> action)
+	{
+		scope.beginRead();
+		try
+		{
+			ChunkContent.forEachSegment(chunk, off, len, action);
+		}
+		finally
+		{
+			scope.endRead();
+		}
+	}
+
+	@Override
+	public int getByte(long off)
+	{
+		int cell = scope.enter();
+
+		try
+		{
+			return chunk.getByte(off);
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("PMD.AvoidUsingShortType")
+	public short getShort(long off, ByteOrder order)
+	{
+		int cell = scope.enter();
+
+		try
+		{
+			return chunk.getShort(off, order);
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+	}
+
+	@Override
+	public int getInt(long off, ByteOrder order)
+	{
+		int cell = scope.enter();
+
+		try
+		{
+			return chunk.getInt(off, order);
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+	}
+
+	@Override
+	public long getLong(long off, ByteOrder order)
+	{
+		int cell = scope.enter();
+
+		try
+		{
+			return chunk.getLong(off, order);
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+	}
+
+	@Nullable
+	@Override
+	public Chunk subChunk(long off, long len)
+	{
+		Chunk sub;
+		int cell;
+
+		if(off==0 && len==size)
+			return null;	// self
+		// Sub chunks of a single byte read it.
+		cell = scope.enter();
+		try
+		{
+			sub = chunk.subChunk(off, len);
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+		return instance(scope, sub);
+	}
+
+	@Override
+	public byte[] copyTo(byte[] bytes, long chunkOff, int arrayOff, int len)
+	{
+		int cell = scope.enter();
+
+		try
+		{
+			return chunk.copyTo(bytes, chunkOff, arrayOff, len);
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+	}
+
+	@Override
+	public boolean isCoalesced()
+	{
+		return chunk.isCoalesced();
+	}
+
+	@Nullable
+	@Override
+	public Chunk coalesce()
+	{
+		Chunk coalesced;
+		int cell = scope.enter();
+
+		try
+		{
+			coalesced = chunk.coalesce();
+		}
+		finally
+		{
+			scope.exit(cell);
+		}
+		if(coalesced == chunk)
+			return null;	// self
+		if(isMapped(coalesced))
+			return instance(scope, coalesced);
+		return coalesced;
+	}
+
+	/**
+	 * @param chunk Chunk to check.
+	 * @return Whether any piece of {@code chunk} is backed by a
+	 * 	buffer instead of the heap and so may be a mapping.
+	 */
+	private static boolean isMapped(Chunk chunk)
+	{
+		for(ChunkContent.Piece piece : ChunkContent.pieces(chunk, 0L, chunk.getSize()))
+		{
+			if(piece.spi instanceof ByteChunkSPI)
+				continue;
+			if(!(piece.spi instanceof RootedChunkSPI) || ((RootedChunkSPI)piece.spi).backingArray() == null)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void writeTo(DataOutput dataOut, Set<WriteFlag> flags) throws IOException
+	{
+		scope.beginRead();
+		try
+		{
+			chunk.writeTo(dataOut, flags);
+		}
+		finally
+		{
+			scope.endRead();
+		}
+	}
+
+        /*--------+
+         | Object |
+         +--------*/
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " of " + chunk + " in " + scope;
+	}
+}
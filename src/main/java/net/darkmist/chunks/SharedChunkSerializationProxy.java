@@ -0,0 +1,367 @@
+package net.darkmist.chunks;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.errorprone.annotations.Var;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Serialization proxy for {@link SharedChunks}. The parts of each
+ * {@link BufferRoot} covered by pieces of the chunks are merged into
+ * ranges and each range is written once. Buffer backed pieces are
+ * then written as the index of their range along with an offset in
+ * that range and a length. On read each range becomes its own root
+ * so chunks of the same range share it. Other pieces are written
+ * inline.
+ */
+final class SharedChunkSerializationProxy implements Externalizable
+{
+	private static final Class<SharedChunkSerializationProxy> CLASS = SharedChunkSerializationProxy.class;
+	private static final long serialVersionUID = 0L;
+	/**
+	 * Largest capacity to preallocate from a count read from the
+	 * stream so a bogus count can not cause a huge allocation.
+	 */
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+	private transient List<Chunk> chunks;
+
+	public SharedChunkSerializationProxy(List<Chunk> chunks)
+	{
+		this.chunks = chunks;
+	}
+
+	public SharedChunkSerializationProxy()
+	{
+		this(null);
+	}
+
+       /*-------+
+        | write |
+        +-------*/
+
+	/**
+	 * Merged ranges of one root that are covered by pieces.
+	 */
+	private static final class Ranges
+	{
+		private final List<int[]> covered = new ArrayList<>();
+		/**
+		 * Start of each merged range in the root.
+		 */
+		private int[] starts = new int[0];
+		/**
+		 * Index of the first merged range of this root in the
+		 * stream.
+		 */
+		private int first;
+
+		Ranges()
+		{
+		}
+
+		void add(int start, int end)
+		{
+			covered.add(new int[]{start, end});
+		}
+
+		/**
+		 * Merge overlapping and adjacent ranges.
+		 * @param firstIndex Index in the stream of the first
+		 * 	merged range.
+		 * @return Merged ranges as start and end pairs.
+		 */
+		List<int[]> merge(int firstIndex)
+		{
+			List<int[]> merged = new ArrayList<>();
+			@Var
+			int[] last = null;
+
+			covered.sort((a, b)->Integer.compare(a[0], b[0]));
+			for(int[] range : covered)
+			{
+				if(last != null && range[0] <= last[1])
+					last[1] = Math.max(last[1], range[1]);
+				else
+				{
+					last = range.clone();
+					merged.add(last);
+				}
+			}
+			starts = new int[merged.size()];
+			for(int i=0;i<starts.length;i++)
+				starts[i] = merged.get(i)[0];
+			first = firstIndex;
+			return merged;
+		}
+
+		/**
+		 * @param start Start of a covered range in the root.
+		 * @return Index of the merged range holding it in
+		 * 	{@link #starts}.
+		 */
+		int indexOf(int start)
+		{
+			int i = Arrays.binarySearch(starts, start);
+
+			return i < 0 ? -i - 2 : i;
+		}
+	}
+
+	private static void writeInline(ChunkSPI spi, long off, long len, ObjectOutput oo) throws IOException
+	{
+		byte[] buf = Tunables.acquireTmpBuf();
+
+		oo.writeLong(len);
+		try
+		{
+			for(@Var long done=0L;done<len;)
+			{
+				int n = (int)Math.min(buf.length, len-done);
+
+				spi.copyTo(buf, off+done, 0, n);
+				oo.write(buf, 0, n);
+				done+=n;
+			}
+		}
+		finally
+		{
+			Tunables.releaseTmpBuf(buf);
+		}
+	}
+
+	private static void writeRange(BufferRoot root, int start, int end, ObjectOutput oo) throws IOException
+	{
+		ByteBuffer buf;
+		byte[] tmp;
+
+		oo.writeInt(end - start);
+		buf = root.buffer();
+		if(buf.hasArray())
+		{
+			oo.write(root.array(), root.arrayOffset() + start, end - start);
+			return;
+		}
+		buf.limit(root.getBase() + end).position(root.getBase() + start);
+		tmp = Tunables.acquireTmpBuf();
+		try
+		{
+			while(buf.hasRemaining())
+			{
+				int len = Math.min(tmp.length, buf.remaining());
+
+				buf.get(tmp, 0, len);
+				oo.write(tmp, 0, len);
+			}
+		}
+		finally
+		{
+			Tunables.releaseTmpBuf(tmp);
+		}
+	}
+
+	/**
+	 * Write the merged ranges followed by the chunks. Each range is
+	 * its length and bytes. Each chunk is its size and pieces. Each
+	 * piece is a boolean for whether it is a reference followed by
+	 * either the range index, offset and length or the length and
+	 * bytes.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput oo) throws IOException
+	{
+		List<List<ChunkContent.Piece>> allPieces = new ArrayList<>(chunks.size());
+		Map<BufferRoot,Ranges> rootRanges = new IdentityHashMap<>();
+		List<BufferRoot> roots = new ArrayList<>();
+		List<int[]> merged = new ArrayList<>();
+
+		for(Chunk chunk : chunks)
+		{
+			List<ChunkContent.Piece> pieces = ChunkContent.pieces(chunk, 0L, chunk.getSize());
+
+			allPieces.add(pieces);
+			for(ChunkContent.Piece piece : pieces)
+				if(piece.spi instanceof RootedChunkSPI)
+				{
+					RootedChunkSPI spi = (RootedChunkSPI)piece.spi;
+					int start = spi.getRootOffset() + (int)piece.off;
+
+					rootRanges.computeIfAbsent(spi.getRoot(), (root)->{
+						roots.add(root);
+						return new Ranges();
+					}).add(start, start + (int)piece.len);
+				}
+		}
+		for(BufferRoot root : roots)
+			merged.addAll(rootRanges.get(root).merge(merged.size()));
+
+		oo.writeInt(merged.size());
+		for(BufferRoot root : roots)
+		{
+			Ranges ranges = rootRanges.get(root);
+
+			for(int i=0;i<ranges.starts.length;i++)
+			{
+				int[] range = merged.get(ranges.first + i);
+
+				writeRange(root, range[0], range[1], oo);
+			}
+		}
+
+		oo.writeInt(chunks.size());
+		for(int c=0;c<chunks.size();c++)
+		{
+			List<ChunkContent.Piece> pieces = allPieces.get(c);
+
+			oo.writeLong(chunks.get(c).getSize());
+			oo.writeInt(pieces.size());
+			for(ChunkContent.Piece piece : pieces)
+			{
+				if(piece.spi instanceof RootedChunkSPI)
+				{
+					RootedChunkSPI spi = (RootedChunkSPI)piece.spi;
+					Ranges ranges = rootRanges.get(spi.getRoot());
+					int start = spi.getRootOffset() + (int)piece.off;
+					int i = ranges.indexOf(start);
+
+					oo.writeBoolean(true);
+					oo.writeInt(ranges.first + i);
+					oo.writeInt(start - ranges.starts[i]);
+					oo.writeInt((int)piece.len);
+				}
+				else
+				{
+					oo.writeBoolean(false);
+					writeInline(piece.spi, piece.off, piece.len, oo);
+				}
+			}
+		}
+	}
+
+       /*------+
+        | read |
+        +------*/
+
+	private static int readCount(ObjectInput oi, String what) throws IOException
+	{
+		int count = oi.readInt();
+
+		if(count < 0)
+			throw new InvalidObjectException(what + " count " + count + " was negative while deserializing shared chunks.");
+		return count;
+	}
+
+	private static Chunk readReference(ObjectInput oi, List<BufferRoot> roots) throws IOException
+	{
+		int index = oi.readInt();
+		int off = oi.readInt();
+		int len = oi.readInt();
+
+		if(index < 0 || index >= roots.size())
+			throw new InvalidObjectException("Reference to range " + index + " is not within the " + roots.size() + " ranges read.");
+		try
+		{
+			return roots.get(index).chunk(off, len);
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			InvalidObjectException ioe = new InvalidObjectException("Reference to offset " + off + " and length " + len + " is not within range " + index + " of " + roots.get(index).getSize() + " bytes.");
+			ioe.initCause(e);
+			throw ioe;
+		}
+	}
+
+	private static Chunk readInline(ObjectInput oi) throws IOException
+	{
+		long len = oi.readLong();
+
+		if(len < 0)
+			throw new InvalidObjectException("Length " + len + " was negative while deserializing chunk.");
+		return ChunkSerializationProxy.readChunk(oi, len, Tunables.getSerialSegmentSize(), Tunables.isSerialDirect());
+	}
+
+	private static Chunk readChunk(ObjectInput oi, List<BufferRoot> roots) throws IOException
+	{
+		long size = oi.readLong();
+		int count;
+		List<Chunk> pieces;
+		Chunk result;
+
+		if(size < 0)
+			throw new InvalidObjectException("Size " + size + " was negative while deserializing chunk.");
+		count = readCount(oi, "Piece");
+		pieces = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+		for(int i=0;i<count;i++)
+			pieces.add(oi.readBoolean() ? readReference(oi, roots) : readInline(oi));
+		result = Chunks.ofChunks(pieces);
+		if(result.getSize() != size)
+			throw new InvalidObjectException("Pieces totaled " + result.getSize() + " bytes instead of " + size + '.');
+		return result;
+	}
+
+	@Override
+	public void readExternal(ObjectInput oi) throws IOException
+	{
+		@Var
+		int count = readCount(oi, "Range");
+		List<BufferRoot> roots = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+		List<Chunk> result;
+
+		for(int i=0;i<count;i++)
+		{
+			int len = oi.readInt();
+
+			if(len < 0)
+				throw new InvalidObjectException("Length " + len + " was negative while deserializing shared range.");
+			roots.add(new BufferRoot(ChunkSerializationProxy.readBuffer(oi, len, Tunables.isSerialDirect())));
+		}
+		count = readCount(oi, "Chunk");
+		result = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+		for(int i=0;i<count;i++)
+			result.add(readChunk(oi, roots));
+		this.chunks = result;
+	}
+
+	// Non-private for testing.
+	@SuppressFBWarnings(value="WEM_WEAK_EXCEPTION_MESSAGING", justification="Boolean condition.")
+	Object readResolve() throws ObjectStreamException
+	{
+		if(chunks==null)
+			throw new InvalidObjectException("Deserialization of object did not result in chunks being set.");
+		return SharedChunks.of(chunks);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this==o)
+			return true;
+		if(!(o instanceof SharedChunkSerializationProxy))
+			return false;
+		return Objects.equals(this.chunks, ((SharedChunkSerializationProxy)o).chunks);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hashCode(chunks);
+	}
+
+	@Override
+	public String toString()
+	{
+		return CLASS.getSimpleName() + ": chunks=" + Objects.toString(chunks);
+	}
+}
@@ -0,0 +1,113 @@
+package net.darkmist.chunks;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.annotation.concurrent.Immutable;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Group of chunks serialized together so chunks of the same buffer
+ * share one copy of it in the stream. Chunks serialized on their own
+ * always write their own bytes. Writing many sub chunks of a large
+ * buffer, such as the packets of a mapped capture file, through one
+ * {@code SharedChunks} instead writes each byte they cover once.
+ *
+ * Only the parts of each buffer that are covered by some chunk are
+ * written, with overlapping and adjacent parts merged. Chunks read
+ * back from the same {@code SharedChunks} share the rebuilt buffers.
+ */
+// Immutability not liked by errorprone because of the list.
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressWarnings("Immutable")
+public final class SharedChunks implements Serializable
+{	// Only serializable via proxy
+	private static final long serialVersionUID = 0L;
+
+	@SuppressFBWarnings(value="SE_TRANSIENT_FIELD_NOT_RESTORED", justification="proxy used for serialization.")
+	private final transient List<Chunk> chunks;
+
+	private SharedChunks(List<Chunk> chunks)
+	{
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Group chunks for serialization.
+	 * @param chunks The chunks.
+	 * @return Group of {@code chunks} in order.
+	 * @throws NullPointerException if {@code chunks} or any of
+	 * 	its elements are {@code null}.
+	 */
+	public static SharedChunks of(Collection<Chunk> chunks)
+	{
+		List<Chunk> list = new ArrayList<>(chunks);
+
+		for(Chunk chunk : list)
+			requireNonNull(chunk);
+		return new SharedChunks(Collections.unmodifiableList(list));
+	}
+
+	/**
+	 * Group chunks for serialization.
+	 * @param chunks The chunks.
+	 * @return Group of {@code chunks} in order.
+	 * @throws NullPointerException if {@code chunks} or any of
+	 * 	its elements are {@code null}.
+	 */
+	public static SharedChunks of(Chunk...chunks)
+	{
+		return of(Arrays.asList(chunks));
+	}
+
+	/**
+	 * @return Unmodifiable list of the chunks in this group.
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP", justification="List is unmodifiable.")
+	public List<Chunk> getChunks()
+	{
+		return chunks;
+	}
+
+	/**
+	 * Serialize via proxy.
+	 * @return Serialization proxy for this group.
+	 * @throws ObjectStreamException Doesn't. This is per the serialization specification.
+	 */
+	@SuppressFBWarnings(value="BED_BOGUS_EXCEPTION_DECLARATION",justification="Serialization API")
+	private Object writeReplace() throws ObjectStreamException
+	{
+		return new SharedChunkSerializationProxy(chunks);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this==o)
+			return true;
+		if(!(o instanceof SharedChunks))
+			return false;
+		return chunks.equals(((SharedChunks)o).chunks);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return chunks.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " of " + chunks.size() + " chunks";
+	}
+}
@@ -43,6 +43,16 @@ final class SubChunkSPI extends AbstractChunkSPI
 		return Chunk.instance(new SubChunkSPI(subChunk, subChunkOff, subChunkLen));
 	}
 
+	Chunk getChunk()
+	{
+		return chunk;
+	}
+
+	long getSubChunkOff()
+	{
+		return subChunkOff;
+	}
+
 	@CheckReturnValue(when=When.NEVER)
 	@Override
 	public int getByte(long off)
@@ -1,23 +1,259 @@
 package net.darkmist.chunks;
 
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes and limits used through out the package.
+ *
+ * Each value can be overridden with a system property named
+ * {@code net.darkmist.chunks.} followed by the value's name (for
+ * example {@code net.darkmist.chunks.tmpBufSize}). Properties are
+ * read once when this class is initialized. Values that are not
+ * positive integers are ignored.
+ */
 final class Tunables
 {
-	private static final int PAGE_SIZE = 4096;	// FIXME!
+	private static final Logger logger = LoggerFactory.getLogger(Tunables.class);
+	private static final String PROPERTY_PREFIX = "net.darkmist.chunks.";
+	private static final int DEFAULT_PAGE_SIZE = 4096;
+
+	private static final int PAGE_SIZE = intProperty("pageSize", detectPageSize());
+	private static final int TMP_BUF_SIZE = intProperty("tmpBufSize", PAGE_SIZE);
+	private static final int TMP_BUF_POOL_SIZE = intProperty("tmpBufPoolSize", 4);
+	private static final int FLATTEN_LIMIT = intProperty("flattenLimit", 32);
+	private static final int GATHER_LIMIT = intProperty("gatherLimit", 1024);	// IOV_MAX on Linux
+	private static final int MIN_TRANSFER_SIZE = intProperty("minTransferSize", 64 * 1024);
+	private static final int SERIAL_SEGMENT_SIZE = intProperty("serialSegmentSize", (int)LargeChunksHelper.LARGE_CHUNK_SIZE);
+	private static final boolean SERIAL_DIRECT = booleanProperty("serialDirect", false);
+	private static final int DIRECT_SLAB_SIZE = intProperty("directSlabSize", 1024 * 1024);
+	private static final int DIRECT_BLOCK_SIZE = intProperty("directBlockSize", (int)LargeChunksHelper.LARGE_CHUNK_ALIGNMENT);
+	private static final int PARALLEL_SPLIT_SIZE = intProperty("parallelSplitSize", 64 * 1024 * 1024);
+
+	/**
+	 * Per thread pool of temporary buffers. A small stack is kept
+	 * instead of a single buffer so nested users each get their own.
+	 */
+	private static final ThreadLocal<Deque<byte[]>> tmpBufs = ThreadLocal.withInitial(ArrayDeque::new);
 
 	private Tunables()
 	{
 	}
 
-	@SuppressFBWarnings(value="MRC_METHOD_RETURNS_CONSTANT",justification="Future extension.")
-	static int getTmpBufSize()
+	// package for testing
+	static int intProperty(String name, int defaultValue)
+	{
+		String fullName = PROPERTY_PREFIX + name;
+		String str;
+		int value;
+
+		try
+		{
+			if((str = System.getProperty(fullName))==null)
+				return defaultValue;
+		}
+		catch(SecurityException e)
+		{
+			logger.debug("Unable to read property {}.", fullName, e);
+			return defaultValue;
+		}
+		try
+		{
+			value = Integer.parseInt(str.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			logger.warn("Ignoring non-integer value {} for property {}.", str, fullName);
+			return defaultValue;
+		}
+		if(value < 1)
+		{
+			logger.warn("Ignoring non-positive value {} for property {}.", value, fullName);
+			return defaultValue;
+		}
+		return value;
+	}
+
+	private static boolean booleanProperty(String name, boolean defaultValue)
+	{
+		String fullName = PROPERTY_PREFIX + name;
+		String str;
+
+		try
+		{
+			if((str = System.getProperty(fullName))==null)
+				return defaultValue;
+		}
+		catch(SecurityException e)
+		{
+			logger.debug("Unable to read property {}.", fullName, e);
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(str.trim());
+	}
+
+	/**
+	 * Get the system page size from {@code sun.misc.Unsafe} if
+	 * it is available.
+	 * @return The page size or {@link #DEFAULT_PAGE_SIZE} if it
+	 * 	can not be determined.
+	 */
+	@SuppressFBWarnings(value={"DP_DO_INSIDE_DO_PRIVILEGED","REC_CATCH_EXCEPTION"}, justification="Best effort detection with fallback.")
+	@SuppressWarnings("PMD.AvoidCatchingGenericException")
+	private static int detectPageSize()
+	{
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			Object unsafe;
+			int pageSize;
+
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			pageSize = (Integer)unsafeClass.getMethod("pageSize").invoke(unsafe);
+			if(pageSize > 0 && Integer.bitCount(pageSize)==1)
+				return pageSize;
+			logger.debug("Ignoring unlikely page size {}.", pageSize);
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			logger.debug("Unable to determine page size.", e);
+		}
+		return DEFAULT_PAGE_SIZE;
+	}
+
+	/**
+	 * @return the system page size.
+	 */
+	static int getPageSize()
 	{
 		return PAGE_SIZE;
 	}
 
-	static byte[] getTmpBuf()
+	/**
+	 * @return the size of buffers returned by {@link #acquireTmpBuf()}.
+	 */
+	static int getTmpBufSize()
+	{
+		return TMP_BUF_SIZE;
+	}
+
+	/**
+	 * Maximum number of leaf chunks a concatenation is flattened
+	 * into a single {@link MultiChunkSPI} for. Larger concatenations
+	 * are kept as a balanced tree of {@link PairChunkSPI}s so appending
+	 * does not copy the whole list of leaves.
+	 * @return the flatten limit.
+	 */
+	static int getFlattenLimit()
+	{
+		return FLATTEN_LIMIT;
+	}
+
+	/**
+	 * Maximum number of buffers passed to a single gathering write.
+	 * @return the gather limit.
+	 */
+	static int getGatherLimit()
+	{
+		return GATHER_LIMIT;
+	}
+
+	/**
+	 * Smallest piece of a file backed chunk that is sent with
+	 * {@link java.nio.channels.FileChannel#transferTo(long,long,java.nio.channels.WritableByteChannel)}.
+	 * Smaller pieces are written from the mapped buffer along with
+	 * their neighbors as the transfer costs more system calls than
+	 * it saves.
+	 * @return the minimum transfer size.
+	 */
+	static int getMinTransferSize()
 	{
-		return new byte[PAGE_SIZE];
+		return MIN_TRANSFER_SIZE;
+	}
+
+	/**
+	 * Maximum size of each segment a deserialized chunk is read
+	 * into. Larger chunks are read as multiple segments.
+	 * @return the segment size.
+	 */
+	static int getSerialSegmentSize()
+	{
+		return SERIAL_SEGMENT_SIZE;
+	}
+
+	/**
+	 * @return {@code true} if deserialized chunks should be read
+	 * 	into direct buffers instead of heap arrays.
+	 */
+	static boolean isSerialDirect()
+	{
+		return SERIAL_DIRECT;
+	}
+
+	/**
+	 * @return Default size of the direct buffers a
+	 * 	{@link DirectArena} carves allocations out of.
+	 */
+	static int getDirectSlabSize()
+	{
+		return DIRECT_SLAB_SIZE;
+	}
+
+	/**
+	 * @return Size of the blocks a {@link DirectChunkBuilder}
+	 * 	allocates as it fills.
+	 */
+	static int getDirectBlockSize()
+	{
+		return DIRECT_BLOCK_SIZE;
+	}
+
+	/**
+	 * Size of the ranges parallel searches split chunks into.
+	 * Ranges start at multiples of this so when it is a power of
+	 * two no larger than {@link LargeChunksHelper#LARGE_CHUNK_SIZE}
+	 * most ranges lie within one mapping of a large chunk.
+	 * @return the split size.
+	 */
+	static int getParallelSplitSize()
+	{
+		return PARALLEL_SPLIT_SIZE;
+	}
+
+	/**
+	 * Get a temporary buffer of {@link #getTmpBufSize()} bytes from
+	 * the current thread's pool. The buffer should be returned with
+	 * {@link #releaseTmpBuf(byte[])} once it is no longer used. The
+	 * contents of the buffer are undefined.
+	 * @return A temporary buffer.
+	 */
+	static byte[] acquireTmpBuf()
+	{
+		byte[] buf = tmpBufs.get().pollFirst();
+
+		if(buf == null)
+			return new byte[TMP_BUF_SIZE];
+		return buf;
+	}
+
+	/**
+	 * Return a temporary buffer to the current thread's pool. The
+	 * buffer must not be used after this.
+	 * @param buf Buffer from {@link #acquireTmpBuf()}.
+	 */
+	static void releaseTmpBuf(byte[] buf)
+	{
+		Deque<byte[]> pool = tmpBufs.get();
+
+		if(buf.length == TMP_BUF_SIZE && pool.size() < TMP_BUF_POOL_SIZE)
+			pool.push(buf);
 	}
 }
@@ -0,0 +1,108 @@
+package net.darkmist.chunks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+
+import javax.annotation.Nullable;
+
+import com.google.errorprone.annotations.Var;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Releases mapped buffers without waiting for the garbage collector.
+ * There is no public API for this so the JDK's cleaner is found by
+ * reflection: {@code sun.misc.Unsafe.invokeCleaner(ByteBuffer)} on
+ * Java 9 and later or {@code DirectBuffer.cleaner().clean()} on Java
+ * 8. If neither can be used mappings are left for the garbage
+ * collector.
+ *
+ * Any access to a buffer after it is unmapped can crash the JVM so
+ * callers must make sure nothing can reach the buffer first.
+ */
+final class Unmapper
+{
+	private static final Logger logger = LoggerFactory.getLogger(Unmapper.class);
+
+	/**
+	 * {@code Unsafe} instance for {@link #INVOKE_CLEANER} or
+	 * {@code null} if not on Java 9 or later.
+	 */
+	@Nullable
+	private static final Object UNSAFE;
+	@Nullable
+	private static final Method INVOKE_CLEANER;
+
+	static
+	{
+		@Var
+		Object unsafe = null;
+		@Var
+		Method invokeCleaner = null;
+
+		try
+		{
+			Class<?> cls = Class.forName("sun.misc.Unsafe");
+			Field field = cls.getDeclaredField("theUnsafe");
+
+			field.setAccessible(true);
+			invokeCleaner = cls.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+			unsafe = field.get(null);
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			logger.debug("Unsafe.invokeCleaner(ByteBuffer) is not available.", e);
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private Unmapper()
+	{
+	}
+
+	private static boolean clean(MappedByteBuffer buf) throws ReflectiveOperationException
+	{
+		Method cleanerMethod = buf.getClass().getMethod("cleaner");
+		Object cleaner;
+
+		cleanerMethod.setAccessible(true);
+		cleaner = cleanerMethod.invoke(buf);
+		if(cleaner == null)
+			return false;
+		cleaner.getClass().getMethod("clean").invoke(cleaner);
+		return true;
+	}
+
+	/**
+	 * Unmap a buffer.
+	 * @param buf A buffer returned by
+	 * 	{@link java.nio.channels.FileChannel#map}. Duplicates and
+	 * 	slices cannot be unmapped.
+	 * @return {@code true} if the buffer was unmapped or
+	 * 	{@code false} if it is left for the garbage collector.
+	 */
+	static boolean unmap(MappedByteBuffer buf)
+	{
+		try
+		{
+			if(INVOKE_CLEANER == null)
+				return clean(buf);
+			INVOKE_CLEANER.invoke(UNSAFE, buf);
+			return true;
+		}
+		catch(InvocationTargetException e)
+		{
+			logger.debug("Failed to unmap {}.", buf, e.getCause());
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			logger.debug("Failed to unmap {}.", buf, e);
+		}
+		return false;
+	}
+}
@@ -423,6 +423,41 @@ final class Util
 		return Long.reverseBytes(l);
 	}
 
+	/**
+	 * Read bytes from a chunk as an unsigned big endian value with
+	 * as few reads as possible.
+	 * @param chunk The chunk to read from.
+	 * @param off Offset of the bytes in {@code chunk}.
+	 * @param len Number of bytes from one to eight.
+	 * @return The bytes as a big endian value in the low
+	 * 	{@code len} bytes of the result.
+	 * @throws IllegalArgumentException if {@code len} is not from
+	 * 	one to eight.
+	 */
+	@SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+	static long bigEndianBytes(Chunk chunk, long off, int len)
+	{
+		switch(len)
+		{
+			case 1:
+				return chunk.getByteUnsigned(off);
+			case 2:
+				return chunk.getShortUnsigned(off, ByteOrder.BIG_ENDIAN);
+			case 3:
+				return (chunk.getShortUnsigned(off, ByteOrder.BIG_ENDIAN) << Byte.SIZE) | chunk.getByteUnsigned(off+2);
+			case 4:
+				return chunk.getIntUnsigned(off, ByteOrder.BIG_ENDIAN);
+			case 5:
+			case 6:
+			case 7:
+				return (chunk.getIntUnsigned(off, ByteOrder.BIG_ENDIAN) << ((len-Integer.BYTES)*Byte.SIZE)) | bigEndianBytes(chunk, off+Integer.BYTES, len-Integer.BYTES);
+			case 8:
+				return chunk.getLong(off, ByteOrder.BIG_ENDIAN);
+			default:
+				throw new IllegalArgumentException("Length " + len + " is not from one to eight bytes.");
+		}
+	}
+
 	static byte[] maskedBytesFrom(long a, long b, long c, long d, long e, long f, long g, long h)
 	{
 		return new byte[]
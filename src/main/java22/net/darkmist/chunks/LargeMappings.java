@@ -0,0 +1,46 @@
+package net.darkmist.chunks;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maps files larger than {@link LargeChunksHelper#LARGE_CHUNK_SIZE}
+ * as a single {@link MemorySegment}. This replaces the version that
+ * maps nothing on runtimes with the Foreign Function and Memory API.
+ */
+final class LargeMappings
+{
+	private LargeMappings()
+	{
+	}
+
+	/**
+	 * @return Whether {@link #map(FileChannel,long,long,FileOrigin)}
+	 * 	is supported on this runtime.
+	 */
+	static boolean isAvailable()
+	{
+		return true;
+	}
+
+	/**
+	 * Map part of a file as one leaf that is unmapped when it is
+	 * garbage collected.
+	 * @param fc Channel to map.
+	 * @param off Offset in the file. This must already be checked.
+	 * @param len Length to map. This must already be checked.
+	 * @param origin The file {@code fc} is for.
+	 * @return Chunk of the mapping.
+	 * @throws IOException if mapping fails.
+	 */
+	static Chunk map(FileChannel fc, long off, long len, @Nullable FileOrigin origin) throws IOException
+	{
+		MemorySegment seg = fc.map(FileChannel.MapMode.READ_ONLY, off, len, Arena.ofAuto());
+
+		return Chunk.instance(new SegmentChunkSPI(seg, origin, off));
+	}
+}
@@ -0,0 +1,102 @@
+package net.darkmist.chunks;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Leaf backed by a single {@link MemorySegment}. Reads use long
+ * offsets straight into the segment so there is no lookup of which
+ * buffer holds an offset and no reads assembled from bytes across
+ * buffer boundaries. Sub chunks that fit in a buffer are buffer
+ * backed views of the segment.
+ */
+// Immutability: the segment is read only.
+@com.google.errorprone.annotations.Immutable
+@Immutable
+@SuppressWarnings("Immutable")
+final class SegmentChunkSPI extends LargeChunkSPI
+{
+	private static final ValueLayout.OfShort BIG_SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+	private static final ValueLayout.OfShort LITTLE_SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt BIG_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+	private static final ValueLayout.OfInt LITTLE_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong BIG_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+	private static final ValueLayout.OfLong LITTLE_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private final MemorySegment seg;
+	@Nullable
+	private final FileOrigin origin;
+	private final long fileOff;
+
+	/**
+	 * @param seg Segment to wrap.
+	 * @param origin The file {@code seg} was mapped from if any.
+	 * @param fileOff Offset of {@code seg} in the file.
+	 */
+	SegmentChunkSPI(MemorySegment seg, @Nullable FileOrigin origin, long fileOff)
+	{
+		super(seg.byteSize());
+		this.seg = seg.asReadOnly();
+		this.origin = origin;
+		this.fileOff = fileOff;
+	}
+
+	@Override
+	public int getByte(long off)
+	{
+		return seg.get(ValueLayout.JAVA_BYTE, off)&0xff;
+	}
+
+	@Override
+	@SuppressWarnings("PMD.AvoidUsingShortType")
+	public short getShort(long off, ByteOrder order)
+	{
+		return seg.get(order == ByteOrder.BIG_ENDIAN ? BIG_SHORT : LITTLE_SHORT, off);
+	}
+
+	@Override
+	public int getInt(long off, ByteOrder order)
+	{
+		return seg.get(order == ByteOrder.BIG_ENDIAN ? BIG_INT : LITTLE_INT, off);
+	}
+
+	@Override
+	public long getLong(long off, ByteOrder order)
+	{
+		return seg.get(order == ByteOrder.BIG_ENDIAN ? BIG_LONG : LITTLE_LONG, off);
+	}
+
+	@Override
+	ChunkSPI piece(long off, int len)
+	{
+		Util.requireValidOffLen(size, off, len);
+		return BufferChunkSPI.giveMappedInstance(
+			seg.asSlice(off, len).asByteBuffer(),
+			origin == null ? null : origin.at(fileOff + off)
+		).getSPI();
+	}
+
+	@Nullable
+	@Override
+	public Chunk subChunk(long off, long len)
+	{
+		Util.requireValidOffLen(size, off, len);
+		if(off==0 && len==size)
+			return null;	// self
+		if(len <= LargeChunksHelper.LARGE_CHUNK_SIZE)
+			return Chunk.instance(piece(off, (int)len));
+		return Chunk.instance(new SegmentChunkSPI(seg.asSlice(off, len), origin, fileOff + off));
+	}
+
+	@Override
+	public byte[] copyTo(byte[] bytes, long chunkOff, int arrayOff, int len)
+	{
+		Util.requireValidOffLen(bytes, arrayOff, len);
+		Util.requireValidOffLen(size, chunkOff, len);
+		MemorySegment.copy(seg, ValueLayout.JAVA_BYTE, chunkOff, bytes, arrayOff, len);
+		return bytes;
+	}
+}
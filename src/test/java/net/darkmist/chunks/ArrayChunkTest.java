@@ -0,0 +1,434 @@
+package net.darkmist.chunks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import com.google.errorprone.annotations.Var;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@SuppressWarnings("boxing")
+	// We can hope the compiler can handle constants
+public class ArrayChunkTest
+{
+	private static final Logger logger = LoggerFactory.getLogger(ArrayChunkTest.class);
+	private static final int PAD = 3;
+
+	/**
+	 * Give the middle of a larger array so reads have to account
+	 * for the offset of the chunk in the array.
+	 */
+	private static Chunk givePadded(byte[] bytes)
+	{
+		byte[] padded = new byte[bytes.length + 2*PAD];
+
+		Arrays.fill(padded, (byte)0xa5);
+		System.arraycopy(bytes, 0, padded, PAD, bytes.length);
+		return Chunks.giveBytes(padded, PAD, bytes.length);
+	}
+
+	private static Stream<Chunk> testArrayChunks()
+	{
+		return LongStream.of(2L,4L,6L,8L,12L,24L)
+			.mapToObj(TestSources::mkTestArray)
+			.flatMap((bytes)->Stream.of(Chunks.giveBytes(bytes), givePadded(bytes)));
+	}
+
+	public static Stream<Arguments> streamByteAtOffArgs()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamByteAtOffArgs);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamByteAtOffArgs")
+	public void byteValueAt(Chunk chunk, byte expected, long off)
+	{
+		TestSources.byteValueAt(chunk,expected,off);
+	}
+
+	public static Stream<Arguments> streamShortAtOffArgs()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamShortAtOffArgs);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamShortAtOffArgs")
+	public void shortValueAt(Chunk chunk, short expected, long off)
+	{
+		TestSources.shortValueAt(chunk, expected, off);
+	}
+
+	public static Stream<Arguments> streamIntAtOffArgs()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamIntAtOffArgs);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamIntAtOffArgs")
+	public void intValueAt(Chunk chunk, int expected, long off)
+	{
+		TestSources.intValueAt(chunk, expected, off);
+	}
+
+	public static Stream<Arguments> streamLongAtOffArgs()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamLongAtOffArgs);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamLongAtOffArgs")
+	public void longValueAt(Chunk chunk, long expected, long off)
+	{
+		TestSources.longValueAt(chunk, expected, off);
+	}
+
+	public static Stream<Arguments> streamSubChunkArg()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamSubChunkArg);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSubChunkArg")
+	public void subChunkAtFor(Chunk chunk, long off, long len)
+	{
+		TestSources.subChunkAtFor(chunk, off, len);
+	}
+
+	public static Stream<Arguments> streamCopyToArg()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamCopyToArg);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamCopyToArg")
+	public void copyToAtFor(Chunk chunk, long chunkOff, int arrayOff, int arrayLen, int copyLen)
+	{
+		TestSources.copyToAtFor(chunk, chunkOff, arrayOff, arrayLen, copyLen);
+	}
+
+	public static Stream<Arguments> streamFailCopyToArg()
+	{
+		return testArrayChunks()
+			.flatMap(TestSources::streamFailCopyToArg);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamFailCopyToArg")
+	public void failCopyToAtFor(Chunk chunk, long chunkOff, int arrayOff, int argLen, int arrayLen)
+	{
+		TestSources.failCopyToAtFor(chunk, chunkOff, arrayOff, argLen, arrayLen);
+	}
+
+	@ParameterizedTest
+	@MethodSource("testArrayChunks")
+	public void testArrayBacked(Chunk chunk)
+	{
+		assertTrue(chunk.getSPI() instanceof ArrayChunkSPI);
+	}
+
+	@ParameterizedTest
+	@MethodSource("testArrayChunks")
+	public void testReadsOutsideChunk(Chunk chunk)
+	{
+		long size = chunk.getSize();
+
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.getByte(-1L));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.getByte(size));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.getShort(size-1, ByteOrder.BIG_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.getInt(size-3, ByteOrder.LITTLE_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.getLong(size-7, ByteOrder.BIG_ENDIAN));
+	}
+
+	@ParameterizedTest
+	@MethodSource("testArrayChunks")
+	public void testWriteTo(Chunk chunk) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		try(DataOutputStream out = new DataOutputStream(baos))
+		{
+			chunk.writeTo(out);
+		}
+		assertArrayEquals(chunk.copyTo(new byte[chunk.size()], 0L, 0, chunk.size()), baos.toByteArray());
+	}
+
+	@ParameterizedTest
+	@MethodSource("testArrayChunks")
+	public void testSegmentWrapsArray(Chunk chunk)
+	{
+		ByteBuffer segment = chunk.segments().get(0);
+
+		assertEquals(1, chunk.segments().size());
+		assertTrue(segment.isReadOnly());
+		assertEquals(chunk, Chunks.copyBuffer(segment));
+	}
+
+	@Test
+	public void testGiveBufferUsesArray()
+	{
+		Chunk chunk = Chunks.giveBuffer(ByteBuffer.wrap(TestSources.mkTestArray(24L), 4, 16));
+
+		assertTrue(chunk.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(Chunks.copyBytes(TestSources.mkTestArray(24L), 4, 16), chunk);
+	}
+
+	public static Stream<Arguments> streamGiveInstanceBytes()
+	{
+		return Stream.of(
+				Arguments.of(Chunks.empty(), null),
+				Arguments.of(Chunks.empty(), new byte[0]),
+				Arguments.of(Chunks.ofByte(0), new byte[]{0})
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamGiveInstanceBytes")
+	public void giveInstanceBytesOffLen(Chunk expected, byte[] array)
+	{
+		Chunk actual;
+
+		actual = ArrayChunkSPI.giveInstance(array);
+		assertEquals(expected, actual, ()->String.format("Expected giveInstance(array=%s) to return %s but recieved %s instead.", Arrays.toString(array), expected, actual));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamGiveInstanceBytesOffLen")
+	public void giveInstanceBytesOffLen(Chunk expected, byte[] array, int off, int len)
+	{
+		Chunk actual;
+
+		actual = ArrayChunkSPI.giveInstance(array,off,len);
+		assertEquals(expected, actual, ()->String.format("Expected giveInstance(array=%s,off=%d,len=%d) to return %s but recieved %s instead.", Arrays.toString(array), off, len, expected, actual));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamGiveInstanceBytesOffLenFail")
+	public void giveInstanceBytesOffLenFail(byte[] array, int off, int len)
+	{
+		try
+		{
+			Chunk actual = ArrayChunkSPI.giveInstance(array, off, len);
+			fail("Expected giveInstance(array=" + (array==null?"null":Arrays.toString(array)) +" ,off=" + off + " ,len={}) to throw an exception but got " + actual + " instaed.");
+		}
+		catch(NullPointerException | IndexOutOfBoundsException e)
+		{
+			logger.debug("expected", e);
+		}
+	}
+
+	public static Stream<Arguments> streamGiveInstanceBytesOffLen()
+	{
+		return Stream.of(
+				Arguments.of(Chunks.empty(), null,0,0),
+				Arguments.of(Chunks.empty(), new byte[0],0,0),
+				Arguments.of(Chunks.empty(), new byte[]{0},0,0),
+				Arguments.of(Chunks.empty(), new byte[]{0},1,0),
+				Arguments.of(Chunks.ofByte(0), new byte[]{0},0,1),
+				Arguments.of(Chunks.ofBytes(0,1), new byte[]{0,1},0,2)
+		);
+	}
+
+	public static Stream<Arguments> streamGiveInstanceBytesOffLenFail()
+	{
+		return Stream.of(
+				Arguments.of(null,0,1),
+				Arguments.of(null,1,0),
+				Arguments.of(null,1,1)
+		);
+	}
+
+	public static Stream<Arguments> streamCopyInstanceBytes()
+	{
+		return Stream.of(
+				Arguments.of(Chunks.empty(), null),
+				Arguments.of(Chunks.empty(), new byte[0]),
+				Arguments.of(Chunks.ofByte(0), new byte[]{0}),
+				Arguments.of(Chunks.empty(), null),
+				Arguments.of(Chunks.empty(), new byte[0]),
+				Arguments.of(Chunks.ofByte(0), new byte[]{0})
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamCopyInstanceBytes")
+	public void copyInstanceBytesOffLen(Chunk expected, byte[] array)
+	{
+		Chunk actual;
+
+		actual = ArrayChunkSPI.copyInstance(array);
+		assertEquals(expected, actual, ()->String.format("Expected copyInstance(array=%s) to return %s but recieved %s instead.", Arrays.toString(array), expected, actual));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamCopyInstanceBytesOffLen")
+	public void copyInstanceBytesOffLen(Chunk expected, byte[] array, int off, int len)
+	{
+		Chunk actual;
+
+		actual = ArrayChunkSPI.copyInstance(array,off,len);
+		assertEquals(expected, actual, ()->String.format("Expected copyInstance(array=%s,off=%d,len=%d) to return %s but recieved %s instead.", Arrays.toString(array), off, len, expected, actual));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamCopyInstanceBytesOffLenFail")
+	public void copyInstanceBytesOffLenFail(byte[] array, int off, int len)
+	{
+		try
+		{
+			Chunk actual = ArrayChunkSPI.copyInstance(array, off, len);
+			fail("Expected copyInstance(array=" + (array==null?"null":Arrays.toString(array)) +" ,off=" + off + " ,len={}) to throw an exception but got " + actual + " instaed.");
+		}
+		catch(NullPointerException | IndexOutOfBoundsException e)
+		{
+			logger.debug("expected", e);
+		}
+	}
+
+	public static Stream<Arguments> streamCopyInstanceBytesOffLen()
+	{
+		return Stream.of(
+				Arguments.of(Chunks.empty(), null,0,0),
+				Arguments.of(Chunks.empty(), new byte[0],0,0),
+				Arguments.of(Chunks.empty(), new byte[]{0},0,0),
+				Arguments.of(Chunks.empty(), new byte[]{0},1,0),
+				Arguments.of(Chunks.ofByte(0), new byte[]{0},0,1),
+			 	Arguments.of(Chunks.ofBytes(0,1), new byte[]{0,1},0,2)
+		);
+	}
+
+	public static Stream<Arguments> streamCopyInstanceBytesOffLenFail()
+	{
+		return Stream.of(
+				Arguments.of(null,0,1),
+				Arguments.of(null,1,0),
+				Arguments.of(null,1,1)
+		);
+	}
+
+	public static Stream<Arguments> streamIsCoalesced()
+	{
+		return Stream.of(
+			Arguments.of(ArrayChunkSPI.giveInstance(new byte[]{1,2,3},0,3),true),
+			Arguments.of(ArrayChunkSPI.giveInstance(new byte[]{1,2,3},1,2),false),
+			Arguments.of(ArrayChunkSPI.giveInstance(new byte[]{1,2,3},0,2),false)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamIsCoalesced")
+	public void testIsCoalesced(Chunk chunk, boolean expected)
+	{
+		assertEquals(expected, chunk.isCoalesced());
+	}
+
+	public static Stream<Chunk> streamCoalesce()
+	{
+		return Stream.of(
+			ArrayChunkSPI.giveInstance(new byte[]{1,2,3},1,2),
+			ArrayChunkSPI.giveInstance(new byte[]{1,2,3},0,2)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamCoalesce")
+	public void testCoalesce(Chunk chunk)
+	{
+		Chunk actual;
+
+		actual = chunk.coalesce();
+		assertEquals(chunk, actual);
+		assertNotSame(chunk, actual);
+		assertTrue(actual.isCoalesced());
+	}
+
+	@Test
+	public void mergeSplitPair()
+	{
+		Chunk chunk = Chunks.giveBytes(TestSources.mkTestArray(24L));
+		Chunk merged = Chunks.ofChunks(chunk.subChunk(0,10), chunk.subChunk(10));
+
+		assertTrue(merged.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(chunk, merged);
+	}
+
+	@Test
+	public void mergeSplitMulti()
+	{
+		Chunk chunk = Chunks.giveBytes(TestSources.mkTestArray(24L));
+		Chunk merged = Chunks.ofChunks(chunk.subChunk(2,5), chunk.subChunk(7,9), chunk.subChunk(16,4));
+
+		assertTrue(merged.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(chunk.subChunk(2,18), merged);
+	}
+
+	@Test
+	public void mergeSplitAppended()
+	{
+		Chunk chunk = Chunks.giveBytes(TestSources.mkTestArray(4096L));
+		@Var
+		Chunk merged = Chunks.empty();
+
+		for(int i=0;i<chunk.size();i+=16)
+			merged = merged.append(chunk.subChunk(i,16));
+		assertTrue(merged.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(chunk, merged);
+	}
+
+	@Test
+	public void noMergeGap()
+	{
+		Chunk chunk = Chunks.giveBytes(TestSources.mkTestArray(24L));
+		Chunk joined = Chunks.ofChunks(chunk.subChunk(0,10), chunk.subChunk(11));
+
+		assertFalse(joined.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(23, joined.size());
+	}
+
+	@Test
+	public void noMergeOutOfOrder()
+	{
+		Chunk chunk = Chunks.giveBytes(TestSources.mkTestArray(24L));
+		Chunk joined = Chunks.ofChunks(chunk.subChunk(10), chunk.subChunk(0,10));
+
+		assertFalse(joined.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(chunk.subChunk(10), joined.subChunk(0,14));
+	}
+
+	@Test
+	public void noMergeDifferentBuffers()
+	{
+		byte[] bytes = TestSources.mkTestArray(24L);
+		Chunk a = Chunks.giveBytes(bytes);
+		Chunk b = Chunks.giveBytes(bytes);
+		Chunk joined = Chunks.ofChunks(a.subChunk(0,10), b.subChunk(10));
+
+		// Same array but given separately so not known to be the same buffer
+		assertFalse(joined.getSPI() instanceof ArrayChunkSPI);
+		assertEquals(a, joined);
+	}
+}
@@ -1,19 +1,21 @@
 package net.darkmist.chunks;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import com.google.errorprone.annotations.Var;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.ParameterizedTest;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
-import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,11 +26,25 @@ public class BufferChunkTest
 {
 	private static final Logger logger = LoggerFactory.getLogger(BufferChunkTest.class);
 
+	/**
+	 * Wrap bytes in a read only buffer so the chunk is buffer
+	 * backed instead of array backed.
+	 */
+	private static Chunk giveReadOnly(byte[] array, int off, int len)
+	{
+		return BufferChunkSPI.giveInstance(ByteBuffer.wrap(array, off, len).asReadOnlyBuffer());
+	}
+
+	private static Chunk giveReadOnly(byte[] array)
+	{
+		return giveReadOnly(array, 0, array.length);
+	}
+
 	private static Stream<Chunk> testBufferChunks()
 	{
 		return LongStream.of(2L,4L,6L,8L,12L,24L)
 			.mapToObj(TestSources::mkTestArray)
-			.map(Chunks::giveBytes);
+			.map(BufferChunkTest::giveReadOnly);
 	}
 
 	public static Stream<Arguments> streamByteAtOffArgs()
@@ -159,71 +175,6 @@ public class BufferChunkTest
 		assertEquals(expected, actual);
 	}
 
-	public static Stream<Arguments> streamGiveInstanceBytes()
-	{
-		return Stream.of(
-				Arguments.of(Chunks.empty(), null),
-				Arguments.of(Chunks.empty(), new byte[0]),
-				Arguments.of(Chunks.ofByte(0), new byte[]{0})
-		);
-	}
-
-	@ParameterizedTest
-	@MethodSource("streamGiveInstanceBytes")
-	public void giveInstanceBytesOffLen(Chunk expected, byte[] array)
-	{
-		Chunk actual;
-
-		actual = BufferChunkSPI.giveInstance(array);
-		assertEquals(expected, actual, ()->String.format("Expected giveInstance(array=%s) to return %s but recieved %s instead.", Arrays.toString(array), expected, actual));
-	}
-
-	@ParameterizedTest
-	@MethodSource("streamGiveInstanceBytesOffLen")
-	public void giveInstanceBytesOffLen(Chunk expected, byte[] array, int off, int len)
-	{
-		Chunk actual;
-
-		actual = BufferChunkSPI.giveInstance(array,off,len);
-		assertEquals(expected, actual, ()->String.format("Expected giveInstance(array=%s,off=%d,len=%d) to return %s but recieved %s instead.", Arrays.toString(array), off, len, expected, actual));
-	}
-
-	@ParameterizedTest
-	@MethodSource("streamGiveInstanceBytesOffLenFail")
-	public void giveInstanceBytesOffLenFail(byte[] array, int off, int len)
-	{
-		try
-		{
-			Chunk actual = BufferChunkSPI.giveInstance(array, off, len);
-			fail("Expected giveInstance(array=" + (array==null?"null":Arrays.toString(array)) +" ,off=" + off + " ,len={}) to throw an exception but got " + actual + " instaed.");
-		}
-		catch(NullPointerException | IndexOutOfBoundsException e)
-		{
-			logger.debug("expected", e);
-		}
-	}
-
-	public static Stream<Arguments> streamGiveInstanceBytesOffLen()
-	{
-		return Stream.of(
-				Arguments.of(Chunks.empty(), null,0,0),
-				Arguments.of(Chunks.empty(), new byte[0],0,0),
-				Arguments.of(Chunks.empty(), new byte[]{0},0,0),
-				Arguments.of(Chunks.empty(), new byte[]{0},1,0),
-				Arguments.of(Chunks.ofByte(0), new byte[]{0},0,1),
-				Arguments.of(Chunks.ofBytes(0,1), new byte[]{0,1},0,2)
-		);
-	}
-
-	public static Stream<Arguments> streamGiveInstanceBytesOffLenFail()
-	{
-		return Stream.of(
-				Arguments.of(null,0,1),
-				Arguments.of(null,1,0),
-				Arguments.of(null,1,1)
-		);
-	}
-
 	public static Stream<Arguments> streamCopyInstanceBuf()
 	{
 		return Stream.of(
@@ -245,80 +196,12 @@ public class BufferChunkTest
 		assertEquals(expected, actual, ()->String.format("Expected copyInstance(buf=%s) to return %s but recieved %s instead.", buf, expected, actual));
 	}
 
-	public static Stream<Arguments> streamCopyInstanceBytes()
-	{
-		return Stream.of(
-				Arguments.of(Chunks.empty(), null),
-				Arguments.of(Chunks.empty(), new byte[0]),
-				Arguments.of(Chunks.ofByte(0), new byte[]{0}),
-				Arguments.of(Chunks.empty(), null),
-				Arguments.of(Chunks.empty(), new byte[0]),
-				Arguments.of(Chunks.ofByte(0), new byte[]{0})
-		);
-	}
-
-	@ParameterizedTest
-	@MethodSource("streamCopyInstanceBytes")
-	public void copyInstanceBytesOffLen(Chunk expected, byte[] array)
-	{
-		Chunk actual;
-
-		actual = BufferChunkSPI.copyInstance(array);
-		assertEquals(expected, actual, ()->String.format("Expected copyInstance(array=%s) to return %s but recieved %s instead.", Arrays.toString(array), expected, actual));
-	}
-
-	@ParameterizedTest
-	@MethodSource("streamCopyInstanceBytesOffLen")
-	public void copyInstanceBytesOffLen(Chunk expected, byte[] array, int off, int len)
-	{
-		Chunk actual;
-
-		actual = BufferChunkSPI.copyInstance(array,off,len);
-		assertEquals(expected, actual, ()->String.format("Expected copyInstance(array=%s,off=%d,len=%d) to return %s but recieved %s instead.", Arrays.toString(array), off, len, expected, actual));
-	}
-
-	@ParameterizedTest
-	@MethodSource("streamCopyInstanceBytesOffLenFail")
-	public void copyInstanceBytesOffLenFail(byte[] array, int off, int len)
-	{
-		try
-		{
-			Chunk actual = BufferChunkSPI.copyInstance(array, off, len);
-			fail("Expected copyInstance(array=" + (array==null?"null":Arrays.toString(array)) +" ,off=" + off + " ,len={}) to throw an exception but got " + actual + " instaed.");
-		}
-		catch(NullPointerException | IndexOutOfBoundsException e)
-		{
-			logger.debug("expected", e);
-		}
-	}
-
-	public static Stream<Arguments> streamCopyInstanceBytesOffLen()
-	{
-		return Stream.of(
-				Arguments.of(Chunks.empty(), null,0,0),
-				Arguments.of(Chunks.empty(), new byte[0],0,0),
-				Arguments.of(Chunks.empty(), new byte[]{0},0,0),
-				Arguments.of(Chunks.empty(), new byte[]{0},1,0),
-				Arguments.of(Chunks.ofByte(0), new byte[]{0},0,1),
-			 	Arguments.of(Chunks.ofBytes(0,1), new byte[]{0,1},0,2)
-		);
-	}
-
-	public static Stream<Arguments> streamCopyInstanceBytesOffLenFail()
-	{
-		return Stream.of(
-				Arguments.of(null,0,1),
-				Arguments.of(null,1,0),
-				Arguments.of(null,1,1)
-		);
-	}
-
 	public static Stream<Arguments> streamIsCoalesced()
 	{
 		return Stream.of(
-			Arguments.of(BufferChunkSPI.giveInstance(new byte[]{1,2,3},0,3),true),
-			Arguments.of(BufferChunkSPI.giveInstance(new byte[]{1,2,3},1,2),false),
-			Arguments.of(BufferChunkSPI.giveInstance(new byte[]{1,2,3},0,2),false)
+			Arguments.of(giveReadOnly(new byte[]{1,2,3},0,3),true),
+			Arguments.of(giveReadOnly(new byte[]{1,2,3},1,2),false),
+			Arguments.of(giveReadOnly(new byte[]{1,2,3},0,2),false)
 		);
 	}
 
@@ -335,8 +218,8 @@ public class BufferChunkTest
 	public static Stream<Chunk> streamCoalesce()
 	{
 		return Stream.of(
-			BufferChunkSPI.giveInstance(new byte[]{1,2,3},1,2),
-			BufferChunkSPI.giveInstance(new byte[]{1,2,3},0,2)
+			giveReadOnly(new byte[]{1,2,3},1,2),
+			giveReadOnly(new byte[]{1,2,3},0,2)
 		);
 	}
 
@@ -354,9 +237,9 @@ public class BufferChunkTest
 	@Test
 	public void subBufferCopyTo()
 	{
-		Chunk parentChunk = BufferChunkSPI.giveInstance(new byte[]{0x01,0x02,0x03,0x04,0x05,0x06,0x07,0x08});
+		Chunk parentChunk = giveReadOnly(new byte[]{0x01,0x02,0x03,0x04,0x05,0x06,0x07,0x08});
 		byte[] childBytes = new byte[]{0x02,0x03,0x04,0x05,0x06,0x07};
-		Chunk childChunk = BufferChunkSPI.copyInstance(childBytes);
+		Chunk childChunk = Chunks.copyBytes(childBytes);
 		Chunk childSubChunk = parentChunk.subChunk(1,6);
 		byte[] dst = new byte[6];
 
@@ -366,6 +249,72 @@ public class BufferChunkTest
 		assertArrayEquals(childBytes, dst);
 	}
 
+	@Test
+	public void mergeSplitPair()
+	{
+		Chunk chunk = giveReadOnly(TestSources.mkTestArray(24L));
+		Chunk merged = Chunks.ofChunks(chunk.subChunk(0,10), chunk.subChunk(10));
+
+		assertTrue(merged.getSPI() instanceof BufferChunkSPI);
+		assertEquals(chunk, merged);
+	}
+
+	@Test
+	public void mergeSplitMulti()
+	{
+		Chunk chunk = giveReadOnly(TestSources.mkTestArray(24L));
+		Chunk merged = Chunks.ofChunks(chunk.subChunk(2,5), chunk.subChunk(7,9), chunk.subChunk(16,4));
+
+		assertTrue(merged.getSPI() instanceof BufferChunkSPI);
+		assertEquals(chunk.subChunk(2,18), merged);
+	}
+
+	@Test
+	public void mergeSplitAppended()
+	{
+		Chunk chunk = giveReadOnly(TestSources.mkTestArray(4096L));
+		@Var
+		Chunk merged = Chunks.empty();
+
+		for(int i=0;i<chunk.size();i+=16)
+			merged = merged.append(chunk.subChunk(i,16));
+		assertTrue(merged.getSPI() instanceof BufferChunkSPI);
+		assertEquals(chunk, merged);
+	}
+
+	@Test
+	public void noMergeGap()
+	{
+		Chunk chunk = giveReadOnly(TestSources.mkTestArray(24L));
+		Chunk joined = Chunks.ofChunks(chunk.subChunk(0,10), chunk.subChunk(11));
+
+		assertFalse(joined.getSPI() instanceof BufferChunkSPI);
+		assertEquals(23, joined.size());
+	}
+
+	@Test
+	public void noMergeOutOfOrder()
+	{
+		Chunk chunk = giveReadOnly(TestSources.mkTestArray(24L));
+		Chunk joined = Chunks.ofChunks(chunk.subChunk(10), chunk.subChunk(0,10));
+
+		assertFalse(joined.getSPI() instanceof BufferChunkSPI);
+		assertEquals(chunk.subChunk(10), joined.subChunk(0,14));
+	}
+
+	@Test
+	public void noMergeDifferentBuffers()
+	{
+		byte[] bytes = TestSources.mkTestArray(24L);
+		Chunk a = giveReadOnly(bytes);
+		Chunk b = giveReadOnly(bytes);
+		Chunk joined = Chunks.ofChunks(a.subChunk(0,10), b.subChunk(10));
+
+		// Same array but given separately so not known to be the same buffer
+		assertFalse(joined.getSPI() instanceof BufferChunkSPI);
+		assertEquals(a, joined);
+	}
+
 	@Test
 	public void testToString()
 	{
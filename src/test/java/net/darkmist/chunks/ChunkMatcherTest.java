@@ -0,0 +1,176 @@
+package net.darkmist.chunks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("boxing")
+	// We can hope the compiler can handle constants
+public class ChunkMatcherTest
+{
+	private static final int SIZE = 500;
+	private static final byte[] ALPHABET = {0, 1, 2, 'a', (byte)0xff};
+	private static final byte[] TEXT = TestSources.mkText(SIZE, ALPHABET);
+	private static final List<Chunk> PATTERNS = Collections.unmodifiableList(Arrays.asList(
+		Chunks.copyBytes(TEXT, 10, 1),
+		Chunks.copyBytes(TEXT, 40, 2),
+		Chunks.copyBytes(TEXT, 41, 3),
+		Chunks.copyBytes(TEXT, 40, 4),
+		Chunks.copyBytes(TEXT, 100, 6),
+		Chunks.copyBytes(TEXT, 250, 9),
+		Chunks.copyBytes(TEXT, 300, 30),
+		Chunks.copyBytes(TEXT, 40, 2),	// duplicate
+		Chunks.copyBytes(new byte[]{3, 4, 5}),
+		Chunks.copyBytes(new byte[]{0, 0, 0})
+	));
+
+	private static Stream<Chunk> testChunks()
+	{
+		return Stream.of(
+			Chunks.copyBytes(TEXT),
+			Chunks.copyDirect(TEXT),
+			Chunks.ofChunks(Chunks.copyBytes(TEXT, 0, 251), Chunks.copyDirect(TEXT, 251, SIZE-251)),
+			TestSources.unevenChunk(TEXT, 13),
+			TestSources.unevenChunk(TEXT, 2)
+		);
+	}
+
+	/**
+	 * Every match of every pattern found one pattern at a time,
+	 * ordered by where they end.
+	 */
+	private static List<String> expectedMatches(byte[] text, long off, long len)
+	{
+		List<long[]> matches = new ArrayList<>();
+		List<String> ret = new ArrayList<>();
+
+		for(int p=0;p<PATTERNS.size();p++)
+		{
+			byte[] pattern = PATTERNS.get(p).copy();
+
+			for(long i=off;i<=off+len-pattern.length;i++)
+				if(Arrays.equals(Arrays.copyOfRange(text, (int)i, (int)i + pattern.length), pattern))
+					matches.add(new long[]{i + pattern.length, -pattern.length, p, i});
+		}
+		matches.sort((a, b)->{
+			for(int i=0;i<a.length;i++)
+				if(a[i] != b[i])
+					return Long.compare(a[i], b[i]);
+			return 0;
+		});
+		for(long[] match : matches)
+			ret.add(match[2] + "@" + match[3]);
+		return ret;
+	}
+
+	private static List<String> actualMatches(ChunkMatcher matcher, Chunk chunk, long off, long len)
+	{
+		List<String> ret = new ArrayList<>();
+
+		matcher.forEachMatch(chunk, off, len, (pattern, matchOff)->ret.add(pattern + "@" + matchOff));
+		return ret;
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testMatches(Chunk chunk)
+	{
+		ChunkMatcher matcher = ChunkMatcher.of(PATTERNS);
+		List<String> expected = expectedMatches(TEXT, 0L, SIZE);
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actualMatches(matcher, chunk, 0L, SIZE));
+		assertEquals(expected.size(), matcher.countMatches(chunk));
+		assertTrue(matcher.matchesAny(chunk));
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testRanges(Chunk chunk)
+	{
+		ChunkMatcher matcher = ChunkMatcher.of(PATTERNS);
+
+		for(long off=0;off<SIZE;off+=37)
+			for(long len : new long[]{0L, 1L, 29L, SIZE-off})
+				if(off + len <= SIZE)
+					assertEquals(expectedMatches(TEXT, off, len), actualMatches(matcher, chunk, off, len));
+		assertThrows(IndexOutOfBoundsException.class, ()->matcher.forEachMatch(chunk, 1L, SIZE, (pattern, off)->{}));
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testParallel(Chunk chunk)
+	{
+		ChunkMatcher matcher = ChunkMatcher.of(PATTERNS);
+		List<String> expected = expectedMatches(TEXT, 0L, SIZE);
+
+		for(long splitSize : new long[]{1L, 7L, 32L, 100L, SIZE})
+		{
+			List<String> actual = new ArrayList<>();
+
+			matcher.parallelForEachMatch(chunk, (pattern, off)->actual.add(pattern + "@" + off), splitSize);
+			assertEquals(expected, actual);
+			assertEquals(expected.size(), matcher.parallelCountMatches(chunk, splitSize));
+		}
+		assertEquals(expected.size(), matcher.parallelCountMatches(chunk));
+	}
+
+	@Test
+	public void testCopiedLeaves()
+	{
+		// Leaves that are not array or buffer backed are matched a
+		// scratch buffer at a time.
+		int size = Tunables.getTmpBufSize() * 2 + 3;
+		ChunkMatcher matcher = ChunkMatcher.of(Chunks.copyBytes(new byte[]{7, 7, 1}), Chunks.copyBytes(new byte[]{1, 7}));
+		Chunk chunk = RepeatedByteChunkSPI.instance(7, size).append(Chunks.ofByte(1)).append(RepeatedByteChunkSPI.instance(7, size));
+		List<String> matches = new ArrayList<>();
+
+		matcher.forEachMatch(chunk, (pattern, off)->matches.add(pattern + "@" + off));
+		assertEquals(Arrays.asList("0@" + (size-2), "1@" + size), matches);
+	}
+
+	@Test
+	public void testNoMatches()
+	{
+		ChunkMatcher matcher = ChunkMatcher.of(Chunks.copyBytes(new byte[]{3, 4}));
+
+		assertFalse(matcher.matchesAny(Chunks.copyBytes(TEXT)));
+		assertEquals(0L, matcher.countMatches(Chunks.copyBytes(TEXT)));
+		assertFalse(matcher.matchesAny(Chunks.empty()));
+		assertFalse(ChunkMatcher.of().matchesAny(Chunks.copyBytes(TEXT)));
+	}
+
+	@Test
+	public void testStates()
+	{
+		// "he", "she", "his", "hers"
+		ChunkMatcher matcher = ChunkMatcher.of(
+			Chunks.copyBytes(new byte[]{'h', 'e'}),
+			Chunks.copyBytes(new byte[]{'s', 'h', 'e'}),
+			Chunks.copyBytes(new byte[]{'h', 'i', 's'}),
+			Chunks.copyBytes(new byte[]{'h', 'e', 'r', 's'})
+		);
+		List<String> matches = new ArrayList<>();
+
+		assertEquals(10, matcher.getStateCount());
+		assertEquals(4, matcher.getPatternCount());
+		matcher.forEachMatch(Chunks.copyBytes(new byte[]{'u', 's', 'h', 'e', 'r', 's'}), (pattern, off)->matches.add(pattern + "@" + off));
+		assertEquals(Arrays.asList("1@1", "0@2", "3@2"), matches);
+	}
+
+	@Test
+	public void testEmptyPattern()
+	{
+		assertThrows(IllegalArgumentException.class, ()->ChunkMatcher.of(Chunks.ofByte(1), Chunks.empty()));
+	}
+}
@@ -0,0 +1,60 @@
+package net.darkmist.chunks;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("boxing")
+	// We can hope the compiler can handle constants
+public class ChunkRangeTest
+{
+	private static final int SIZE = TestSources.LAYOUT_SIZE;
+
+	public static Stream<Arguments> streamRanges()
+	{
+		return TestSources.streamLayoutChunks()
+			.flatMap((chunk)->Stream.of(
+				Arguments.of(chunk, 0L, (long)SIZE),
+				Arguments.of(chunk, 2L, 30L),
+				Arguments.of(chunk, 22L, 14L),
+				Arguments.of(chunk, 30L, 20L),
+				Arguments.of(chunk, 41L, 23L)
+			));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamRanges")
+	public void testReads(Chunk chunk, long off, long len)
+	{
+		ChunkRange range = chunk.range(off, len);
+		Chunk expected = TestSources.mkTestSubChunk(off, len);
+
+		assertEquals(len, range.getSize());
+		assertEquals(expected, range.toChunk());
+		TestSources.assertPrimitiveReads(expected, TestSources.readsOf(range));
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		ChunkRange range = TestSources.mkTestChunk(SIZE).range(SIZE, 0L);
+
+		assertEquals(0L, range.getSize());
+		assertEquals(Chunks.empty(), range.toChunk());
+	}
+
+	@Test
+	public void testOutsideChunk()
+	{
+		Chunk chunk = TestSources.mkTestChunk(SIZE);
+
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.range(-1L, 2L));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.range(1L, SIZE));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.range(0L, -1L));
+	}
+}
@@ -0,0 +1,124 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteOrder;
+import java.util.stream.Stream;
+
+import com.google.errorprone.annotations.Var;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkReaderTest
+{
+	private static final int SIZE = 96;
+
+	private static Stream<Chunk> testChunks()
+	{
+		byte[] bytes = TestSources.mkTestArray(SIZE);
+
+		return Stream.of(
+			Chunks.giveBytes(bytes),
+			Chunks.copyDirect(bytes),
+			Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 45), Chunks.copyDirect(bytes, 45, 51)),
+			TestSources.unevenChunk(bytes, 9),
+			TestSources.unevenChunk(bytes, 3),
+			Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 37), Chunks.copyBytes(bytes, 37, 59)).subChunk(0, SIZE)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testSequentialReads(Chunk chunk)
+	{
+		Chunk expected = TestSources.mkTestChunk(SIZE);
+
+		// Every start offset so each field lands on every alignment.
+		for(int start=0;start<Long.BYTES;start++)
+		{
+			ChunkReader reader = chunk.reader().position(start);
+			@Var
+			long off = start;
+
+			while(reader.remaining() >= 1+2+2+4+4+8+8)
+			{
+				assertEquals(off, reader.position());
+				assertEquals((byte)expected.getByte(off), reader.readByte());
+				assertEquals(expected.getShort(off+1, ByteOrder.BIG_ENDIAN), reader.readShort());
+				assertEquals(expected.getShortUnsigned(off+3, ByteOrder.LITTLE_ENDIAN), reader.readUnsignedShortLE());
+				assertEquals(expected.getInt(off+5, ByteOrder.LITTLE_ENDIAN), reader.readIntLE());
+				assertEquals(expected.getIntUnsigned(off+9, ByteOrder.BIG_ENDIAN), reader.readUnsignedInt());
+				assertEquals(expected.getLong(off+13, ByteOrder.BIG_ENDIAN), reader.readLong());
+				assertEquals(expected.getLong(off+21, ByteOrder.LITTLE_ENDIAN), reader.readLongLE());
+				off += 29;
+			}
+			while(reader.hasRemaining())
+				assertEquals(expected.getByte(off++), reader.readUnsignedByte());
+			assertEquals(SIZE, reader.position());
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testPosition(Chunk chunk)
+	{
+		Chunk expected = TestSources.mkTestChunk(SIZE);
+		ChunkReader reader = chunk.reader();
+
+		for(long off=SIZE-Integer.BYTES;off>=0;off-=5)
+			assertEquals(expected.getInt(off, ByteOrder.BIG_ENDIAN), reader.position(off).readInt());
+		reader.position(0L).skip(10L);
+		assertEquals(expected.getByte(10L), reader.readUnsignedByte());
+		reader.position(SIZE);
+		assertFalse(reader.hasRemaining());
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testReadChunk(Chunk chunk)
+	{
+		ChunkReader reader = chunk.reader();
+
+		reader.skip(3L);
+		assertEquals(TestSources.mkTestSubChunk(3L, 40L), reader.readChunk(40L));
+		assertEquals(43L, reader.position());
+		assertArrayEquals(TestSources.mkTestSubArray(43L, 20L), reader.readFully(new byte[20]));
+		assertEquals(63L, reader.position());
+		assertEquals(TestSources.mkTestSubChunk(63L, SIZE-63L), reader.readChunk(reader.remaining()));
+		assertFalse(reader.hasRemaining());
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testReadPastEnd(Chunk chunk)
+	{
+		ChunkReader reader = chunk.reader().position(SIZE-3);
+
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.readInt());
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.readLongLE());
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.readChunk(4L));
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.skip(4L));
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.skip(-1L));
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.position(SIZE+1));
+		assertEquals(SIZE-3, reader.position());
+		reader.readShort();
+		reader.readByte();
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.readByte());
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		ChunkReader reader = Chunks.empty().reader();
+
+		assertFalse(reader.hasRemaining());
+		assertEquals(0L, reader.remaining());
+		assertTrue(reader.readChunk(0L).isEmpty());
+		assertThrows(IndexOutOfBoundsException.class, ()->reader.readByte());
+	}
+}
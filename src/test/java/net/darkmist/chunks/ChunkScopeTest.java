@@ -0,0 +1,319 @@
+package net.darkmist.chunks;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkScopeTest
+{
+	private static final int SIZE = 4096;
+	private static Path file;
+
+	@BeforeAll
+	public static void mkTestFile() throws IOException
+	{
+		file = Files.createTempFile("." + ChunkScopeTest.class.getSimpleName(), ".bin");
+		Files.write(file, TestSources.mkTestArray(SIZE));
+	}
+
+	@AfterAll
+	public static void removeTestFile() throws IOException
+	{
+		Files.delete(file);
+	}
+
+	@Test
+	public void testMap() throws IOException
+	{
+		try(ChunkScope scope = FileChunks.openScope())
+		{
+			Chunk chunk = scope.map(file);
+
+			assertTrue(scope.isOpen());
+			assertEquals(1, scope.getMappingCount());
+			assertEquals(TestSources.mkTestChunk(SIZE), chunk);
+			assertEquals(TestSources.mkTestSubChunk(10L, 20L), chunk.subChunk(10L, 20L));
+			assertEquals(TestSources.mkTestSubChunk(100L, 50L), scope.map(file, 100L, 50L));
+			assertEquals(2, scope.getMappingCount());
+		}
+	}
+
+	@Test
+	public void testReadAfterClose() throws IOException
+	{
+		Chunk chunk;
+		Chunk sub;
+
+		try(ChunkScope scope = FileChunks.openScope())
+		{
+			chunk = scope.map(file);
+			sub = chunk.subChunk(8L, 100L);
+		}
+		assertThrows(IllegalStateException.class, ()->chunk.getByte(0L));
+		assertThrows(IllegalStateException.class, ()->chunk.getLong(8L, ByteOrder.LITTLE_ENDIAN));
+		assertThrows(IllegalStateException.class, ()->chunk.subChunk(1L, 10L));
+		assertThrows(IllegalStateException.class, ()->sub.getInt(0L, ByteOrder.BIG_ENDIAN));
+		assertThrows(IllegalStateException.class, ()->sub.copyTo(new byte[10], 0L, 0, 10));
+		assertThrows(IllegalStateException.class, ()->sub.coalesce());
+	}
+
+	@Test
+	public void testMapAfterClose() throws IOException
+	{
+		ChunkScope scope = FileChunks.openScope();
+
+		scope.close();
+		assertFalse(scope.isOpen());
+		assertThrows(IllegalStateException.class, ()->scope.map(file));
+		assertEquals(0, scope.getMappingCount());
+	}
+
+	@Test
+	public void testCloseReleasesMappings() throws IOException
+	{
+		ChunkScope scope = FileChunks.openScope();
+
+		scope.map(file, 0L, 10L);
+		scope.map(file, 10L);
+		assertEquals(2, scope.getMappingCount());
+		scope.close();
+		assertEquals(0, scope.getMappingCount());
+		// closing again does nothing
+		scope.close();
+		assertFalse(scope.isOpen());
+	}
+
+	/**
+	 * Output that runs an action on the first write.
+	 */
+	private static final class OnWrite extends OutputStream
+	{
+		private final Runnable action;
+
+		OnWrite(Runnable action)
+		{
+			this.action = action;
+		}
+
+		@Override
+		public void write(int b)
+		{
+			action.run();
+		}
+
+		@Override
+		public void write(byte[] bytes, int off, int len)
+		{
+			action.run();
+		}
+	}
+
+	private static void await(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	public void testCloseWaitsForReads() throws IOException, InterruptedException
+	{
+		ChunkScope scope = FileChunks.openScope();
+		Chunk chunk = scope.map(file);
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread reader = new Thread(()->{
+			try
+			{
+				chunk.writeTo(new DataOutputStream(new OnWrite(()->{
+					reading.countDown();
+					await(release);
+				})));
+			}
+			catch(IOException | RuntimeException e)
+			{
+				failure.set(e);
+			}
+		});
+		Thread closer = new Thread(scope::close);
+
+		reader.start();
+		await(reading);
+		closer.start();
+		closer.join(200L);
+		assertTrue(closer.isAlive());
+		assertEquals(1, scope.getMappingCount());
+		release.countDown();
+		reader.join();
+		closer.join();
+		assertNull(failure.get());
+		assertFalse(scope.isOpen());
+		assertEquals(0, scope.getMappingCount());
+		assertThrows(IllegalStateException.class, ()->chunk.getByte(0L));
+	}
+
+	@Test
+	public void testCloseUnderConcurrentReads() throws IOException, InterruptedException
+	{
+		ChunkScope scope = FileChunks.openScope();
+		Chunk chunk = scope.map(file);
+		Thread[] readers = new Thread[4];
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch started = new CountDownLatch(readers.length);
+
+		for(int t=0;t<readers.length;t++)
+		{
+			readers[t] = new Thread(()->{
+				started.countDown();
+				try
+				{
+					for(long i=0;;i=(i+1)%(SIZE-Long.BYTES))
+						chunk.getLong(i, ByteOrder.BIG_ENDIAN);
+				}
+				catch(IllegalStateException expected)
+				{
+					// scope closed
+				}
+				catch(RuntimeException e)
+				{
+					failure.set(e);
+				}
+			});
+			readers[t].start();
+		}
+		await(started);
+		scope.close();
+		for(Thread reader : readers)
+			reader.join();
+		assertNull(failure.get());
+		assertEquals(0, scope.getMappingCount());
+	}
+
+	@Test
+	public void testCloseWhileReading() throws IOException
+	{
+		try(ChunkScope scope = FileChunks.openScope())
+		{
+			Chunk chunk = scope.map(file);
+
+			assertThrows(IllegalStateException.class, ()->chunk.writeTo(new DataOutputStream(new OnWrite(scope::close))));
+			assertTrue(scope.isOpen());
+			assertEquals(TestSources.mkTestChunk(SIZE), chunk);
+		}
+	}
+
+	@Test
+	public void testSegments() throws IOException
+	{
+		Path out = Files.createTempFile("." + ChunkScopeTest.class.getSimpleName(), ".out");
+		Chunk chunk;
+		Chunk mixed;
+
+		try(ChunkScope scope = FileChunks.openScope())
+		{
+			List<ByteBuffer> segments;
+
+			chunk = scope.map(file);
+			mixed = Chunks.ofChunks(chunk.subChunk(0L, 100L), Chunks.ofByte(7), chunk.subChunk(200L, 100L));
+			segments = mixed.segments();
+			// views of the mappings, not copies
+			assertEquals(3, segments.size());
+			assertTrue(segments.get(0).isDirect());
+			assertTrue(segments.get(2).isDirect());
+			try(FileChannel fc = FileChannel.open(out, StandardOpenOption.WRITE))
+			{
+				ChunkChannels.write(mixed, 0L, mixed.getSize(), fc, 0);
+				chunk.writeTo(fc);
+			}
+			assertEquals(mixed.append(chunk), Chunks.copyBytes(Files.readAllBytes(out)));
+		}
+		finally
+		{
+			Files.delete(out);
+		}
+		assertThrows(IllegalStateException.class, ()->mixed.forEachSegment((buf)->{}));
+		assertThrows(IllegalStateException.class, ()->chunk.writeTo(Channels.newChannel(new OnWrite(()->{}))));
+	}
+
+	@Test
+	public void testCloseInSegmentAction() throws IOException
+	{
+		// Not a resource as the action closes it explicitly.
+		ChunkScope scope = FileChunks.openScope();
+
+		try
+		{
+			Chunk chunk = scope.map(file);
+
+			assertThrows(IllegalStateException.class, ()->chunk.forEachSegment((buf)->scope.close()));
+			assertTrue(scope.isOpen());
+		}
+		finally
+		{
+			scope.close();
+		}
+	}
+
+	@Test
+	public void testCoalescedOutlivesScope()
+	{
+		Chunk expected = TestSources.mkTestSubChunk(0L, 200L);
+		Chunk coalesced;
+
+		try(ChunkScope scope = FileChunks.openScope())
+		{
+			Chunk chunk = ScopedChunkSPI.instance(scope, Chunks.ofChunks(TestSources.mkTestSubChunk(0L, 100L), TestSources.mkTestSubChunk(100L, 100L)));
+
+			assertFalse(chunk.isCoalesced());
+			coalesced = chunk.coalesce();
+		}
+		// heap copy no longer belongs to the scope
+		assertTrue(coalesced.isCoalesced());
+		assertEquals(expected, coalesced);
+	}
+
+	@Test
+	public void testEmpty() throws IOException
+	{
+		try(ChunkScope scope = FileChunks.openScope())
+		{
+			assertTrue(scope.map(file, SIZE).isEmpty());
+			assertEquals(0, scope.getMappingCount());
+		}
+	}
+
+	@Test
+	public void testUnmap() throws IOException
+	{
+		try(FileChannel fc = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			assertTrue(Unmapper.unmap(fc.map(FileChannel.MapMode.READ_ONLY, 0L, SIZE)));
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package net.darkmist.chunks;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import com.google.errorprone.annotations.Var;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("boxing")
+	// We can hope the compiler can handle constants
+public class ChunkSearchTest
+{
+	private static final int SIZE = 300;
+	private static final byte[] ALPHABET = {0, 1, 2, (byte)0xff};
+	private static final byte[] TEXT = TestSources.mkText(SIZE, ALPHABET);
+	private static final long[] FROMS = {Long.MIN_VALUE, -1L, 0L, 1L, 7L, 100L, SIZE-9, SIZE-1, SIZE, SIZE+1, Long.MAX_VALUE};
+
+	private static Stream<Chunk> testChunks()
+	{
+		return Stream.of(
+			Chunks.copyBytes(TEXT),
+			Chunks.copyDirect(TEXT),
+			Chunks.ofChunks(Chunks.copyBytes(TEXT, 0, 133), Chunks.copyDirect(TEXT, 133, SIZE-133)),
+			TestSources.unevenChunk(TEXT, 11),
+			TestSources.unevenChunk(TEXT, 2),
+			Chunks.ofChunks(Chunks.giveBytes(new byte[5]), Chunks.copyBytes(TEXT), Chunks.giveBytes(new byte[5])).subChunk(5, SIZE)
+		);
+	}
+
+	private static Stream<Chunk> testPatterns()
+	{
+		return Stream.of(
+			Chunks.empty(),
+			Chunks.copyBytes(TEXT, 17, 1),
+			Chunks.copyBytes(TEXT, 40, 2),
+			Chunks.copyBytes(TEXT, 3, 3),
+			Chunks.copyBytes(TEXT, 120, 5),
+			Chunks.copyBytes(TEXT, 200, 12),
+			Chunks.copyBytes(TEXT, SIZE-20, 20),
+			Chunks.copyBytes(new byte[]{3}),
+			Chunks.copyBytes(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0}),
+			Chunks.copyBytes(TEXT).append(Chunks.ofByte(1))
+		);
+	}
+
+	private static boolean matchesAt(byte[] text, int off, byte[] pattern)
+	{
+		return Arrays.equals(Arrays.copyOfRange(text, off, off + pattern.length), pattern);
+	}
+
+	private static long expectedIndexOf(byte[] text, byte[] pattern, long from)
+	{
+		long start = Math.max(from, 0L);
+
+		if(pattern.length == 0)
+			return Math.min(start, text.length);
+		for(long i=start;i<=text.length-pattern.length;i++)
+			if(matchesAt(text, (int)i, pattern))
+				return i;
+		return -1L;
+	}
+
+	private static long expectedLastIndexOf(byte[] text, byte[] pattern, long from)
+	{
+		for(long i=Math.min(from, text.length-pattern.length);i>=0;i--)
+			if(matchesAt(text, (int)i, pattern))
+				return i;
+		return -1L;
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testBytes(Chunk chunk)
+	{
+		for(byte b : new byte[]{0, 1, 2, 3, (byte)0xff})
+		{
+			byte[] pattern = {b};
+			@Var
+			long count = 0L;
+
+			for(byte t : TEXT)
+				if(t == b)
+					count++;
+			assertEquals(count, chunk.count(b));
+			assertEquals(expectedIndexOf(TEXT, pattern, 0L), chunk.indexOf(b));
+			assertEquals(expectedLastIndexOf(TEXT, pattern, SIZE), chunk.lastIndexOf(b));
+			assertEquals((int)expectedIndexOf(TEXT, pattern, 0L), chunk.indexOf((Object)Byte.valueOf(b)));
+			assertEquals((int)expectedLastIndexOf(TEXT, pattern, SIZE), chunk.lastIndexOf((Object)Byte.valueOf(b)));
+			for(long from : FROMS)
+			{
+				assertEquals(expectedIndexOf(TEXT, pattern, from), chunk.indexOf(b, from));
+				assertEquals(expectedLastIndexOf(TEXT, pattern, from), chunk.lastIndexOf(b, from));
+			}
+			// every match in turn
+			for(@Var long i=chunk.indexOf(b, 0L);i>=0;i=chunk.indexOf(b, i+1))
+				assertEquals(b, (byte)chunk.getByte(i));
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testPatterns(Chunk chunk)
+	{
+		testPatterns().forEach((pattern)->{
+			byte[] bytes = pattern.copy();
+
+			assertEquals(expectedIndexOf(TEXT, bytes, 0L) >= 0L, chunk.contains(pattern));
+			assertEquals(expectedIndexOf(TEXT, bytes, 0L), chunk.indexOf(pattern));
+			assertEquals(expectedLastIndexOf(TEXT, bytes, SIZE), chunk.lastIndexOf(pattern));
+			for(long from : FROMS)
+			{
+				assertEquals(expectedIndexOf(TEXT, bytes, from), chunk.indexOf(pattern, from), ()->"indexOf " + pattern + " from " + from);
+				assertEquals(expectedLastIndexOf(TEXT, bytes, from), chunk.lastIndexOf(pattern, from), ()->"lastIndexOf " + pattern + " from " + from);
+			}
+			for(long from=0;from<SIZE;from+=13)
+				assertEquals(expectedIndexOf(TEXT, bytes, from), chunk.indexOf(pattern, from));
+		});
+	}
+
+	@Test
+	public void testCopiedLeaves()
+	{
+		// Leaves that are not array or buffer backed are searched a
+		// scratch buffer at a time.
+		int size = Tunables.getTmpBufSize() * 3 + 5;
+		Chunk pattern = Chunks.copyBytes(new byte[]{7, 7, 7, 1, 2});
+		Chunk chunk = RepeatedByteChunkSPI.instance(7, size).append(Chunks.copyBytes(new byte[]{1, 2})).append(RepeatedByteChunkSPI.instance(7, size));
+
+		assertEquals(size - 3L, chunk.indexOf(pattern));
+		assertEquals(size - 3L, chunk.lastIndexOf(pattern));
+		assertEquals(size, chunk.indexOf((byte)1));
+		assertEquals(size + 1L, chunk.lastIndexOf((byte)2));
+		assertEquals(2L * size, chunk.count((byte)7));
+		assertEquals(-1L, chunk.indexOf((byte)8));
+		assertEquals(Tunables.getTmpBufSize() + 1L, chunk.indexOf(Chunks.copyBytes(new byte[]{7, 7}), Tunables.getTmpBufSize() + 1L));
+		assertFalse(chunk.contains(Chunks.copyBytes(new byte[]{2, 1})));
+		assertTrue(chunk.contains(Chunks.copyBytes(new byte[]{1, 2, 7})));
+	}
+
+	@Test
+	public void testZeroBytes()
+	{
+		assertEquals(0x8080808080808080L, ChunkSearch.zeroBytes(0L));
+		assertEquals(0L, ChunkSearch.zeroBytes(-1L));
+		// no false positive for the 0x01 above a zero byte
+		assertEquals(0x0000000000000080L, ChunkSearch.zeroBytes(0x0101010101010100L));
+		assertEquals(0x0080000000000000L, ChunkSearch.zeroBytes(0x7f00ff0180010202L));
+	}
+}
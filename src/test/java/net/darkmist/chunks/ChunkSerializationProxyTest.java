@@ -2,9 +2,11 @@ package net.darkmist.chunks;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.stream.Stream;
 import java.util.function.Supplier;
 
@@ -12,8 +14,10 @@ import com.google.errorprone.annotations.Var;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -138,6 +142,129 @@ public class ChunkSerializationProxyTest
 		}
 	}
 
+	public static Stream<Chunk> streamWriteExternalTests()
+	{
+		byte[] bytes = TestSources.mkTestArray(100000);
+		Chunk flat = Chunks.copyBytes(bytes);
+		@Var
+		Chunk rope = Chunks.empty();
+
+		for(int i=0;i<bytes.length;i+=1000)
+			rope = rope.append(Chunks.copyBytes(bytes).subChunk(i, 1000));
+		return Stream.of(
+			Chunks.empty(),
+			Chunks.ofByte(0x55),
+			flat,
+			flat.subChunk(12345, 54321),
+			Chunks.ofChunks(flat.subChunk(0,10), Chunks.ofByte(0x1), flat.subChunk(11)),
+			rope,
+			RepeatedByteChunkSPI.instance(0x7, 10000)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamWriteExternalTests")
+	public void writeExternalFormat(Chunk chunk) throws IOException
+	{
+		byte[] expected;
+		byte[] actual;
+
+		try
+		(
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+		)
+		{
+			oos.writeLong(chunk.getSize());
+			for(long pos=0;pos<chunk.getSize();pos++)
+				oos.write(chunk.getByte(pos));
+			oos.flush();
+			expected = baos.toByteArray();
+		}
+		try
+		(
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+		)
+		{
+			new ChunkSerializationProxy(chunk).writeExternal(oos);
+			oos.flush();
+			actual = baos.toByteArray();
+		}
+		assertArrayEquals(expected, actual);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamWriteExternalTests")
+	public void serializationRoundTrip(Chunk chunk) throws IOException, ClassNotFoundException
+	{
+		Object actual;
+
+		try
+		(
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+		)
+		{
+			oos.writeObject(chunk);
+			oos.flush();
+			try
+			(
+				ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+			)
+			{
+				actual = ois.readObject();
+			}
+		}
+		assertEquals(chunk, actual);
+	}
+
+	public static Stream<Arguments> streamReadChunkSegmentedTests()
+	{
+		return Stream.of(
+			Arguments.of(100000, 4096, false),
+			Arguments.of(100000, 4096, true),
+			Arguments.of(100000, 100000, false),
+			Arguments.of(100000, 100000, true),
+			Arguments.of(100001, 1000, false),
+			Arguments.of(100001, 1000, true)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamReadChunkSegmentedTests")
+	public void readChunkSegmented(int size, int segmentSize, boolean direct) throws IOException
+	{
+		byte[] bytes = TestSources.mkTestArray(size);
+		Chunk actual;
+
+		try(ObjectInputStream ois = mkObjStreamTest(size, bytes))
+		{
+			assertEquals(size, ois.readLong());
+			actual = ChunkSerializationProxy.readChunk(ois, size, segmentSize, direct);
+			assertEquals(-1, ois.read());
+		}
+		assertEquals(Chunks.ofBytes(bytes), actual);
+		assertEquals((size + segmentSize - 1) / segmentSize, actual.segments().size());
+		for(ByteBuffer segment : actual.segments())
+		{
+			assertTrue(segment.remaining() <= segmentSize);
+			if(segment.remaining() > 1)	// single bytes are shared constants
+				assertEquals(direct, segment.isDirect());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	public void readChunkTruncated(boolean direct) throws IOException
+	{
+		try(ObjectInputStream ois = mkObjStreamTest(Integer.MAX_VALUE, TestSources.mkTestArray(1000)))
+		{
+			assertEquals(Integer.MAX_VALUE, ois.readLong());
+			assertThrows(EOFException.class, ()->ChunkSerializationProxy.readChunk(ois, Integer.MAX_VALUE, 1024 * 1024, direct));
+		}
+	}
+
 	@Test
 	public void readResolveLove()
 	{
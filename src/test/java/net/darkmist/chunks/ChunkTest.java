@@ -3,19 +3,28 @@ package net.darkmist.chunks;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static net.darkmist.chunks.TestUtil.mkByteArray;
 
+import com.google.errorprone.annotations.Var;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.ParameterizedTest;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -383,4 +392,251 @@ public class ChunkTest
 
 		assertThrows(IndexOutOfBoundsException.class, ()->chunk.getIntSize());
 	}
+
+	private static Byte[] mkSeqByteObjects(int len)
+	{
+		Byte[] bytes = new Byte[len];
+
+		for(int i=0;i<len;i++)
+			bytes[i] = (byte)(i*7);
+		return bytes;
+	}
+
+	private static byte[] mkSeqBytes(int len)
+	{
+		byte[] bytes = new byte[len];
+
+		for(int i=0;i<len;i++)
+			bytes[i] = (byte)(i*7);
+		return bytes;
+	}
+
+	public static Stream<Arguments> streamEqualsHashCodeTests()
+	{
+		byte[] bytes = mkSeqBytes(5000);
+		Chunk flat = Chunks.copyBytes(bytes);
+
+		return Stream.of(
+			Arguments.of(Chunks.empty(), 0),
+			Arguments.of(Chunks.ofByte(0x0), 1),
+			Arguments.of(flat.subChunk(0,7), 7),
+			Arguments.of(flat, bytes.length),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,3), flat.subChunk(3)), bytes.length),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,1), flat.subChunk(1,4999)), bytes.length),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,100), flat.subChunk(100,1), flat.subChunk(101,4000), flat.subChunk(4101)), bytes.length),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,10), flat.subChunk(10)).subChunk(0,4999), 4999)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamEqualsHashCodeTests")
+	public void testEqualsHashCodeMatchesList(Chunk chunk, int len)
+	{
+		List<Byte> expected = Arrays.asList(mkSeqByteObjects(len));
+		Chunk flat = Chunks.copyBytes(mkSeqBytes(len));
+
+		assertEquals(expected.hashCode(), chunk.hashCode());
+		assertEquals(expected.hashCode(), chunk.hashCode());
+		assertTrue(chunk.equals(expected));
+		assertTrue(expected.equals(chunk));
+		assertTrue(chunk.equals(flat));
+		assertTrue(flat.equals(chunk));
+		assertEquals(flat.hashCode(), chunk.hashCode());
+	}
+
+	@Test
+	public void testEqualsCompositeDifferentContent()
+	{
+		byte[] bytes = mkSeqBytes(5000);
+		Chunk flat = Chunks.copyBytes(bytes);
+		Chunk other;
+
+		bytes[4500]++;
+		other = Chunks.ofChunks(Chunks.giveBytes(bytes, 0, 2000), Chunks.giveBytes(bytes, 2000, 3000));
+		assertFalse(flat.equals(other));
+		assertFalse(other.equals(flat));
+	}
+
+	@Test
+	public void testEqualsDifferentSizes()
+	{
+		Chunk a = Chunks.ofBytes(0,1,2,3);
+		Chunk b = Chunks.ofBytes(0,1,2);
+
+		assertFalse(a.equals(b));
+		assertFalse(b.equals(a));
+	}
+
+	@Test
+	public void testEqualsNonList()
+	{
+		assertFalse(Chunks.ofBytes(0,1).equals("toast"));
+	}
+
+	@Test
+	public void testEqualsLargerThanInt()
+	{
+		Chunk a = RepeatedByteChunkSPI.instance(0x0, Integer.MAX_VALUE + 2L);
+		Chunk b = Chunks.ofChunks(RepeatedByteChunkSPI.instance(0x0, Integer.MAX_VALUE + 1L), Chunks.ofByte(0x1));
+		Chunk c = RepeatedByteChunkSPI.instance(0x1, Integer.MAX_VALUE + 2L);
+		Chunk d = RepeatedByteChunkSPI.instance(0x0, Integer.MAX_VALUE + 1L);
+
+		assertFalse(a.equals(c));
+		assertFalse(a.equals(d));
+		assertFalse(b.subChunk(Integer.MAX_VALUE).equals(a.subChunk(Integer.MAX_VALUE)));
+		assertEquals(Chunks.ofBytes(0x0, 0x0, 0x1), b.subChunk(Integer.MAX_VALUE - 1L));
+	}
+
+	private static byte[] concatSegments(List<ByteBuffer> segments)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		for(ByteBuffer segment : segments)
+		{
+			byte[] bytes = new byte[segment.remaining()];
+
+			assertTrue(segment.isReadOnly());
+			assertTrue(bytes.length > 0);
+			segment.duplicate().get(bytes);
+			baos.write(bytes, 0, bytes.length);
+		}
+		return baos.toByteArray();
+	}
+
+	public static Stream<Arguments> streamSegmentsTests()
+	{
+		byte[] bytes = mkSeqBytes(5000);
+		Chunk flat = Chunks.copyBytes(bytes);
+
+		return Stream.of(
+			Arguments.of(Chunks.empty(), 0),
+			Arguments.of(Chunks.ofByte(0x7), 1),
+			Arguments.of(flat, 1),
+			Arguments.of(flat.subChunk(10,20), 1),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,10), flat.subChunk(11)), 2),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,1), flat.subChunk(2,10), Chunks.ofByte(1), flat.subChunk(100)), 4),
+			Arguments.of(Chunks.ofChunks(flat.subChunk(0,100), flat.subChunk(101)).subChunk(50,100), 2),
+			Arguments.of(RepeatedByteChunkSPI.instance(0x3, 100), 1)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSegmentsTests")
+	public void testSegments(Chunk chunk, int expectedCount)
+	{
+		List<ByteBuffer> segments = chunk.segments();
+
+		assertEquals(expectedCount, segments.size());
+		assertArrayEquals(chunk.copy(), concatSegments(segments));
+	}
+
+	@Test
+	public void testSegmentsRange()
+	{
+		byte[] bytes = mkSeqBytes(5000);
+		Chunk chunk = Chunks.ofChunks(Chunks.copyBytes(bytes).subChunk(0,2500), Chunks.copyBytes(bytes).subChunk(2500));
+		List<ByteBuffer> segments = new ArrayList<>();
+
+		chunk.forEachSegment(2000, 1000, segments::add);
+		assertEquals(2, segments.size());
+		assertArrayEquals(Arrays.copyOfRange(bytes, 2000, 3000), concatSegments(segments));
+		assertThrows(IndexOutOfBoundsException.class, ()->chunk.forEachSegment(4500, 501, segments::add));
+	}
+
+	@Test
+	public void testSegmentsNoCopy()
+	{
+		ByteBuffer direct = ByteBuffer.allocateDirect(100);
+		Chunk given = Chunks.giveBuffer(direct);
+		List<ByteBuffer> segments = Chunks.ofChunks(given.subChunk(0,40), Chunks.ofByte(1), given.subChunk(40)).segments();
+
+		assertEquals(3, segments.size());
+		assertTrue(segments.get(0).isDirect());
+		assertTrue(segments.get(2).isDirect());
+		// changes to the buffer are visible through the segment
+		direct.put(50, (byte)0x55);
+		assertEquals(0x55, segments.get(2).get(segments.get(2).position() + 10));
+	}
+
+	/**
+	 * Gathering channel that writes at most a few bytes per call to
+	 * check partial writes are retried.
+	 */
+	private static final class TrickleChannel implements GatheringByteChannel
+	{
+		private static final int MAX_WRITE = 7;
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private int gathers;
+		private int writes;
+
+		@Override
+		public int write(ByteBuffer src)
+		{
+			int n = Math.min(src.remaining(), MAX_WRITE);
+
+			writes++;
+			for(int i=0;i<n;i++)
+				out.write(src.get());
+			return n;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length)
+		{
+			@Var
+			long total = 0;
+
+			gathers++;
+			for(int i=offset;i<offset+length && total<MAX_WRITE;i++)
+			{
+				int n = Math.min(srcs[i].remaining(), MAX_WRITE - (int)total);
+
+				for(int j=0;j<n;j++)
+					out.write(srcs[i].get());
+				total += n;
+			}
+			return total;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs)
+		{
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return true;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSegmentsTests")
+	public void testWriteToGatheringChannel(Chunk chunk, int expectedCount) throws IOException
+	{
+		TrickleChannel channel = new TrickleChannel();
+
+		chunk.writeTo(channel);
+		assertArrayEquals(chunk.copy(), channel.out.toByteArray());
+		if(expectedCount > 1)
+			assertEquals(0, channel.writes);
+		else
+			assertEquals(0, channel.gathers);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSegmentsTests")
+	public void testWriteToChannel(Chunk chunk, int expectedCount) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		chunk.writeTo(Channels.newChannel(baos));
+		assertArrayEquals(chunk.copy(), baos.toByteArray());
+	}
 }
@@ -0,0 +1,92 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkWindowTest
+{
+	private static final int SIZE = TestSources.LAYOUT_SIZE;
+	private static final long[][] RANGES = {{0L, SIZE}, {2L, 30L}, {22L, 14L}, {30L, 20L}, {41L, 23L}, {63L, 1L}};
+
+	private static void assertWindow(ChunkWindow window, long off, long len)
+	{
+		Chunk expected = TestSources.mkTestSubChunk(off, len);
+
+		assertEquals(off, window.getOffset());
+		assertEquals(len, window.getSize());
+		assertEquals(expected, window.toChunk());
+		TestSources.assertPrimitiveReads(expected, TestSources.readsOf(window));
+	}
+
+	@Test
+	public void testReuse()
+	{
+		// One window repointed across every chunk and range.
+		ChunkWindow window = new ChunkWindow();
+
+		TestSources.streamLayoutChunks().forEach((chunk)->{
+			for(long[] range : RANGES)
+			{
+				assertWindow(window.reset(chunk, range[0], range[1]), range[0], range[1]);
+				assertTrue(chunk == window.getChunk());
+			}
+		});
+	}
+
+	@ParameterizedTest
+	@MethodSource("net.darkmist.chunks.TestSources#streamLayoutChunks")
+	public void testNarrow(Chunk chunk)
+	{
+		ChunkWindow window = new ChunkWindow().reset(chunk);
+
+		assertWindow(window.narrow(10L, 40L), 10L, 40L);
+		assertWindow(window.narrow(20L, 16L), 30L, 16L);
+		assertThrows(IndexOutOfBoundsException.class, ()->window.narrow(10L, 7L));
+		assertWindow(window, 30L, 16L);
+	}
+
+	@ParameterizedTest
+	@MethodSource("net.darkmist.chunks.TestSources#streamLayoutChunks")
+	public void testCopyTo(Chunk chunk)
+	{
+		ChunkWindow window = new ChunkWindow().reset(chunk, 17L, 30L);
+
+		assertArrayEquals(TestSources.mkTestSubArray(20L, 25L), window.copyTo(new byte[25], 3L, 0, 25));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.copyTo(new byte[25], 6L, 0, 25));
+	}
+
+	@ParameterizedTest
+	@MethodSource("net.darkmist.chunks.TestSources#streamLayoutChunks")
+	public void testOutsideWindow(Chunk chunk)
+	{
+		ChunkWindow window = new ChunkWindow().reset(chunk, 20L, 10L);
+
+		assertThrows(IndexOutOfBoundsException.class, ()->window.getByte(-1L));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.getByte(10L));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.getShort(9L, ByteOrder.BIG_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.getInt(7L, ByteOrder.BIG_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.getLong(3L, ByteOrder.LITTLE_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.reset(chunk, 1L, SIZE));
+		assertThrows(IndexOutOfBoundsException.class, ()->window.reset(chunk, -1L, 2L));
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		ChunkWindow window = new ChunkWindow();
+
+		assertTrue(window.isEmpty());
+		assertEquals(Chunks.empty(), window.toChunk());
+		assertThrows(IndexOutOfBoundsException.class, ()->window.getByte(0L));
+		window.reset(TestSources.mkTestChunk(SIZE), SIZE, 0L);
+		assertTrue(window.isEmpty());
+		assertEquals(Chunks.empty(), window.toChunk());
+	}
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -238,6 +239,40 @@ public class ChunksTest
 		assertEquals(expected, actual);
 	}
 
+	@Test
+	public void testCopyDirectBytesOffLen()
+	{
+		byte[] input = new byte[]{0,1,2,3};
+		Chunk actual;
+
+		actual = Chunks.copyDirect(input, 1, 2);
+		assertEquals(Chunks.ofBytes(1,2), actual);
+		assertTrue(actual.segments().get(0).isDirect());
+		input[1] = 5;
+		assertEquals(Chunks.ofBytes(1,2), actual);
+	}
+
+	@Test
+	public void testCopyDirectBytes()
+	{
+		assertEquals(Chunks.empty(), Chunks.copyDirect((byte[])null));
+		assertEquals(Chunks.ofByte(3), Chunks.copyDirect(new byte[]{3}));
+		assertTrue(Chunks.copyDirect(new byte[]{0,1,2,3}).segments().get(0).isDirect());
+	}
+
+	@Test
+	public void testCopyDirectByteBuffer()
+	{
+		ByteBuffer input = ByteBuffer.wrap(new byte[]{0,1,2,3});
+		Chunk actual;
+
+		input.position(1);
+		actual = Chunks.copyDirect(input);
+		assertEquals(Chunks.ofBytes(1,2,3), actual);
+		assertEquals(1, input.position());
+		assertTrue(actual.segments().get(0).isDirect());
+	}
+
 	@Deprecated
 	@Test
 	public void testCopyByteBufferDeprecated()
@@ -0,0 +1,87 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectArenaTest
+{
+	private static final int SLAB_SIZE = 4096;
+
+	@Test
+	public void testInvalidSlabSize()
+	{
+		assertThrows(IllegalArgumentException.class, ()->new DirectArena(0));
+	}
+
+	@Test
+	public void testAllocationsDoNotOverlap()
+	{
+		DirectArena arena = new DirectArena(SLAB_SIZE);
+		ByteBuffer[] bufs = new ByteBuffer[SLAB_SIZE / 100 * 3];
+
+		for(int i=0;i<bufs.length;i++)
+		{
+			bufs[i] = arena.allocate(100);
+			assertTrue(bufs[i].isDirect());
+			assertEquals(0, bufs[i].position());
+			assertEquals(100, bufs[i].remaining());
+			while(bufs[i].hasRemaining())
+				bufs[i].put((byte)i);
+		}
+		for(int i=0;i<bufs.length;i++)
+			for(int j=0;j<100;j++)
+				assertEquals((byte)i, bufs[i].get(j));
+	}
+
+	@Test
+	public void testLargeAllocation()
+	{
+		DirectArena arena = new DirectArena(SLAB_SIZE);
+		ByteBuffer buf = arena.allocate(SLAB_SIZE * 2);
+
+		assertTrue(buf.isDirect());
+		assertEquals(SLAB_SIZE * 2, buf.remaining());
+		assertEquals(SLAB_SIZE * 2, buf.capacity());
+	}
+
+	@Test
+	public void testCopies()
+	{
+		DirectArena arena = new DirectArena(SLAB_SIZE);
+		byte[] bytes = TestSources.mkTestArray(SLAB_SIZE);
+		Chunk whole = arena.copy(bytes);
+		Chunk part = arena.copy(bytes, 10, 100);
+		Chunk buf = arena.copy(ByteBuffer.wrap(bytes, 200, 300));
+
+		assertEquals(Chunks.copyBytes(bytes), whole);
+		assertEquals(Chunks.copyBytes(bytes, 10, 100), part);
+		assertEquals(Chunks.copyBytes(bytes, 200, 300), buf);
+		for(Chunk chunk : new Chunk[]{whole, part, buf})
+			assertTrue(chunk.segments().get(0).isDirect());
+	}
+
+	@Test
+	public void testSmallCopies()
+	{
+		DirectArena arena = new DirectArena(SLAB_SIZE);
+
+		assertEquals(Chunks.empty(), arena.copy((byte[])null));
+		assertEquals(Chunks.empty(), arena.copy((ByteBuffer)null));
+		assertEquals(Chunks.ofByte(7), arena.copy(new byte[]{7}));
+	}
+
+	@Test
+	public void testAdjacentCopiesDoNotMerge()
+	{
+		DirectArena arena = new DirectArena(SLAB_SIZE);
+		Chunk a = arena.copy(TestSources.mkTestArray(10));
+		Chunk b = arena.copy(TestSources.mkTestArray(10));
+
+		// Allocations are separate roots even if they are next to each other in a slab
+		assertTrue(Chunks.ofChunks(a, b).getSPI() instanceof PairChunkSPI);
+	}
+}
@@ -0,0 +1,103 @@
+package net.darkmist.chunks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectChunkBuilderTest
+{
+	public static Stream<DirectChunkBuilder> streamBuilders()
+	{
+		return Stream.of(new DirectChunkBuilder(), new DirectChunkBuilder(new DirectArena(4096)));
+	}
+
+	private static void assertDirect(Chunk chunk)
+	{
+		chunk.forEachSegment((segment)->assertTrue(segment.remaining() < 2 || segment.isDirect()));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamBuilders")
+	public void testAppends(DirectChunkBuilder builder)
+	{
+		byte[] bytes = TestSources.mkTestArray(100000);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		ByteBuffer buf = ByteBuffer.wrap(bytes, 5, 50000);
+		Chunk chunk;
+
+		builder.append(0xff).append(-1).append(0x12);
+		expected.write(0xff);
+		expected.write(0xff);
+		expected.write(0x12);
+		builder.append(bytes, 3, 7);
+		expected.write(bytes, 3, 7);
+		builder.append(buf);
+		expected.write(bytes, 5, 50000);
+		assertEquals(5, buf.position());
+		builder.append(Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 1000), RepeatedByteChunkSPI.instance(0x42, 3)));
+		expected.write(bytes, 0, 1000);
+		for(int i=0;i<3;i++)
+			expected.write(0x42);
+		builder.append(bytes);
+		expected.write(bytes, 0, bytes.length);
+		assertEquals(expected.size(), builder.size());
+		chunk = builder.build();
+		assertEquals(Chunks.giveBytes(expected.toByteArray()), chunk);
+		assertDirect(chunk);
+		assertEquals(0, builder.size());
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamBuilders")
+	public void testReuse(DirectChunkBuilder builder)
+	{
+		Chunk first;
+		Chunk second;
+		Chunk empty;
+
+		first = builder.append(TestSources.mkTestArray(100)).build();
+		second = builder.append(TestSources.mkTestArray(200)).build();
+		empty = builder.build();
+		assertEquals(Chunks.copyBytes(TestSources.mkTestArray(100)), first);
+		assertEquals(Chunks.copyBytes(TestSources.mkTestArray(200)), second);
+		assertEquals(Chunks.empty(), empty);
+		assertDirect(first);
+		assertDirect(second);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamBuilders")
+	public void testByteAppendsGrowBlocks(DirectChunkBuilder builder)
+	{
+		int size = 64 * Tunables.getDirectBlockSize();
+		byte[] bytes = TestSources.mkTestArray(size);
+		Chunk chunk;
+
+		for(byte b : bytes)
+			builder.append(b);
+		chunk = builder.build();
+		assertEquals(Chunks.copyBytes(bytes), chunk);
+		assertDirect(chunk);
+		// 1 + 2 + 4 + ... blocks instead of one per block size
+		assertEquals(7, chunk.segments().size());
+	}
+
+	@Test
+	public void testInvalidByte()
+	{
+		assertThrows(IllegalArgumentException.class, ()->new DirectChunkBuilder().append(0x100));
+	}
+
+	@Test
+	public void testInvalidOffLen()
+	{
+		assertThrows(IndexOutOfBoundsException.class, ()->new DirectChunkBuilder().append(new byte[10], 5, 6));
+	}
+}
@@ -1,11 +1,13 @@
 package net.darkmist.chunks;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.ReadableByteChannel;
@@ -18,8 +20,11 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -33,7 +38,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -414,6 +423,69 @@ public class FileChunksTest
 		validateChunk(chunk, size-2, 1L, size);
 	}
 
+	private static void assertDirect(Chunk chunk)
+	{
+		chunk.forEachSegment((segment)->assertTrue(segment.remaining() < 2 || segment.isDirect()));
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSmallSizes")
+	public void testSlurpDirect(long size) throws IOException
+	{
+		Path path = mkFileName(size);
+		Chunk chunk = FileChunks.slurpDirect(path);
+
+		validateChunk(chunk, size, 0L, size);
+		assertDirect(chunk);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSmallSizes")
+	public void testSlurpDirectOff1LenNeg2(long size) throws IOException
+	{
+		Path path;
+		Chunk chunk;
+
+		if(size < 2)
+			return;
+		path = mkFileName(size);
+		chunk = FileChunks.slurpDirect(path, 1L, size-2);
+		validateChunk(chunk, size-2, 1L, size);
+		assertDirect(chunk);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSmallSizes")
+	public void testSlurpDirectArena(long size) throws IOException
+	{
+		Path path = mkFileName(size);
+		Chunk chunk = FileChunks.slurpDirect(path, new DirectArena(4096));
+
+		validateChunk(chunk, size, 0L, size);
+		assertDirect(chunk);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamSmallSizes")
+	public void testMapSplitRejoined(long size) throws IOException
+	{
+		Chunk chunk;
+		Chunk joined;
+		long third = size / 3;
+		Path path = mkFileName(size);
+
+		if(third < 2)
+			return;
+		chunk = FileChunks.map(path);
+		joined = Chunks.ofChunks(
+			chunk.subChunk(0L, third),
+			chunk.subChunk(third, third),
+			chunk.subChunk(2*third)
+		);
+		assertTrue(joined.getSPI() instanceof BufferChunkSPI);
+		validateChunk(joined, size, 0L, size);
+	}
+
 	@ParameterizedTest
 	@MethodSource("streamSmallSizes")
 	public void testMapFileChannel(long size) throws IOException
@@ -538,6 +610,142 @@ public class FileChunksTest
 	}
 
 	@Deprecated
+        /*------------+
+         | transferTo |
+         +------------*/
+
+	private static final int TRANSFER_SIZE = 1000;
+
+	private static Path mkTransferFile(String name, byte[] bytes) throws IOException
+	{
+		Path path = tmp_dir.resolve("transfer." + name);
+
+		Files.write(path, bytes);
+		return path;
+	}
+
+	private static byte[] writeToFile(Chunk chunk, String name) throws IOException
+	{
+		Path path = tmp_dir.resolve("transfer." + name + ".out");
+
+		try
+		(
+			FileChannel out = FileChannel.open(path, EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+		)
+		{
+			chunk.writeTo(out);
+		}
+		return Files.readAllBytes(path);
+	}
+
+	private static boolean transfers(Chunk chunk) throws IOException
+	{
+		BufferChunkSPI spi = (BufferChunkSPI)chunk.getSPI();
+
+		assertTrue(spi.isFileBacked());
+		return spi.transferTo(0, chunk.size(), Channels.newChannel(new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testMapPathTransfer() throws IOException
+	{
+		byte[] bytes = TestSources.mkTestArray(TRANSFER_SIZE);
+		Path path = mkTransferFile("path", bytes);
+		Chunk chunk = FileChunks.map(path, 10L);
+		Chunk sub = chunk.subChunk(100, 500);
+
+		assertTrue(transfers(chunk));
+		assertTrue(transfers(sub));
+		assertArrayEquals(Arrays.copyOfRange(bytes, 10, TRANSFER_SIZE), writeToFile(chunk, "path"));
+		assertArrayEquals(Arrays.copyOfRange(bytes, 110, 610), writeToFile(sub, "path.sub"));
+		assertArrayEquals(
+			Arrays.copyOfRange(bytes, 110, 620),
+			writeToFile(Chunks.ofChunks(sub, Chunks.copyBytes(bytes).subChunk(610,10)), "path.mixed")
+		);
+	}
+
+	@Test
+	public void testMapPathReplaced() throws IOException
+	{
+		byte[] bytes = TestSources.mkTestArray(TRANSFER_SIZE);
+		Path path = mkTransferFile("replaced", bytes);
+		Chunk chunk = FileChunks.map(path);
+
+		Files.delete(path);
+		mkTransferFile("replaced", new byte[TRANSFER_SIZE]);
+		assertFalse(transfers(chunk));
+		// falls back to the mapped buffer
+		assertArrayEquals(bytes, writeToFile(chunk, "replaced"));
+	}
+
+	@Test
+	public void testMapChannelTransfer() throws IOException
+	{
+		byte[] bytes = TestSources.mkTestArray(TRANSFER_SIZE);
+		Path path = mkTransferFile("channel", bytes);
+		@Var
+		Chunk chunk;
+
+		try
+		(
+			FileChannel fc = FileChannel.open(path, EnumSet.of(StandardOpenOption.READ));
+		)
+		{
+			chunk = FileChunks.map(fc, 0L, 600L);
+			assertTrue(transfers(chunk));
+			assertArrayEquals(Arrays.copyOf(bytes, 600), writeToFile(chunk, "channel"));
+		}
+		// channel closed so falls back to the mapped buffer
+		assertFalse(transfers(chunk));
+		assertArrayEquals(Arrays.copyOf(bytes, 600), writeToFile(chunk, "channel.closed"));
+	}
+
+	@Test
+	public void testMapPathTransferSlices() throws IOException
+	{
+		byte[] bytes = TestSources.mkTestArray(TRANSFER_SIZE);
+		Path path = mkTransferFile("slices", bytes);
+		Path out = tmp_dir.resolve("transfer.slices.out");
+		Chunk chunk = FileChunks.map(path);
+		List<Chunk> slices = new ArrayList<>();
+
+		for(int i=0;i<TRANSFER_SIZE;i+=200)
+			slices.add(chunk.subChunk(i, 100));
+		try
+		(
+			FileChannel fc = FileChannel.open(out, EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+		)
+		{
+			ChunkChannels.write(Chunks.ofChunks(slices), 0L, slices.size() * 100L, fc, 0);
+		}
+		assertArrayEquals(Chunks.ofChunks(slices).copy(), Files.readAllBytes(out));
+	}
+
+	@Test
+	public void testTransfersOpenOnce() throws IOException
+	{
+		Path path = mkTransferFile("once", TestSources.mkTestArray(TRANSFER_SIZE));
+		FileOrigin origin = FileOrigin.forPath(path);
+		FileChannel fc;
+
+		assertNotNull(origin);
+		try(FileOrigin.Transfers transfers = new FileOrigin.Transfers())
+		{
+			fc = transfers.channelFor(origin.at(0L));
+			assertNotNull(fc);
+			assertSame(fc, transfers.channelFor(origin.at(500L)));
+		}
+		assertFalse(fc.isOpen());
+	}
+
+	@Test
+	public void testSlurpNotFileBacked() throws IOException
+	{
+		Path path = mkTransferFile("slurp", TestSources.mkTestArray(TRANSFER_SIZE));
+
+		assertFalse(((RootedChunkSPI)FileChunks.slurp(path).getSPI()).isFileBacked());
+	}
+
 	@Test
 	public void testMapFunctionNonExistant()
 	{
@@ -0,0 +1,89 @@
+package net.darkmist.chunks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LargeChunkTest
+{
+	private static final int SIZE = 1000;
+
+	/**
+	 * Large leaf over an array so it can be tested without mapping
+	 * more than {@link LargeChunksHelper#LARGE_CHUNK_SIZE} bytes.
+	 * It counts the pieces taken of it.
+	 */
+	private static final class ArrayLargeChunkSPI extends LargeChunkSPI
+	{
+		private final byte[] array;
+		private int pieces;
+
+		ArrayLargeChunkSPI(byte[] array)
+		{
+			super(array.length);
+			this.array = array;
+		}
+
+		@Override
+		public int getByte(long off)
+		{
+			return array[(int)requireValidOffset(off)]&0xff;
+		}
+
+		@Override
+		ChunkSPI piece(long off, int len)
+		{
+			pieces++;
+			return ArrayChunkSPI.giveInstance(array, (int)off, len).getSPI();
+		}
+
+		@Override
+		public Chunk subChunk(long off, long len)
+		{
+			Util.requireValidOffLen(size, off, len);
+			return Chunk.instance(piece(off, (int)len));
+		}
+	}
+
+	@Test
+	public void testContent()
+	{
+		ArrayLargeChunkSPI spi = new ArrayLargeChunkSPI(TestSources.mkTestArray(SIZE));
+		Chunk chunk = Chunk.instance(spi);
+		Chunk expected = TestSources.mkTestChunk(SIZE);
+
+		assertEquals(expected, chunk);
+		assertEquals(chunk, expected);
+		assertEquals(expected.hashCode(), chunk.hashCode());
+		assertEquals(TestSources.mkTestSubChunk(10L, 500L), Chunks.ofChunks(chunk.subChunk(10L, 100L), chunk.subChunk(110L, 400L)));
+		// compared and hashed through pieces, not byte at a time
+		assertTrue(spi.pieces > 0);
+	}
+
+	@Test
+	public void testSegments()
+	{
+		ArrayLargeChunkSPI spi = new ArrayLargeChunkSPI(TestSources.mkTestArray(SIZE));
+		Chunk chunk = Chunk.instance(spi);
+		List<ByteBuffer> segments = new ArrayList<>();
+
+		chunk.forEachSegment(100L, 200L, segments::add);
+		assertEquals(1, segments.size());
+		assertEquals(TestSources.mkTestSubChunk(100L, 200L), Chunks.copyBuffer(segments.get(0)));
+		assertEquals(1, spi.pieces);
+	}
+
+	@Test
+	public void testCoalesce()
+	{
+		Chunk chunk = Chunk.instance(new ArrayLargeChunkSPI(TestSources.mkTestArray(SIZE)));
+
+		assertTrue(chunk.isCoalesced());
+		assertSame(chunk, chunk.coalesce());
+	}
+}
@@ -1,8 +1,14 @@
 package net.darkmist.chunks;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import com.google.errorprone.annotations.Var;
@@ -12,9 +18,12 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.ParameterizedTest;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.slf4j.Logger;
@@ -364,6 +373,165 @@ public class MultiChunkTest
 		assertEquals(expected, actual);
 	}
 
+	/**
+	 * Build a multi chunk of pieces of increasing size whose bytes
+	 * are their offset in the whole.
+	 */
+	private static Chunk unevenMultiChunk(int pieces)
+	{
+		List<Chunk> chunks = new ArrayList<>();
+		@Var
+		int off = 0;
+
+		for(int i=1;i<=pieces;i++)
+		{
+			byte[] bytes = new byte[i];
+
+			for(int j=0;j<i;j++)
+				bytes[j] = (byte)(off+j);
+			chunks.add(Chunks.copyBytes(bytes));
+			off+=i;
+		}
+		return Chunks.ofChunks(chunks);
+	}
+
+	@Test
+	public void testByteAccessOrders()
+	{
+		Chunk multi = unevenMultiChunk(20);
+		int size = multi.size();
+		Random rnd = new Random(size);
+
+		assertTrue(multi.getSPI() instanceof MultiChunkSPI);
+		for(int i=0;i<size;i++)
+			assertEquals(i & 0xff, multi.getByte(i));
+		for(int i=size-1;i>=0;i--)
+			assertEquals(i & 0xff, multi.getByte(i));
+		for(int i=0;i<size*4;i++)
+		{
+			int off = rnd.nextInt(size);
+
+			assertEquals(off & 0xff, multi.getByte(off));
+		}
+	}
+
+	@Test
+	public void testPrimitivesAcrossBoundries()
+	{
+		Chunk multi = unevenMultiChunk(20);
+		Chunk flat = multi.coalesce();
+
+		assertTrue(flat.getSPI() instanceof ArrayChunkSPI);
+		for(int i=multi.size()-Long.BYTES;i>=0;i--)
+		{
+			assertEquals(flat.getShort(i, ByteOrder.BIG_ENDIAN), multi.getShort(i, ByteOrder.BIG_ENDIAN));
+			assertEquals(flat.getInt(i, ByteOrder.LITTLE_ENDIAN), multi.getInt(i, ByteOrder.LITTLE_ENDIAN));
+			assertEquals(flat.getLong(i, ByteOrder.BIG_ENDIAN), multi.getLong(i, ByteOrder.BIG_ENDIAN));
+		}
+	}
+
+	@Test
+	public void testPrimitivesPastEnd()
+	{
+		Chunk multi = unevenMultiChunk(5);
+		long size = multi.getSize();
+
+		assertTrue(multi.getSPI() instanceof MultiChunkSPI);
+		assertThrows(IndexOutOfBoundsException.class, ()->multi.getShort(size-1, ByteOrder.BIG_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->multi.getInt(size-3, ByteOrder.LITTLE_ENDIAN));
+		assertThrows(IndexOutOfBoundsException.class, ()->multi.getLong(size-7, ByteOrder.BIG_ENDIAN));
+	}
+
+	@Test
+	public void testCopyAcrossBoundries()
+	{
+		Chunk multi = unevenMultiChunk(10);
+		byte[] expected = multi.coalesce().copy();
+		int size = multi.size();
+
+		for(int off=0;off<size;off++)
+			for(int len=0;off+len<=size;len++)
+			{
+				byte[] actual = new byte[len+2];
+
+				multi.copyTo(actual, off, 1, len);
+				assertEquals(0, actual[0]);
+				assertEquals(0, actual[len+1]);
+				assertArrayEquals(Arrays.copyOfRange(expected, off, off+len), Arrays.copyOfRange(actual, 1, len+1));
+			}
+	}
+
+	@Test
+	public void testWriteTo() throws IOException
+	{
+		Chunk multi = unevenMultiChunk(20);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		try(DataOutputStream dos = new DataOutputStream(baos))
+		{
+			multi.writeTo(dos);
+		}
+		assertArrayEquals(multi.copy(), baos.toByteArray());
+	}
+
+	@Test
+	public void testSubChunksAcrossBoundries()
+	{
+		Chunk multi = unevenMultiChunk(10);
+		Chunk flat = multi.coalesce();
+		int size = multi.size();
+
+		for(int off=0;off<size;off++)
+			for(int len=0;off+len<=size;len++)
+				assertEquals(flat.subChunk(off,len), multi.subChunk(off,len));
+	}
+
+	private static void assertFlat(Chunk chunk)
+	{
+		MultiChunkSPI multi = (MultiChunkSPI)chunk.getSPI();
+
+		for(int i=0;i<multi.getChunkCount();i++)
+		{
+			ChunkSPI spi = multi.getChunk(i).getSPI();
+
+			assertFalse(spi instanceof MultiChunkSPI || spi instanceof PairChunkSPI, () -> "Composite chunk " + spi + " in " + multi);
+		}
+	}
+
+	@Test
+	public void testNestedFlattened()
+	{
+		Chunk a = Chunks.ofByte(0);
+		Chunk b = Chunks.ofByte(1);
+		Chunk c = Chunks.ofByte(2);
+		Chunk d = Chunks.ofByte(3);
+		Chunk e = Chunks.ofByte(4);
+		Chunk multi = Chunks.ofChunks(Chunks.ofChunks(a,b), Chunks.ofChunks(c,d,e), Chunks.empty(), a);
+
+		assertTrue(multi.getSPI() instanceof MultiChunkSPI);
+		assertEquals(6, ((MultiChunkSPI)multi.getSPI()).getChunkCount());
+		assertFlat(multi);
+		assertEquals(Chunks.ofBytes(0,1,2,3,4,0), multi);
+	}
+
+	@Test
+	public void testRopeFlattened()
+	{
+		@Var
+		Chunk rope = Chunks.empty();
+		Chunk multi;
+
+		for(int i=0;i<1000;i++)
+			rope = rope.append(Chunks.ofByte(i & 0xff));
+		assertTrue(rope.getSPI() instanceof PairChunkSPI);
+		multi = Chunks.ofChunks(rope, rope, rope);
+		assertTrue(multi.getSPI() instanceof MultiChunkSPI);
+		assertEquals(3000, ((MultiChunkSPI)multi.getSPI()).getChunkCount());
+		assertFlat(multi);
+		for(int i=0;i<multi.size();i++)
+			assertEquals(i % 1000 & 0xff, multi.getByte(i));
+	}
+
 	@Test
 	public void testToString()
 	{
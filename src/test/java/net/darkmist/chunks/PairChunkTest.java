@@ -3,6 +3,8 @@ package net.darkmist.chunks;
 import java.nio.ByteOrder;
 import java.util.stream.Stream;
 
+import com.google.errorprone.annotations.Var;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.Arguments;
@@ -10,6 +12,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -234,6 +237,155 @@ public class PairChunkTest
 		assertEquals(expected, actual);
 	}
 
+	/**
+	 * Check the AVL invariant for every pair in a chunk.
+	 * @return height of {@code chunk}.
+	 */
+	private static int assertBalanced(Chunk chunk)
+	{
+		ChunkSPI spi = chunk.getSPI();
+		PairChunkSPI pair;
+		int firstHeight;
+		int secondHeight;
+
+		if(spi instanceof MultiChunkSPI)
+			assertTrue(((MultiChunkSPI)spi).getChunkCount() <= Tunables.getFlattenLimit());
+		if(!(spi instanceof PairChunkSPI))
+			return 0;
+		pair = (PairChunkSPI)spi;
+		firstHeight = assertBalanced(pair.getFirst());
+		secondHeight = assertBalanced(pair.getSecond());
+		assertTrue(Math.abs(firstHeight - secondHeight) <= 1, () -> String.format("Unbalanced pair with heights %d and %d", firstHeight, secondHeight));
+		assertEquals(Math.max(firstHeight, secondHeight) + 1, PairChunkSPI.height(chunk));
+		return PairChunkSPI.height(chunk);
+	}
+
+	private static void assertSequence(Chunk chunk)
+	{
+		for(int i=0;i<chunk.size();i++)
+			assertEquals(i & 0xff, chunk.getByte(i));
+	}
+
+	private static final int ROPE_LEN = 4096;
+	// AVL height is bounded by about 1.44 * log2(n)
+	private static final int ROPE_MAX_HEIGHT = 18;
+
+	@Test
+	public void testSmallFlattened()
+	{
+		Chunk a = Chunks.ofByte(0);
+		Chunk b = Chunks.ofByte(1);
+		Chunk c = Chunks.ofByte(2);
+		Chunk pair = Chunks.ofChunks(a,b);
+		Chunk chunk = Chunks.ofChunks(pair, c);
+
+		assertTrue(pair.getSPI() instanceof PairChunkSPI);
+		assertTrue(chunk.getSPI() instanceof MultiChunkSPI);
+		assertEquals(3, PairChunkSPI.leafCount(chunk));
+		assertEquals(Chunks.ofBytes(0,1,2), chunk);
+	}
+
+	@Test
+	public void testAppendLeavesFlattened()
+	{
+		@Var
+		Chunk chunk = Chunks.empty();
+
+		for(int i=0;i<ROPE_LEN;i++)
+			chunk = chunk.append(Chunks.ofByte(i & 0xff));
+		assertEquals(ROPE_LEN, PairChunkSPI.leafCount(chunk));
+		// most leaves should have been absorbed into multi chunks
+		assertTrue(PairChunkSPI.height(chunk) <= 10);
+	}
+
+	@Test
+	public void testAppendBalanced()
+	{
+		@Var
+		Chunk chunk = Chunks.empty();
+
+		for(int i=0;i<ROPE_LEN;i++)
+			chunk = chunk.append(Chunks.ofByte(i & 0xff));
+		assertEquals(ROPE_LEN, chunk.size());
+		assertTrue(assertBalanced(chunk) <= ROPE_MAX_HEIGHT);
+		assertSequence(chunk);
+	}
+
+	@Test
+	public void testPrependBalanced()
+	{
+		@Var
+		Chunk chunk = Chunks.empty();
+
+		for(int i=ROPE_LEN-1;i>=0;i--)
+			chunk = chunk.prepend(Chunks.ofByte(i & 0xff));
+		assertEquals(ROPE_LEN, chunk.size());
+		assertTrue(assertBalanced(chunk) <= ROPE_MAX_HEIGHT);
+		assertSequence(chunk);
+	}
+
+	@Test
+	public void testJoinRopesBalanced()
+	{
+		@Var
+		Chunk left = Chunks.empty();
+		@Var
+		Chunk right = Chunks.empty();
+		Chunk joined;
+		Chunk sub;
+
+		for(int i=0;i<ROPE_LEN/8;i++)
+			left = left.append(Chunks.ofByte(i & 0xff));
+		for(int i=ROPE_LEN-1;i>=ROPE_LEN/8;i--)
+			right = right.prepend(Chunks.ofByte(i & 0xff));
+		joined = left.append(right);
+		assertTrue(assertBalanced(joined) <= ROPE_MAX_HEIGHT);
+		assertSequence(joined);
+
+		sub = joined.subChunk(3, ROPE_LEN - 300);
+		assertBalanced(sub);
+		for(int i=0;i<sub.size();i++)
+			assertEquals((i+3) & 0xff, sub.getByte(i));
+	}
+
+	@Test
+	public void testCopyAcrossBoundries()
+	{
+		@Var
+		Chunk chunk = Chunks.empty();
+		byte[] actual = new byte[ROPE_LEN];
+
+		for(int i=0;i<ROPE_LEN;i+=3)
+			chunk = chunk.append(Chunks.copyBytes(new byte[]{(byte)i,(byte)(i+1),(byte)(i+2)}));
+		assertTrue(chunk.getSPI() instanceof PairChunkSPI);
+		for(int off=0;off<ROPE_LEN;off+=97)
+		{
+			int len = Math.min(ROPE_LEN - off, 1031);
+
+			chunk.copyTo(actual, off, 0, len);
+			for(int i=0;i<len;i++)
+				assertEquals((byte)(off+i), actual[i]);
+		}
+	}
+
+	@Test
+	public void testPrimitivesAcrossBoundry()
+	{
+		byte[] bytes = TestSources.mkTestArray(48);
+		// separate copies so the halves do not merge back together
+		Chunk pair = Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 21), Chunks.copyBytes(bytes, 21, 27));
+		Chunk flat = Chunks.giveBytes(bytes);
+
+		assertTrue(pair.getSPI() instanceof PairChunkSPI);
+		for(int i=21-Long.BYTES;i<=21;i++)
+			for(ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN,ByteOrder.LITTLE_ENDIAN})
+			{
+				assertEquals(flat.getShort(i, order), pair.getShort(i, order));
+				assertEquals(flat.getInt(i, order), pair.getInt(i, order));
+				assertEquals(flat.getLong(i, order), pair.getLong(i, order));
+			}
+	}
+
 	@Test
 	public void testToString()
 	{
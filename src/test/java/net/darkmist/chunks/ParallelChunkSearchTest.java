@@ -0,0 +1,87 @@
+package net.darkmist.chunks;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("boxing")
+	// We can hope the compiler can handle constants
+public class ParallelChunkSearchTest
+{
+	private static final int SIZE = 1000;
+	private static final long[] SPLIT_SIZES = {1L, 3L, 16L, 64L, 999L, SIZE, Long.MAX_VALUE};
+	// Mostly zeros so searches for other bytes match only in some ranges.
+	private static final byte[] ALPHABET = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3};
+	private static final byte[] TEXT = TestSources.mkText(SIZE, ALPHABET);
+
+	private static Stream<Chunk> testChunks()
+	{
+		return Stream.of(
+			Chunks.copyBytes(TEXT),
+			Chunks.copyDirect(TEXT),
+			Chunks.ofChunks(Chunks.copyBytes(TEXT, 0, 333), Chunks.copyDirect(TEXT, 333, 334), Chunks.copyBytes(TEXT, 667, SIZE-667)),
+			TestSources.unevenChunk(TEXT, 7)
+		);
+	}
+
+	private static Stream<Chunk> testPatterns()
+	{
+		return Stream.of(
+			Chunks.empty(),
+			Chunks.ofByte(3),
+			Chunks.copyBytes(TEXT, 500, 4),
+			Chunks.copyBytes(TEXT, 900, 20),
+			Chunks.copyBytes(TEXT, 63, 3),
+			Chunks.copyBytes(new byte[]{1, 1, 1, 1, 1})
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testBytes(Chunk chunk)
+	{
+		for(byte b=0;b<5;b++)
+			for(long splitSize : SPLIT_SIZES)
+			{
+				assertEquals(chunk.indexOf(b), ParallelChunkSearch.indexOf(chunk, b, splitSize));
+				assertEquals(chunk.count(b), ParallelChunkSearch.count(chunk, b, splitSize));
+			}
+		assertEquals(chunk.indexOf((byte)2), chunk.parallelIndexOf((byte)2));
+		assertEquals(chunk.count((byte)0), chunk.parallelCount((byte)0));
+	}
+
+	@ParameterizedTest
+	@MethodSource("testChunks")
+	public void testPatterns(Chunk chunk)
+	{
+		testPatterns().forEach((pattern)->{
+			for(long splitSize : SPLIT_SIZES)
+				assertEquals(chunk.indexOf(pattern), ParallelChunkSearch.indexOf(chunk, pattern, splitSize), ()->pattern + " split " + splitSize);
+			assertEquals(chunk.indexOf(pattern), chunk.parallelIndexOf(pattern));
+		});
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(-1L, Chunks.empty().parallelIndexOf((byte)0));
+		assertEquals(0L, Chunks.empty().parallelCount((byte)0));
+		assertEquals(-1L, Chunks.empty().parallelIndexOf(Chunks.ofByte(0)));
+		assertThrows(IllegalArgumentException.class, ()->ParallelChunkSearch.count(Chunks.copyBytes(TEXT), (byte)0, 0L));
+	}
+
+	@Test
+	public void testSplit()
+	{
+		assertEquals(-1L, ParallelChunkSearch.split(0L, 64L, 64L));
+		assertEquals(64L, ParallelChunkSearch.split(0L, 65L, 64L));
+		assertEquals(128L, ParallelChunkSearch.split(0L, 256L, 64L));
+		assertEquals(128L, ParallelChunkSearch.split(0L, 300L, 64L));
+		assertEquals(192L, ParallelChunkSearch.split(128L, 300L, 64L));
+		assertEquals(5L, ParallelChunkSearch.split(4L, 7L, 1L));
+	}
+}
@@ -0,0 +1,210 @@
+package net.darkmist.chunks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedChunksTest
+{
+	private static final int ROOT_SIZE = 65536;
+	private static final int SUB_SIZE = 100;
+
+	private static byte[] serialize(Object obj) throws IOException
+	{
+		try
+		(
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+		)
+		{
+			oos.writeObject(obj);
+			oos.flush();
+			return baos.toByteArray();
+		}
+	}
+
+	private static List<Chunk> roundTrip(SharedChunks shared) throws IOException, ClassNotFoundException
+	{
+		try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialize(shared))))
+		{
+			return ((SharedChunks)ois.readObject()).getChunks();
+		}
+	}
+
+	private static BufferRoot rootOf(Chunk chunk)
+	{
+		return ((RootedChunkSPI)chunk.getSPI()).getRoot();
+	}
+
+	@Test
+	public void testSubChunksShareRoot() throws IOException, ClassNotFoundException
+	{
+		Chunk root = Chunks.copyBytes(TestSources.mkTestArray(ROOT_SIZE));
+		int count = ROOT_SIZE / SUB_SIZE;
+		List<Chunk> subs = new ArrayList<>(count);
+		byte[] serialized;
+		List<Chunk> actual;
+
+		for(int i=0;i<count;i++)
+			subs.add(root.subChunk(i*SUB_SIZE, SUB_SIZE));
+		serialized = serialize(SharedChunks.of(subs));
+		assertTrue(serialized.length < 2*ROOT_SIZE, ()->"Serialized size " + serialized.length + " is not less than twice the root size.");
+		actual = roundTrip(SharedChunks.of(subs));
+		assertEquals(subs, actual);
+		for(int i=0;i<count;i++)
+			assertSame(rootOf(actual.get(0)), rootOf(actual.get(i)));
+	}
+
+	@Test
+	public void testOnlyCoveredRangesWritten() throws IOException, ClassNotFoundException
+	{
+		Chunk root = Chunks.copyBytes(TestSources.mkTestArray(ROOT_SIZE));
+		Chunk first = root.subChunk(1000, SUB_SIZE);
+		Chunk overlapping = root.subChunk(1050, SUB_SIZE);
+		Chunk far = root.subChunk(50000, SUB_SIZE);
+		SharedChunks shared = SharedChunks.of(first, overlapping, far);
+		byte[] serialized = serialize(shared);
+		List<Chunk> actual;
+
+		assertTrue(serialized.length < 2*SUB_SIZE + SUB_SIZE/2 + 512, ()->"Serialized size " + serialized.length + " includes uncovered bytes.");
+		actual = roundTrip(shared);
+		assertEquals(shared.getChunks(), actual);
+		assertSame(rootOf(actual.get(0)), rootOf(actual.get(1)));
+		assertNotSame(rootOf(actual.get(0)), rootOf(actual.get(2)));
+		assertEquals(SUB_SIZE + SUB_SIZE/2, rootOf(actual.get(0)).getSize());
+		assertEquals(SUB_SIZE, rootOf(actual.get(2)).getSize());
+	}
+
+	@Test
+	public void testDirectRoot() throws IOException, ClassNotFoundException
+	{
+		Chunk root = Chunks.copyDirect(TestSources.mkTestArray(ROOT_SIZE));
+		SharedChunks shared = SharedChunks.of(root.subChunk(10, SUB_SIZE), root.subChunk(ROOT_SIZE - SUB_SIZE, SUB_SIZE));
+
+		assertEquals(shared.getChunks(), roundTrip(shared));
+	}
+
+	@Test
+	public void testContiguousPiecesMerge() throws IOException, ClassNotFoundException
+	{
+		Chunk root = Chunks.copyBytes(TestSources.mkTestArray(ROOT_SIZE));
+		Chunk expected = Chunks.ofChunks(root.subChunk(0, SUB_SIZE), Chunks.ofByte(0x55), root.subChunk(SUB_SIZE, SUB_SIZE));
+		List<Chunk> actual = roundTrip(SharedChunks.of(expected, root.subChunk(0, 2*SUB_SIZE)));
+
+		assertEquals(expected, actual.get(0));
+		assertTrue(actual.get(1).getSPI() instanceof RootedChunkSPI);
+		assertSame(rootOf(actual.get(0).subChunk(0, SUB_SIZE)), rootOf(actual.get(1)));
+	}
+
+	public static Stream<Chunk> streamRoundTripTests()
+	{
+		Chunk buf = Chunks.copyBytes(TestSources.mkTestArray(1000));
+
+		return Stream.of(
+			Chunks.empty(),
+			Chunks.ofByte(0x55),
+			buf,
+			buf.subChunk(10, 500),
+			RepeatedByteChunkSPI.instance(0x42, 5000),
+			Chunks.ofChunks(buf.subChunk(0, 100), RepeatedByteChunkSPI.instance(0x42, 5000), Chunks.ofBytes(1, 2, 3), buf.subChunk(900, 100))
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamRoundTripTests")
+	public void testRoundTrip(Chunk chunk) throws IOException, ClassNotFoundException
+	{
+		assertEquals(SharedChunks.of(chunk), SharedChunks.of(roundTrip(SharedChunks.of(chunk))));
+	}
+
+	@Test
+	public void testNoChunks() throws IOException, ClassNotFoundException
+	{
+		assertTrue(roundTrip(SharedChunks.of()).isEmpty());
+	}
+
+	@Test
+	public void testChunkDefaultNotShared() throws IOException
+	{
+		Chunk root = Chunks.copyBytes(TestSources.mkTestArray(ROOT_SIZE));
+
+		assertTrue(serialize(root.subChunk(0, SUB_SIZE)).length < 2*SUB_SIZE + 512);
+	}
+
+	private static ObjectInputStream mkReferenceStream(long size, int index, int off, int len) throws IOException
+	{
+		try
+		(
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+		)
+		{
+			oos.writeInt(1);
+			oos.writeInt(SUB_SIZE);
+			oos.write(TestSources.mkTestArray(SUB_SIZE));
+			oos.writeInt(1);
+			oos.writeLong(size);
+			oos.writeInt(1);
+			oos.writeBoolean(true);
+			oos.writeInt(index);
+			oos.writeInt(off);
+			oos.writeInt(len);
+			oos.flush();
+			return new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		}
+	}
+
+	@Test
+	public void testReferenceValid() throws IOException
+	{
+		SharedChunkSerializationProxy proxy = new SharedChunkSerializationProxy();
+
+		proxy.readExternal(mkReferenceStream(10, 0, 5, 10));
+		assertEquals(SharedChunks.of(Chunks.copyBytes(TestSources.mkTestArray(SUB_SIZE)).subChunk(5, 10)), proxy.readResolve());
+	}
+
+	@Test
+	public void testReferenceOutOfBounds() throws IOException
+	{
+		ObjectInputStream ois = mkReferenceStream(10, 0, SUB_SIZE - 5, 10);
+
+		assertThrows(InvalidObjectException.class, ()->new SharedChunkSerializationProxy().readExternal(ois));
+	}
+
+	@Test
+	public void testReferenceBadRange() throws IOException
+	{
+		ObjectInputStream ois = mkReferenceStream(10, 1, 5, 10);
+
+		assertThrows(InvalidObjectException.class, ()->new SharedChunkSerializationProxy().readExternal(ois));
+	}
+
+	@Test
+	public void testSizeMismatch() throws IOException
+	{
+		ObjectInputStream ois = mkReferenceStream(11, 0, 5, 10);
+
+		assertThrows(InvalidObjectException.class, ()->new SharedChunkSerializationProxy().readExternal(ois));
+	}
+
+	@Test
+	public void testNullChunk()
+	{
+		assertThrows(NullPointerException.class, ()->SharedChunks.of(Chunks.empty(), null));
+	}
+}
@@ -1,11 +1,16 @@
 package net.darkmist.chunks;
 
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import com.google.errorprone.annotations.Var;
+
 import org.junit.jupiter.params.provider.Arguments;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -26,11 +31,200 @@ import org.slf4j.LoggerFactory;
 final class TestSources
 {
 	private static final Logger logger = LoggerFactory.getLogger(TestSources.class);
+	/**
+	 * Size of the chunks from {@link #streamLayoutChunks()}.
+	 */
+	static final int LAYOUT_SIZE = 64;
+	static final ByteOrder[] ORDERS = {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN};
 
 	private TestSources()
 	{
 	}
 
+	/**
+	 * Stream the same {@link #LAYOUT_SIZE} test bytes laid out as an
+	 * array, a direct buffer, composites of both and sub chunks of
+	 * composites.
+	 * @return Stream of chunks equal to {@code mkTestChunk(LAYOUT_SIZE)}.
+	 */
+	static Stream<Chunk> streamLayoutChunks()
+	{
+		byte[] bytes = mkTestArray(LAYOUT_SIZE);
+
+		return Stream.of(
+			Chunks.giveBytes(bytes),
+			Chunks.copyDirect(bytes),
+			Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 40), Chunks.copyBytes(bytes, 40, 24)),
+			Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 20), Chunks.copyDirect(bytes, 20, 20), Chunks.copyBytes(bytes, 40, 24)),
+			Chunks.ofChunks(Chunks.copyBytes(bytes, 0, 20), Chunks.copyBytes(bytes, 20, 44)).subChunk(0, LAYOUT_SIZE),
+			Chunks.ofChunks(Chunks.giveBytes(new byte[5]), Chunks.giveBytes(bytes), Chunks.giveBytes(new byte[5])).subChunk(5, LAYOUT_SIZE)
+		);
+	}
+
+	/**
+	 * Random bytes from a small alphabet so patterns match often.
+	 * The same length always gives the same bytes.
+	 * @param len Number of bytes.
+	 * @param alphabet Bytes to pick from. Repeating a byte makes it
+	 * 	more common.
+	 * @return The bytes.
+	 */
+	static byte[] mkText(int len, byte...alphabet)
+	{
+		Random random = new Random(len);
+		byte[] bytes = new byte[len];
+
+		for(int i=0;i<len;i++)
+			bytes[i] = alphabet[random.nextInt(alphabet.length)];
+		return bytes;
+	}
+
+	/**
+	 * Multi chunk of pieces from one to {@code max} bytes so reads
+	 * and matches cross pieces at every alignment.
+	 * @param bytes Bytes to copy into the pieces.
+	 * @param max Largest piece.
+	 * @return Chunk equal to {@code bytes}.
+	 */
+	static Chunk unevenChunk(byte[] bytes, int max)
+	{
+		List<Chunk> chunks = new ArrayList<>();
+		@Var
+		int len = 1;
+
+		for(@Var int off=0;off<bytes.length;off+=len, len=len%max+1)
+			chunks.add(Chunks.copyBytes(bytes, off, Math.min(len, bytes.length-off)));
+		return Chunks.ofChunks(chunks);
+	}
+
+	/**
+	 * Primitive reads of a view of chunk bytes that is not itself a
+	 * chunk, such as a {@link ChunkRange} or {@link ChunkWindow}.
+	 */
+	interface PrimitiveReads
+	{
+		int getByte(long off);
+		short getShort(long off, ByteOrder order);
+		int getShortUnsigned(long off, ByteOrder order);
+		int getInt(long off, ByteOrder order);
+		long getIntUnsigned(long off, ByteOrder order);
+		long getLong(long off, ByteOrder order);
+	}
+
+	static PrimitiveReads readsOf(ChunkRange range)
+	{
+		return new PrimitiveReads()
+		{
+			@Override
+			public int getByte(long off)
+			{
+				return range.getByte(off);
+			}
+
+			@Override
+			public short getShort(long off, ByteOrder order)
+			{
+				return range.getShort(off, order);
+			}
+
+			@Override
+			public int getShortUnsigned(long off, ByteOrder order)
+			{
+				return range.getShortUnsigned(off, order);
+			}
+
+			@Override
+			public int getInt(long off, ByteOrder order)
+			{
+				return range.getInt(off, order);
+			}
+
+			@Override
+			public long getIntUnsigned(long off, ByteOrder order)
+			{
+				return range.getIntUnsigned(off, order);
+			}
+
+			@Override
+			public long getLong(long off, ByteOrder order)
+			{
+				return range.getLong(off, order);
+			}
+		};
+	}
+
+	static PrimitiveReads readsOf(ChunkWindow window)
+	{
+		return new PrimitiveReads()
+		{
+			@Override
+			public int getByte(long off)
+			{
+				return window.getByte(off);
+			}
+
+			@Override
+			public short getShort(long off, ByteOrder order)
+			{
+				return window.getShort(off, order);
+			}
+
+			@Override
+			public int getShortUnsigned(long off, ByteOrder order)
+			{
+				return window.getShortUnsigned(off, order);
+			}
+
+			@Override
+			public int getInt(long off, ByteOrder order)
+			{
+				return window.getInt(off, order);
+			}
+
+			@Override
+			public long getIntUnsigned(long off, ByteOrder order)
+			{
+				return window.getIntUnsigned(off, order);
+			}
+
+			@Override
+			public long getLong(long off, ByteOrder order)
+			{
+				return window.getLong(off, order);
+			}
+		};
+	}
+
+	/**
+	 * Check every primitive read at every offset in both byte
+	 * orders against a chunk.
+	 * @param expected Chunk with the expected bytes.
+	 * @param actual Reads to check. These must cover
+	 * 	{@code expected.getSize()} bytes.
+	 */
+	static void assertPrimitiveReads(Chunk expected, PrimitiveReads actual)
+	{
+		long len = expected.getSize();
+
+		for(long i=0;i<len;i++)
+			assertEquals(expected.getByte(i), actual.getByte(i));
+		for(ByteOrder order : ORDERS)
+		{
+			for(long i=0;i<=len-Short.BYTES;i++)
+			{
+				assertEquals(expected.getShort(i, order), actual.getShort(i, order));
+				assertEquals(expected.getShortUnsigned(i, order), actual.getShortUnsigned(i, order));
+			}
+			for(long i=0;i<=len-Integer.BYTES;i++)
+			{
+				assertEquals(expected.getInt(i, order), actual.getInt(i, order));
+				assertEquals(expected.getIntUnsigned(i, order), actual.getIntUnsigned(i, order));
+			}
+			for(long i=0;i<=len-Long.BYTES;i++)
+				assertEquals(expected.getLong(i, order), actual.getLong(i, order));
+		}
+	}
+
 	/**
 	 * Stream of byte at offset tests with adjustment to be checked with {@link #byteValueAt(Chunk,byte,long)}.
 	 * @param chunk Chunk to produce tests for.
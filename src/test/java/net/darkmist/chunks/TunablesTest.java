@@ -0,0 +1,98 @@
+package net.darkmist.chunks;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.ParameterizedTest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//import org.slf4j.Logger;
+//import org.slf4j.LoggerFactory;
+
+public class TunablesTest
+{
+	//private static final Logger logger = LoggerFactory.getLogger(TunablesTest.class);
+	private static final String TEST_PROPERTY = "tunablesTest";
+
+	@Test
+	public void testPageSize()
+	{
+		int pageSize = Tunables.getPageSize();
+
+		assertTrue(pageSize > 0);
+		assertEquals(1, Integer.bitCount(pageSize));
+	}
+
+	@Test
+	public void testTmpBufReused()
+	{
+		byte[] first = Tunables.acquireTmpBuf();
+		byte[] second;
+
+		assertEquals(Tunables.getTmpBufSize(), first.length);
+		Tunables.releaseTmpBuf(first);
+		second = Tunables.acquireTmpBuf();
+		assertSame(first, second);
+		Tunables.releaseTmpBuf(second);
+	}
+
+	@Test
+	public void testTmpBufNested()
+	{
+		byte[] outer = Tunables.acquireTmpBuf();
+		byte[] inner = Tunables.acquireTmpBuf();
+
+		assertNotSame(outer, inner);
+		Tunables.releaseTmpBuf(inner);
+		Tunables.releaseTmpBuf(outer);
+	}
+
+	@Test
+	public void testTmpBufWrongSizeNotPooled()
+	{
+		byte[] wrong = new byte[Tunables.getTmpBufSize()+1];
+		byte[] buf;
+
+		Tunables.releaseTmpBuf(wrong);
+		buf = Tunables.acquireTmpBuf();
+		assertNotSame(wrong, buf);
+		Tunables.releaseTmpBuf(buf);
+	}
+
+	public static Stream<Arguments> streamIntPropertyTests()
+	{
+		return Stream.of(
+			Arguments.of(null, 7),
+			Arguments.of("42", 42),
+			Arguments.of(" 42 ", 42),
+			Arguments.of("0", 7),
+			Arguments.of("-1", 7),
+			Arguments.of("toast", 7)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("streamIntPropertyTests")
+	public void testIntProperty(String value, int expected)
+	{
+		String name = "net.darkmist.chunks." + TEST_PROPERTY;
+
+		try
+		{
+			if(value == null)
+				System.clearProperty(name);
+			else
+				System.setProperty(name, value);
+			assertEquals(expected, Tunables.intProperty(TEST_PROPERTY, 7));
+		}
+		finally
+		{
+			System.clearProperty(name);
+		}
+	}
+}
@@ -718,4 +718,45 @@ public class UtilTest
 	{
 		assertFalse(Util.isPosInt(1L + Integer.MAX_VALUE));
 	}
+
+	/**
+	 * SPI whose {@link ChunkSPI#getByte(long)} sign extends.
+	 */
+	private static final class SignedByteChunkSPI extends AbstractChunkSPI
+	{
+		private final byte[] bytes;
+
+		SignedByteChunkSPI(byte[] bytes)
+		{
+			super(bytes.length);
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int getByte(long off)
+		{
+			return bytes[(int)requireValidOffset(off)];
+		}
+
+		@Override
+		public Chunk subChunk(long off, long len)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Test
+	public void testBigEndianBytesSignedSPI()
+	{
+		byte[] bytes = {(byte)0x80, (byte)0x91, (byte)0xa2, (byte)0xb3, (byte)0xc4, (byte)0xd5, (byte)0xe6, (byte)0xf7};
+		Chunk chunk = Chunk.instance(new SignedByteChunkSPI(bytes));
+		@Var
+		long expected = 0L;
+
+		for(int len=1;len<=Long.BYTES;len++)
+		{
+			expected = (expected << Byte.SIZE) | (bytes[len-1] & 0xffL);
+			assertEquals(expected, Util.bigEndianBytes(chunk, 0L, len), "len " + len);
+		}
+	}
 }